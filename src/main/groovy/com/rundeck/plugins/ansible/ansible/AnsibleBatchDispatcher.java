@@ -0,0 +1,135 @@
+package com.rundeck.plugins.ansible.ansible;
+
+import com.dtolabs.rundeck.core.common.INodeEntry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Groups concurrent per-node invocations sharing the same key into a single batch.
+ * <p>
+ * The first caller for a key becomes the batch leader: it waits until the batch is full or the
+ * collection window elapses, runs the batch action once for every collected node, and each caller
+ * then receives the result for its own node. Callers arriving after a batch was closed start a new one.
+ * </p>
+ *
+ * @param <R> per-node result type
+ */
+@Slf4j
+public class AnsibleBatchDispatcher<R> {
+
+    public interface BatchAction<R> {
+        /**
+         * Runs the batched work.
+         *
+         * @param nodes all nodes collected in the batch
+         * @return results keyed by node name; nodes without an entry receive null
+         * @throws Exception if the whole batch failed
+         */
+        Map<String, R> run(List<INodeEntry> nodes) throws Exception;
+    }
+
+    private static class Batch<R> {
+        private final List<INodeEntry> nodes = new ArrayList<>();
+        private final CompletableFuture<Map<String, R>> result = new CompletableFuture<>();
+        private final int expectedSize;
+        private boolean closed = false;
+
+        private Batch(int expectedSize) {
+            this.expectedSize = expectedSize;
+        }
+    }
+
+    private final Map<String, Batch<R>> openBatches = new HashMap<>();
+
+    /**
+     * Adds the node to the open batch for the key, running the batch if this caller is its leader.
+     *
+     * @param key          batch key, only invocations with the same key are grouped
+     * @param node         node of this invocation
+     * @param expectedSize number of nodes after which the batch is closed without waiting for the window
+     * @param windowMillis maximum time the leader waits for more nodes
+     * @param action       work to run once for the whole batch
+     * @return the result for this node, or null if the action reported none
+     * @throws Exception the failure of the batch action, if any
+     */
+    public R dispatch(String key, INodeEntry node, int expectedSize, long windowMillis, BatchAction<R> action) throws Exception {
+        Batch<R> batch;
+        boolean leader = false;
+
+        synchronized (openBatches) {
+            batch = openBatches.get(key);
+            if (batch == null) {
+                batch = new Batch<>(expectedSize);
+                openBatches.put(key, batch);
+                leader = true;
+            }
+            batch.nodes.add(node);
+
+            if (batch.nodes.size() >= batch.expectedSize) {
+                closeBatch(key, batch);
+            }
+        }
+
+        if (leader) {
+            runBatch(key, batch, windowMillis, action);
+        }
+
+        try {
+            Map<String, R> results = batch.result.get();
+            return results != null ? results.get(node.getNodename()) : null;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private void runBatch(String key, Batch<R> batch, long windowMillis, BatchAction<R> action) throws InterruptedException {
+        List<INodeEntry> members;
+
+        synchronized (openBatches) {
+            long deadline = System.currentTimeMillis() + windowMillis;
+            try {
+                long remaining;
+                while (!batch.closed && (remaining = deadline - System.currentTimeMillis()) > 0) {
+                    openBatches.wait(remaining);
+                }
+            } catch (InterruptedException e) {
+                // never leave followers waiting on a batch that will not run
+                closeBatch(key, batch);
+                batch.result.completeExceptionally(e);
+                throw e;
+            } finally {
+                closeBatch(key, batch);
+            }
+            members = new ArrayList<>(batch.nodes);
+        }
+
+        log.debug("Running batch '{}' for {} nodes", key, members.size());
+
+        try {
+            batch.result.complete(action.run(members));
+        } catch (Throwable e) {
+            // errors too, followers would wait forever on a result never completed
+            batch.result.completeExceptionally(e);
+        }
+    }
+
+    private void closeBatch(String key, Batch<R> batch) {
+        if (!batch.closed) {
+            batch.closed = true;
+            openBatches.remove(key, batch);
+            openBatches.notifyAll();
+        }
+    }
+}
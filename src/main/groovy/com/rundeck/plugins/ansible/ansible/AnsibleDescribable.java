@@ -107,6 +107,7 @@ public interface AnsibleDescribable extends Describable {
      * property for configuration/UI clarity.
      */
     public static final String ANSIBLE_GENERATE_INVENTORY_NODES_AUTH = "ansible-generate-inventory-nodes-auth";
+    public static final String ANSIBLE_NODES_AUTH_HOST_VARS = "ansible-nodes-auth-host-vars";
     public static final String ANSIBLE_MODULE = "ansible-module";
     public static final String ANSIBLE_MODULE_ARGS = "ansible-module-args";
     public static final String ANSIBLE_DEBUG = "ansible-debug";
@@ -115,6 +116,10 @@ public interface AnsibleDescribable extends Describable {
     public static final String DEFAULT_ANSIBLE_EXECUTABLE = "/bin/sh";
     public static final String DEFAULT_ANSIBLE_WINDOWS_EXECUTABLE = "powershell.exe";
     public static final String ANSIBLE_GATHER_FACTS = "ansible-gather-facts";
+    public static final String ANSIBLE_GATHER_FACTS_TTL = "ansible-gather-facts-ttl";
+    public static final String ANSIBLE_GATHER_FACTS_STREAMING = "ansible-gather-facts-streaming";
+    public static final String ANSIBLE_GATHER_SUBSET = "ansible-gather-subset";
+    public static final String ANSIBLE_FACTS_PROJECTION = "ansible-facts-projection";
     public static final String ANSIBLE_IGNORE_ERRORS = "ansible-ignore-errors";
     public static final String ANSIBLE_EXTRA_TAG = "ansible-extra-tag";
     public static final String ANSIBLE_LIMIT = "ansible-limit";
@@ -138,6 +143,7 @@ public interface AnsibleDescribable extends Describable {
     public static final String ANSIBLE_SSH_KEYPATH_STORAGE_PATH = "ansible-ssh-key-storage-path";
 
     public static final String ANSIBLE_SSH_TIMEOUT = "ansible-ssh-timeout";
+    public static final String ANSIBLE_SSH_CONTROL_PERSIST = "ansible-ssh-control-persist";
     public static final String ANSIBLE_SSH_USER = "ansible-ssh-user";
     public static final String ANSIBLE_SSH_AUTH_TYPE = "ansible-ssh-auth-type";
 
@@ -169,10 +175,26 @@ public interface AnsibleDescribable extends Describable {
 
     public static final String ANSIBLE_ENCRYPT_EXTRA_VARS = "ansible-encrypt-extra-vars";
 
+    // node executor batching
+    public static final String ANSIBLE_NODE_EXECUTOR_BATCH = "ansible-node-executor-batch";
+    public static final String ANSIBLE_NODE_EXECUTOR_BATCH_WINDOW = "ansible-node-executor-batch-window";
+    public static final String DEFAULT_ANSIBLE_NODE_EXECUTOR_BATCH_WINDOW = "500";
+    public static final String ANSIBLE_WORKER = "ansible-worker";
+    public static final String ANSIBLE_WORKER_IDLE_TIMEOUT = "ansible-worker-idle-timeout";
+    public static final String DEFAULT_ANSIBLE_WORKER_IDLE_TIMEOUT = "300";
+    // playbook node step batching
+    public static final String ANSIBLE_PLAYBOOK_NODE_STEP_BATCH = "ansible-playbook-node-step-batch";
+    public static final String ANSIBLE_PLAYBOOK_NODE_STEP_BATCH_WINDOW = "ansible-playbook-node-step-batch-window";
+    public static final String DEFAULT_ANSIBLE_PLAYBOOK_NODE_STEP_BATCH_WINDOW = "500";
+    public static final String ANSIBLE_FORKS_BUDGET = "ansible-forks-budget";
+
     // Inventory Yaml
     String ANSIBLE_YAML_DATA_SIZE   = "ansible-yaml-data-size";
     String ANSIBLE_YAML_MAX_ALIASES = "ansible-yaml-max-aliases";
+    String ANSIBLE_YAML_STREAMING = "ansible-yaml-streaming";
+    String ANSIBLE_INVENTORY_JSON = "ansible-inventory-json";
     String INVENTORY_YAML = "Inventory Yaml";
+    String ANSIBLE_INVENTORY_CACHE_TTL = "ansible-inventory-cache-ttl";
     Map<String, Object> inventoryYamlOpt = Map.of(
         StringRenderingConstants.GROUPING, SECONDARY,
         StringRenderingConstants.GROUP_NAME, INVENTORY_YAML
@@ -247,6 +269,15 @@ public interface AnsibleDescribable extends Describable {
             .description("Pass authentication credentials from Rundeck nodes for Ansible Playbook Workflow Steps only (not supported for Node Steps). See the Ansible plugin documentation for details.")
             .build();
 
+    static final Property NODES_AUTH_HOST_VARS = PropertyBuilder.builder()
+            .booleanType(ANSIBLE_NODES_AUTH_HOST_VARS)
+            .required(false)
+            .title("Workflow Step: Pass Node Authentication in host_vars Files")
+            .description("Write the authentication passed from Rundeck nodes to a host_vars file per host next to the inventory,"+
+                    " instead of maps of all the hosts in group_vars/all.yaml looked up by extra vars on each task."+
+                    " Variables of the plays then take precedence over the node authentication.")
+            .build();
+
     public static Property EXECUTABLE_PROP = PropertyUtil.freeSelect(
               ANSIBLE_EXECUTABLE,
               "Executable",
@@ -273,6 +304,42 @@ public interface AnsibleDescribable extends Describable {
               "true"
     );
 
+    public static Property GATHER_FACTS_TTL_PROP = PropertyBuilder.builder()
+            .integer(ANSIBLE_GATHER_FACTS_TTL)
+            .required(false)
+            .title("Facts TTL")
+            .description("Seconds the gathered facts of a host are kept on disk and reused (Default value is 0, facts are always gathered)."+
+                    " Only the hosts without fresh facts are gathered on each refresh."+
+                    " (This only applies when Gather Facts = Yes)")
+            .build();
+
+    public static Property GATHER_FACTS_STREAMING_PROP = PropertyBuilder.builder()
+            .booleanType(ANSIBLE_GATHER_FACTS_STREAMING)
+            .required(false)
+            .title("Stream Facts")
+            .description("Read the facts of each host from the ansible output while the play runs, instead of"+
+                    " writing a file per host and reading them once it is over."+
+                    " (This only applies when Gather Facts = Yes)")
+            .build();
+
+    public static Property GATHER_SUBSET_PROP = PropertyUtil.string(
+              ANSIBLE_GATHER_SUBSET,
+              "Gather Subset",
+              "Comma separated fact subsets to gather, e.g. '!all,!min,distribution,hardware' (Default is the ansible gather_subset setting)."+
+              " (This only applies when Gather Facts = Yes)",
+              false,
+              null
+    );
+
+    public static Property FACTS_PROJECTION_PROP = PropertyBuilder.builder()
+            .booleanType(ANSIBLE_FACTS_PROJECTION)
+            .required(false)
+            .title("Fact Projection")
+            .description("Only return the facts imported as node attributes from the hosts, and only keep the vars the nodes"+
+                    " are built from unless inventory vars are imported. Needs ansible 2.11 or later."+
+                    " (This only applies when Gather Facts = Yes)")
+            .build();
+
     public static Property IGNORE_ERRORS_PROP = PropertyUtil.bool(
               ANSIBLE_IGNORE_ERRORS,
               "Ignore Host Discovery Errors",
@@ -446,6 +513,17 @@ public interface AnsibleDescribable extends Describable {
             .renderingOption(StringRenderingConstants.GROUP_NAME,"SSH Extra Configuration")
             .build();
 
+    static final Property SSH_CONTROL_PERSIST_PROP = PropertyBuilder.builder()
+            .integer(ANSIBLE_SSH_CONTROL_PERSIST)
+            .required(false)
+            .title("SSH ControlPersist")
+            .description("Time in seconds the ssh master connections opened by a run are kept for the next runs of the same execution,"+
+                    " in a ControlPath directory of the execution instead of ~/.ansible/cp (default=0, the ssh connection sharing is left to ansible)."+
+                    " ssh_args, control_path or control_path_dir set in ansible.cfg or the environment are always kept.")
+            .renderingOption(StringRenderingConstants.GROUPING,"SECONDARY")
+            .renderingOption(StringRenderingConstants.GROUP_NAME,"SSH Extra Configuration")
+            .build();
+
     static final Property SSH_USE_AGENT = PropertyBuilder.builder()
             .booleanType(ANSIBLE_SSH_USE_AGENT)
             .required(false)
@@ -555,6 +633,75 @@ public interface AnsibleDescribable extends Describable {
             .description("Encrypt the value of the extra vars keys.")
             .build();
 
+    static final Property NODE_EXECUTOR_BATCH_PROP = PropertyBuilder.builder()
+            .booleanType(ANSIBLE_NODE_EXECUTOR_BATCH)
+            .required(false)
+            .title("Batch commands")
+            .description("Group the commands of a parallel dispatched step into a single ansible run against all of its nodes, instead of one ansible process per node.")
+            .renderingOption(StringRenderingConstants.GROUPING,"SECONDARY")
+            .renderingOption(StringRenderingConstants.GROUP_NAME,"Batching")
+            .build();
+
+    static final Property NODE_EXECUTOR_BATCH_WINDOW_PROP = PropertyBuilder.builder()
+            .integer(ANSIBLE_NODE_EXECUTOR_BATCH_WINDOW)
+            .required(false)
+            .title("Batch window")
+            .description("Maximum time in milliseconds to wait for the nodes of a step to join a batch (default=500).")
+            .defaultValue(DEFAULT_ANSIBLE_NODE_EXECUTOR_BATCH_WINDOW)
+            .renderingOption(StringRenderingConstants.GROUPING,"SECONDARY")
+            .renderingOption(StringRenderingConstants.GROUP_NAME,"Batching")
+            .build();
+
+    static final Property PLAYBOOK_NODE_STEP_BATCH_PROP = PropertyBuilder.builder()
+            .booleanType(ANSIBLE_PLAYBOOK_NODE_STEP_BATCH)
+            .required(false)
+            .title("Batch nodes")
+            .description("Run the playbook once against all the nodes of a parallel dispatched step, instead of one ansible-playbook process per node. Each node gets the outcome of its host in the play recap.")
+            .renderingOption(StringRenderingConstants.GROUPING,"SECONDARY")
+            .renderingOption(StringRenderingConstants.GROUP_NAME,"Batching")
+            .build();
+
+    static final Property PLAYBOOK_NODE_STEP_BATCH_WINDOW_PROP = PropertyBuilder.builder()
+            .integer(ANSIBLE_PLAYBOOK_NODE_STEP_BATCH_WINDOW)
+            .required(false)
+            .title("Batch window")
+            .description("Maximum time in milliseconds to wait for the nodes of a step to join a batch (default=500).")
+            .defaultValue(DEFAULT_ANSIBLE_PLAYBOOK_NODE_STEP_BATCH_WINDOW)
+            .renderingOption(StringRenderingConstants.GROUPING,"SECONDARY")
+            .renderingOption(StringRenderingConstants.GROUP_NAME,"Batching")
+            .build();
+
+    static final Property WORKER_PROP = PropertyBuilder.builder()
+            .booleanType(ANSIBLE_WORKER)
+            .required(false)
+            .title("Use a warm ansible worker")
+            .description("Run the ansible commands in a long-lived local worker process, started once per ansible configuration, instead of a new ansible process per command. Requires ansible and Rundeck on a unix host.")
+            .renderingOption(StringRenderingConstants.GROUPING,"SECONDARY")
+            .renderingOption(StringRenderingConstants.GROUP_NAME,"Worker")
+            .build();
+
+    static final Property WORKER_IDLE_TIMEOUT_PROP = PropertyBuilder.builder()
+            .integer(ANSIBLE_WORKER_IDLE_TIMEOUT)
+            .required(false)
+            .title("Worker idle timeout")
+            .description("Time in seconds after which an unused worker exits (default=300).")
+            .defaultValue(DEFAULT_ANSIBLE_WORKER_IDLE_TIMEOUT)
+            .renderingOption(StringRenderingConstants.GROUPING,"SECONDARY")
+            .renderingOption(StringRenderingConstants.GROUP_NAME,"Worker")
+            .build();
+
+    static final Property FORKS_BUDGET_PROP = PropertyBuilder.builder()
+            .integer(ANSIBLE_FORKS_BUDGET)
+            .required(false)
+            .title("Forks budget")
+            .description("Maximum number of ansible forks run at the same time by the steps of this Rundeck server."+
+                    " Each run gets one fork per target host within what is left of the budget, and at least ansible's default of 5."+
+                    " Default: 4 per core of the server, 0 leaves the forks to ansible."+
+                    " Forks set in the extra params, ANSIBLE_FORKS or ansible.cfg are always kept.")
+            .renderingOption(StringRenderingConstants.GROUPING,"SECONDARY")
+            .renderingOption(StringRenderingConstants.GROUP_NAME,"Forks")
+            .build();
+
     Property YAML_DATA_SIZE_PROP = PropertyBuilder.builder()
             .integer(ANSIBLE_YAML_DATA_SIZE)
             .required(false)
@@ -574,4 +721,34 @@ public interface AnsibleDescribable extends Describable {
                     " (This only applies when Gather Facts = No)")
             .renderingOptions(inventoryYamlOpt)
             .build();
+
+    Property YAML_STREAMING_PROP = PropertyBuilder.builder()
+            .booleanType(ANSIBLE_YAML_STREAMING)
+            .required(false)
+            .title("Streaming")
+            .description("Read the inventory while ansible-inventory outputs it, one host at a time, instead of loading"+
+                    " the whole yaml in memory. Data Size is not applied in this mode."+
+                    " (This only applies when Gather Facts = No)")
+            .renderingOptions(inventoryYamlOpt)
+            .build();
+
+    Property INVENTORY_JSON_PROP = PropertyBuilder.builder()
+            .booleanType(ANSIBLE_INVENTORY_JSON)
+            .required(false)
+            .title("JSON Output")
+            .description("Read the inventory from the JSON output of ansible-inventory, which is faster to parse than yaml."+
+                    " Data Size, Max Aliases and Streaming are not used in this mode."+
+                    " (This only applies when Gather Facts = No)")
+            .renderingOptions(inventoryYamlOpt)
+            .build();
+
+    Property INVENTORY_CACHE_TTL_PROP = PropertyBuilder.builder()
+            .integer(ANSIBLE_INVENTORY_CACHE_TTL)
+            .required(false)
+            .title("Cache TTL")
+            .description("Seconds the imported nodes are reused before they are reloaded (Default value is 0, no cache)."+
+                    " Once expired, the previous nodes are returned while they are refreshed in the background."+
+                    " Changes to local inventory or config files always reload the nodes.")
+            .renderingOptions(inventoryYamlOpt)
+            .build();
 }
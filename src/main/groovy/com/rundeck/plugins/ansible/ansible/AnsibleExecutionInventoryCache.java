@@ -0,0 +1,196 @@
+package com.rundeck.plugins.ansible.ansible;
+
+import com.dtolabs.rundeck.core.common.INodeEntry;
+import com.dtolabs.rundeck.core.plugins.configuration.ConfigurationException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Shares the inventories generated from the Rundeck nodes between the steps of an execution.
+ * <p>
+ * A node step gets the whole node set of the execution, once for each node: without sharing, the same inventory
+ * would be written once per node. Inventories are keyed by execution and by the content of the nodes, built once
+ * in an {@code ansible-exec-<executionId>-inventory-} directory and treated as read-only by the steps using them.
+ * </p>
+ * <p>
+ * An inventory is deleted once it has not been used by any step for the release delay, see
+ * {@link AnsibleExecutionRegistry}.
+ * </p>
+ */
+@Slf4j
+public class AnsibleExecutionInventoryCache {
+
+    static final long DEFAULT_RELEASE_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(60);
+
+    private static final AnsibleExecutionInventoryCache INSTANCE = new AnsibleExecutionInventoryCache(DEFAULT_RELEASE_DELAY_MILLIS);
+
+    /**
+     * Use of a shared inventory by a step, to be released once the step is done.
+     */
+    public class Lease {
+        private final Entry entry;
+        private boolean released;
+
+        private Lease(Entry entry) {
+            this.entry = entry;
+        }
+
+        public File getFile() {
+            return entry.file;
+        }
+
+        public synchronized void release() {
+            if (!released) {
+                released = true;
+                entries.release(entry.key);
+            }
+        }
+    }
+
+    private static class Entry {
+        private final String key;
+        private final String executionId;
+        private File directory;
+        private volatile File file;
+
+        private Entry(String key, String executionId) {
+            this.key = key;
+            this.executionId = executionId;
+        }
+    }
+
+    private final AnsibleExecutionRegistry<Entry> entries;
+
+    AnsibleExecutionInventoryCache(long releaseDelayMillis) {
+        // an inventory that was never built is dropped at once
+        this.entries = new AnsibleExecutionRegistry<>(entry -> entry.file != null ? releaseDelayMillis : 0,
+                AnsibleExecutionInventoryCache::remove);
+    }
+
+    public static AnsibleExecutionInventoryCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the inventory of the nodes for the execution, generating it if no step of the execution did yet.
+     *
+     * @param executionId Rundeck execution id
+     * @param baseTmpDir  directory the inventory directories are created in
+     * @param nodes       nodes of the inventory
+     * @return lease of the shared inventory
+     * @throws ConfigurationException if the inventory cannot be generated
+     */
+    public Lease acquire(String executionId, String baseTmpDir, Collection<INodeEntry> nodes) throws ConfigurationException {
+        String key = executionId + ":" + fingerprint(nodes);
+        Entry entry = entries.acquire(key, k -> new Entry(k, executionId));
+
+        try {
+            synchronized (entry) {
+                if (entry.file == null) {
+                    build(entry, baseTmpDir, nodes);
+                }
+            }
+        } catch (ConfigurationException | RuntimeException e) {
+            entries.release(key);
+            throw e;
+        }
+        return new Lease(entry);
+    }
+
+    private void build(Entry entry, String baseTmpDir, Collection<INodeEntry> nodes) throws ConfigurationException {
+        File directory;
+        try {
+            directory = Files.createTempDirectory(Paths.get(baseTmpDir), "ansible-exec-" + entry.executionId + "-inventory-").toFile();
+        } catch (IOException e) {
+            throw new ConfigurationException("Could not create the inventory directory under " + baseTmpDir + ": " + e.getMessage());
+        }
+        try {
+            File file = new AnsibleInventoryBuilder(nodes, directory.getAbsolutePath()).buildInventory();
+            file.setReadOnly();
+            entry.directory = directory;
+            entry.file = file;
+            log.debug("Generated the inventory of execution {} with {} nodes: {}", entry.executionId, nodes.size(), file.getAbsolutePath());
+        } catch (ConfigurationException | RuntimeException e) {
+            delete(directory);
+            throw e;
+        }
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    private static void remove(String key, Entry entry) {
+        if (entry.file != null) {
+            log.debug("Deleting the inventory of execution {}: {}", entry.executionId, entry.file.getAbsolutePath());
+            delete(entry.directory);
+        }
+    }
+
+    private static void delete(File directory) {
+        try (Stream<Path> paths = Files.walk(directory.toPath())) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(file -> {
+                if (!file.delete()) {
+                    log.warn("Failed to delete {}. Marking for deletion on JVM exit.", file.getAbsolutePath());
+                    file.deleteOnExit();
+                }
+            });
+        } catch (IOException e) {
+            log.warn("Failed to delete the inventory directory {}: {}", directory.getAbsolutePath(), e.getMessage());
+        }
+    }
+
+    /**
+     * @return hex SHA-256 of the names, host names and attributes of the nodes, independent of their order
+     */
+    static String fingerprint(Collection<INodeEntry> nodes) {
+        List<INodeEntry> sorted = new ArrayList<>(nodes);
+        sorted.sort(Comparator.comparing(INodeEntry::getNodename, Comparator.nullsFirst(Comparator.naturalOrder())));
+
+        MessageDigest digest = sha256();
+        for (INodeEntry node : sorted) {
+            update(digest, node.getNodename());
+            update(digest, node.getHostname());
+            Map<String, String> attributes = node.getAttributes() != null ? new TreeMap<>(node.getAttributes()) : Map.of();
+            for (Map.Entry<String, String> attribute : attributes.entrySet()) {
+                update(digest, attribute.getKey());
+                update(digest, attribute.getValue());
+            }
+            // end of node
+            digest.update((byte) 1);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        if (value != null) {
+            digest.update(value.getBytes(StandardCharsets.UTF_8));
+        }
+        digest.update((byte) 0);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.rundeck.plugins.ansible.ansible;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
+
+/**
+ * Resources shared by the runs of an execution, such as its ssh-agent or its generated inventories.
+ * <p>
+ * The plugins are not told when an execution ends: a resource is closed once no run uses it and it has not been
+ * used for its time to live, long enough to cover the gap between the sequential steps of an execution.
+ * </p>
+ *
+ * @param <T> type of the resources
+ */
+class AnsibleExecutionRegistry<T> {
+
+    private static final ScheduledExecutorService CLEANUP_EXECUTOR = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ansible-execution-cleanup");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Creates the resource of a key.
+     */
+    interface Factory<T, E extends Exception> {
+        T create(String key) throws E;
+    }
+
+    /**
+     * Releases what a resource holds once it is dropped.
+     */
+    interface Closer<T> {
+        void close(String key, T resource);
+    }
+
+    private class Entry {
+        private final String key;
+        private final T resource;
+        private int runs;
+        private long lastUsed = System.currentTimeMillis();
+        private ScheduledFuture<?> removal;
+
+        private Entry(String key, T resource) {
+            this.key = key;
+            this.resource = resource;
+        }
+    }
+
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final ToLongFunction<T> timeToLive;
+    private final Closer<T> closer;
+
+    /**
+     * @param timeToLive time in milliseconds a resource is kept once unused, 0 to drop it at once
+     * @param closer     called once a resource is dropped
+     */
+    AnsibleExecutionRegistry(ToLongFunction<T> timeToLive, Closer<T> closer) {
+        this.timeToLive = timeToLive;
+        this.closer = closer;
+    }
+
+    /**
+     * Gets the resource of a key for a run, creating it if needed. The resource must be given back with
+     * {@link #release(String)} once the run is done.
+     */
+    <E extends Exception> T acquire(String key, Factory<T, E> factory) throws E {
+        synchronized (entries) {
+            Entry entry = entry(key, factory);
+            entry.runs++;
+            entry.lastUsed = System.currentTimeMillis();
+            if (entry.removal != null) {
+                entry.removal.cancel(false);
+                entry.removal = null;
+            }
+            return entry.resource;
+        }
+    }
+
+    /**
+     * Gets the resource of a key, creating it if needed, for a use that is not given back: it is dropped once
+     * unused for its time to live.
+     */
+    <E extends Exception> T get(String key, Factory<T, E> factory) throws E {
+        synchronized (entries) {
+            Entry entry = entry(key, factory);
+            entry.lastUsed = System.currentTimeMillis();
+            if (entry.runs <= 0 && entry.removal == null) {
+                scheduleRemoval(entry, timeToLive.applyAsLong(entry.resource));
+            }
+            return entry.resource;
+        }
+    }
+
+    /**
+     * Gives back the resource of a run that is done.
+     */
+    void release(String key) {
+        Entry dropped;
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry == null || --entry.runs > 0) {
+                return;
+            }
+            entry.lastUsed = System.currentTimeMillis();
+            long delay = timeToLive.applyAsLong(entry.resource);
+            if (delay > 0) {
+                scheduleRemoval(entry, delay);
+                return;
+            }
+            entries.remove(key);
+            dropped = entry;
+        }
+        closer.close(dropped.key, dropped.resource);
+    }
+
+    /**
+     * Drops the resources not used by any run for their time to live.
+     */
+    void expire(long now) {
+        List<Entry> expired = new ArrayList<>();
+        synchronized (entries) {
+            entries.values().removeIf(entry -> {
+                if (entry.runs <= 0 && now - entry.lastUsed >= timeToLive.applyAsLong(entry.resource)) {
+                    if (entry.removal != null) {
+                        entry.removal.cancel(false);
+                    }
+                    expired.add(entry);
+                    return true;
+                }
+                return false;
+            });
+        }
+        for (Entry entry : expired) {
+            closer.close(entry.key, entry.resource);
+        }
+    }
+
+    int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private <E extends Exception> Entry entry(String key, Factory<T, E> factory) throws E {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            entry = new Entry(key, factory.create(key));
+            entries.put(key, entry);
+        }
+        return entry;
+    }
+
+    private void scheduleRemoval(Entry entry, long delay) {
+        entry.removal = CLEANUP_EXECUTOR.schedule(() -> remove(entry), delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void remove(Entry entry) {
+        synchronized (entries) {
+            // acquired again since the removal was scheduled
+            if (entry.runs > 0 || entries.get(entry.key) != entry) {
+                return;
+            }
+            long idle = System.currentTimeMillis() - entry.lastUsed;
+            long ttl = timeToLive.applyAsLong(entry.resource);
+            if (idle < ttl) {
+                // used without being acquired since
+                scheduleRemoval(entry, ttl - idle);
+                return;
+            }
+            entries.remove(entry.key);
+            entry.removal = null;
+        }
+        closer.close(entry.key, entry.resource);
+    }
+}
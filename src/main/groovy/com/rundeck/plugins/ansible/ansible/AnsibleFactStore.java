@@ -0,0 +1,174 @@
+package com.rundeck.plugins.ansible.ansible;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps the fact files written by the gather hosts playbook between node refreshes.
+ * <p>
+ * One file per host, named after its {@code inventory_hostname}. The modification time of a file is the time its
+ * facts were gathered: facts younger than the TTL are fresh and the host does not need to be gathered again,
+ * older facts are dropped on the next {@link #store(Path)}.
+ * </p>
+ * <p>
+ * The hosts of the last gather run are recorded with the fingerprint of the inventory, so that a refresh finding
+ * all of them fresh in an unchanged inventory can skip the gather run, which would target no host.
+ * </p>
+ */
+@Slf4j
+public class AnsibleFactStore {
+
+    // hidden, so that it is not taken for the facts of a host
+    private static final String TARGETS = ".targets";
+
+    private final Path directory;
+    private final long ttlMillis;
+    private final LongSupplier clock;
+
+    public AnsibleFactStore(Path directory, long ttlMillis) {
+        this(directory, ttlMillis, System::currentTimeMillis);
+    }
+
+    AnsibleFactStore(Path directory, long ttlMillis, LongSupplier clock) {
+        this.directory = directory;
+        this.ttlMillis = ttlMillis;
+        this.clock = clock;
+    }
+
+    /**
+     * @return fact files younger than the TTL, keyed and sorted by host name
+     * @throws IOException if the store cannot be listed
+     */
+    public Map<String, Path> freshFacts() throws IOException {
+        Map<String, Path> fresh = new TreeMap<>();
+        if (!Files.isDirectory(directory)) {
+            return fresh;
+        }
+
+        long now = clock.getAsLong();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                // hidden files are facts being written
+                if (Files.isRegularFile(file) && !file.getFileName().toString().startsWith(".")
+                        && now - Files.getLastModifiedTime(file).toMillis() < ttlMillis) {
+                    fresh.put(file.getFileName().toString(), file);
+                }
+            }
+        }
+        return fresh;
+    }
+
+    /**
+     * Stores the facts of a host gathered without a fact file, replacing its previous facts.
+     *
+     * @param host  inventory host name
+     * @param facts host facts, in json
+     * @throws IOException if the facts cannot be written
+     */
+    public void put(String host, String facts) throws IOException {
+        Files.createDirectories(directory);
+        Path file = Files.createTempFile(directory, ".facts", ".tmp");
+        try {
+            Files.writeString(file, facts);
+            Files.setLastModifiedTime(file, FileTime.fromMillis(clock.getAsLong()));
+            move(file, directory.resolve(host));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Moves the newly gathered fact files into the store, replacing the previous facts of their hosts,
+     * and deletes the expired ones.
+     *
+     * @param dataDirectory directory the gather hosts playbook wrote the facts to, may not exist
+     * @throws IOException if the files cannot be moved
+     */
+    public void store(Path dataDirectory) throws IOException {
+        Files.createDirectories(directory);
+
+        if (Files.isDirectory(dataDirectory)) {
+            List<Path> gathered = new ArrayList<>();
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(dataDirectory)) {
+                files.forEach(gathered::add);
+            }
+            for (Path file : gathered) {
+                Path target = directory.resolve(file.getFileName().toString());
+                // the gather time is the time the facts were moved in, not the time the template was written
+                Files.setLastModifiedTime(file, FileTime.fromMillis(clock.getAsLong()));
+                move(file, target);
+            }
+        }
+
+        long now = clock.getAsLong();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                if (Files.isRegularFile(file) && now - Files.getLastModifiedTime(file).toMillis() >= ttlMillis) {
+                    log.debug("Dropping expired facts {}", file);
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Records the hosts of a gather run.
+     *
+     * @param fingerprint fingerprint of the inventory the hosts were gathered from
+     * @param hosts       hosts with fresh facts after the run
+     * @throws IOException if the hosts cannot be written
+     */
+    public void storeTargets(String fingerprint, Collection<String> hosts) throws IOException {
+        Files.createDirectories(directory);
+        List<String> lines = new ArrayList<>();
+        lines.add(fingerprint);
+        lines.addAll(hosts);
+        Path file = Files.createTempFile(directory, ".targets", ".tmp");
+        try {
+            Files.write(file, lines, StandardCharsets.UTF_8);
+            Files.setLastModifiedTime(file, FileTime.fromMillis(clock.getAsLong()));
+            move(file, directory.resolve(TARGETS));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * @param fingerprint fingerprint of the inventory
+     * @return true if the inventory is unchanged since the last gather run and all its hosts still have fresh facts
+     * @throws IOException if the store cannot be read
+     */
+    public boolean coversTargets(String fingerprint) throws IOException {
+        Path file = directory.resolve(TARGETS);
+        if (!Files.isRegularFile(file)) {
+            return false;
+        }
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        if (lines.size() < 2 || !lines.get(0).equals(fingerprint)) {
+            return false;
+        }
+        return freshFacts().keySet().containsAll(lines.subList(1, lines.size()));
+    }
+
+    private static void move(Path file, Path target) throws IOException {
+        try {
+            Files.move(file, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(file, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.rundeck.plugins.ansible.ansible;
+
+/**
+ * Sizes the {@code --forks} of the ansible runs of this Rundeck server.
+ * <p>
+ * A run gets one fork per target host, within the forks budget of the server left by the runs in progress, and
+ * never fewer than ansible's own default of 5 forks unless the budget or the run is smaller. Without a budget
+ * configured, the server allows 4 forks per core.
+ * </p>
+ */
+public class AnsibleForks {
+
+    static final int FORKS_PER_CORE = 4;
+    static final int ANSIBLE_DEFAULT_FORKS = 5;
+
+    // forks of the runs in progress
+    private static int running;
+
+    /**
+     * @return forks budget of the server when none is configured
+     */
+    public static int defaultBudget() {
+        return Runtime.getRuntime().availableProcessors() * FORKS_PER_CORE;
+    }
+
+    /**
+     * Reserves the forks of a run, to be released with {@link #release(int)} once the run is done.
+     *
+     * @param targets number of target hosts, 0 if unknown
+     * @param budget  forks budget of the server
+     * @return forks of the run
+     */
+    public static synchronized int acquire(int targets, int budget) {
+        int forks = forks(targets, budget, running);
+        running += forks;
+        return forks;
+    }
+
+    public static synchronized void release(int forks) {
+        running = Math.max(0, running - forks);
+    }
+
+    static synchronized int running() {
+        return running;
+    }
+
+    /**
+     * @param targets number of target hosts, 0 if unknown
+     * @param budget  forks budget of the server
+     * @param running forks of the runs in progress
+     * @return forks of a run
+     */
+    static int forks(int targets, int budget, int running) {
+        int available = Math.max(Math.min(ANSIBLE_DEFAULT_FORKS, budget), budget - running);
+        return Math.max(1, targets > 0 ? Math.min(targets, available) : available);
+    }
+}
@@ -0,0 +1,202 @@
+package com.rundeck.plugins.ansible.ansible;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+import lombok.Builder;
+import lombok.Data;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Outcome of an ad-hoc ansible run for a single host, as written by the
+ * {@code ansible.builtin.tree} callback.
+ */
+@Builder
+@Data
+public class AnsibleHostResult {
+
+    private String host;
+    private Integer rc;
+    private boolean changed;
+    private boolean failed;
+    private boolean unreachable;
+    private boolean skipped;
+    private String msg;
+    // length of the module stdout, known even when the stdout is not kept
+    private Integer stdoutSize;
+    private String stdout;
+    private String stderr;
+
+    /**
+     * @return true if the host was reached and the module reported no failure
+     */
+    public boolean isSuccess() {
+        return !failed && !unreachable && (rc == null || rc == 0);
+    }
+
+    public static AnsibleHostResult fromJson(String host, JsonObject root) {
+        String stdout = getString(root, "stdout");
+        return AnsibleHostResult.builder()
+                .host(host)
+                .rc(root.has("rc") && root.get("rc").isJsonPrimitive() ? root.get("rc").getAsInt() : null)
+                .changed(getBoolean(root, "changed"))
+                .failed(getBoolean(root, "failed"))
+                .unreachable(getBoolean(root, "unreachable"))
+                .skipped(getBoolean(root, "skipped"))
+                .msg(getString(root, "msg"))
+                .stdoutSize(stdout != null ? stdout.length() : null)
+                .stdout(stdout)
+                .stderr(getString(root, "stderr"))
+                .build();
+    }
+
+    /**
+     * Reads every per-host file the tree callback wrote into the given directory, with the stdout and stderr of
+     * each host.
+     *
+     * @see #readTreeDirectory(Path, boolean)
+     */
+    public static Map<String, AnsibleHostResult> readTreeDirectory(Path treeDirectory) throws IOException {
+        return readTreeDirectory(treeDirectory, true);
+    }
+
+    /**
+     * Reads every per-host file the tree callback wrote into the given directory. The files are streamed, only
+     * the fields of the result are kept.
+     *
+     * @param treeDirectory value used for ANSIBLE_CALLBACK_TREE_DIR
+     * @param keepOutput    false to only keep the size of the stdout of each host, not its stdout and stderr
+     * @return map of inventory hostname to its result, empty if the directory does not exist
+     * @throws IOException if a result file cannot be read
+     */
+    public static Map<String, AnsibleHostResult> readTreeDirectory(Path treeDirectory, boolean keepOutput) throws IOException {
+        Map<String, AnsibleHostResult> results = new HashMap<>();
+        if (treeDirectory == null || !Files.isDirectory(treeDirectory)) {
+            return results;
+        }
+
+        try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(treeDirectory, Files::isRegularFile)) {
+            for (Path hostFile : directoryStream) {
+                String host = hostFile.getFileName().toString();
+                try (JsonReader reader = new JsonReader(Files.newBufferedReader(hostFile, StandardCharsets.UTF_8))) {
+                    results.put(host, read(host, reader, keepOutput));
+                } catch (MalformedJsonException | EOFException | IllegalStateException | JsonParseException e) {
+                    // not a tree callback result (e.g. a stray file in a shared base directory)
+                }
+            }
+        }
+        return results;
+    }
+
+    static AnsibleHostResult read(String host, JsonReader reader, boolean keepOutput) throws IOException {
+        AnsibleHostResultBuilder result = AnsibleHostResult.builder().host(host);
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "rc":
+                    result.rc(readInteger(reader));
+                    break;
+                case "changed":
+                    result.changed(readBoolean(reader));
+                    break;
+                case "failed":
+                    result.failed(readBoolean(reader));
+                    break;
+                case "unreachable":
+                    result.unreachable(readBoolean(reader));
+                    break;
+                case "skipped":
+                    result.skipped(readBoolean(reader));
+                    break;
+                case "msg":
+                    result.msg(readString(reader));
+                    break;
+                case "stdout":
+                    String stdout = readString(reader);
+                    result.stdoutSize(stdout != null ? stdout.length() : null);
+                    if (keepOutput) {
+                        result.stdout(stdout);
+                    }
+                    break;
+                case "stderr":
+                    if (keepOutput) {
+                        result.stderr(readString(reader));
+                    } else {
+                        reader.skipValue();
+                    }
+                    break;
+                default:
+                    // stdout_lines, facts, invocation...
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return result.build();
+    }
+
+    private static Integer readInteger(JsonReader reader) throws IOException {
+        JsonToken token = reader.peek();
+        if (token == JsonToken.NUMBER || token == JsonToken.STRING) {
+            String value = reader.nextString();
+            try {
+                return Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        reader.skipValue();
+        return null;
+    }
+
+    private static boolean readBoolean(JsonReader reader) throws IOException {
+        JsonToken token = reader.peek();
+        if (token == JsonToken.BOOLEAN) {
+            return reader.nextBoolean();
+        }
+        if (token == JsonToken.NUMBER || token == JsonToken.STRING) {
+            return Boolean.parseBoolean(reader.nextString());
+        }
+        reader.skipValue();
+        return false;
+    }
+
+    private static String readString(JsonReader reader) throws IOException {
+        switch (reader.peek()) {
+            case NULL:
+                reader.nextNull();
+                return null;
+            case BOOLEAN:
+                return String.valueOf(reader.nextBoolean());
+            case NUMBER:
+            case STRING:
+                return reader.nextString();
+            default:
+                return JsonParser.parseReader(reader).toString();
+        }
+    }
+
+    private static boolean getBoolean(JsonObject root, String field) {
+        JsonElement ele = root.get(field);
+        return ele != null && ele.isJsonPrimitive() && ele.getAsBoolean();
+    }
+
+    private static String getString(JsonObject root, String field) {
+        JsonElement ele = root.get(field);
+        if (ele == null || ele.isJsonNull()) {
+            return null;
+        }
+        return ele.isJsonPrimitive() ? ele.getAsString() : ele.toString();
+    }
+}
@@ -1,16 +1,11 @@
 package com.rundeck.plugins.ansible.ansible;
 
-import java.io.StringReader;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.regex.Pattern;
 
-import com.google.gson.Gson;
 import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
-import com.google.gson.JsonPrimitive;
-import com.google.gson.stream.JsonReader;
 
 public class AnsibleInventory {
 
@@ -30,15 +25,7 @@ public class AnsibleInventory {
 
       // Add ALL node attributes as inventory host variables
       for (Entry<String, String> attribute : attributes.entrySet() ) {
-        JsonElement json;
-        try {
-          json = JsonParser.parseString(attribute.getValue());
-        } catch (Exception e) {
-          // convert Strings to Primitives
-          json = new JsonPrimitive(attribute.getValue());
-        }
-
-        attributesJson.put(attribute.getKey(), json);
+        attributesJson.put(attribute.getKey(), AnsibleInventoryWriter.toJsonElement(attribute.getValue()));
       }
 
       hosts.put(nodeName, attributesJson);
@@ -51,27 +38,26 @@ public class AnsibleInventory {
     }
   }
 
+  // Attributes that are reserved in Ansible
+  static final String[] RESERVED_ATTRIBUTES = { "hostvars", "group_names", "groups", "environment" };
+  // Create Ansible groups by attribute
+  // Group by osFamily is needed for windows hosts setup
+  static final String[] GROUP_ATTRIBUTES = { "osFamily", "tags" };
+  private static final Pattern INVALID_GROUP_NAME_CHARACTERS = Pattern.compile("[^a-z0-9_\\-]");
+
   protected AnsibleInventoryHosts all = new AnsibleInventoryHosts();
 
   public AnsibleInventory addHost(String nodeName, String host, Map<String, String> attributes) {
     // Remove attributes that are reserved in Ansible
-    String[] reserved = { "hostvars", "group_names", "groups", "environment" };
-    for (String r: reserved){
+    for (String r: RESERVED_ATTRIBUTES){
       attributes.remove(r);
     }
 
-    // Create Ansible groups by attribute
-    // Group by osFamily is needed for windows hosts setup
-    String[] attributeGroups = { "osFamily", "tags" };
-    for (String g: attributeGroups) {
+    for (String g: GROUP_ATTRIBUTES) {
       if (attributes.containsKey(g)) {
         String[] groupNames = attributes.get(g).toLowerCase().split(",");
         for (String groupName: groupNames) {
-          // Sanitize group name: Ansible only allows letters, numbers, underscores, and hyphens
-          // Note: group names are already lowercased above, so we only need to match lowercase
-          // Replace invalid characters (like colons, spaces, special chars) with underscores
-          String sanitizedGroupName = groupName.trim().replaceAll("[^a-z0-9_\\-]", "_");
-          all.getOrAddChildHostGroup(sanitizedGroupName).addHost(nodeName);
+          all.getOrAddChildHostGroup(sanitizeGroupName(groupName)).addHost(nodeName);
         }
       }
     }
@@ -82,4 +68,27 @@ public class AnsibleInventory {
     all.addHost(nodeName, host, attributes);
     return this;
   }
+
+  /**
+   * @return true for the attributes left out of the host variables: the ones reserved in Ansible, and "tags",
+   * used for grouping
+   */
+  static boolean isReserved(String attribute) {
+    if ("tags".equals(attribute)) {
+      return true;
+    }
+    for (String r: RESERVED_ATTRIBUTES) {
+      if (r.equals(attribute)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  static String sanitizeGroupName(String groupName) {
+    // Sanitize group name: Ansible only allows letters, numbers, underscores, and hyphens
+    // Note: group names are already lowercased by the callers, so we only need to match lowercase
+    // Replace invalid characters (like colons, spaces, special chars) with underscores
+    return INVALID_GROUP_NAME_CHARACTERS.matcher(groupName.trim()).replaceAll("_");
+  }
 }
@@ -5,11 +5,12 @@ import com.dtolabs.rundeck.core.plugins.configuration.ConfigurationException;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Map;
 
-import com.google.gson.Gson;
 import com.rundeck.plugins.ansible.util.AnsibleUtil;
 
 public class AnsibleInventoryBuilder {
@@ -23,22 +24,32 @@ public class AnsibleInventoryBuilder {
     }
 
     public File buildInventory() throws ConfigurationException {
+        File file;
         try {
-            File file = AnsibleUtil.createTemporaryFile("ansible-inventory", ".json","",customTmpDirPath);
+            file = AnsibleUtil.createTemporaryFile("ansible-inventory", ".json","",customTmpDirPath);
             file.deleteOnExit();
-            PrintWriter writer = new PrintWriter(file);
-            AnsibleInventory ai = new AnsibleInventory();
+        } catch (IOException e) {
+            throw new ConfigurationException("Could not write temporary inventory: " + e.getMessage());
+        }
+
+        // hosts are written as they are read, the inventory is never held in memory
+        try (Writer out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            AnsibleInventoryWriter writer = new AnsibleInventoryWriter(out);
             for (INodeEntry e : nodes) {
                 if( e.getHostname() == null ){
                     throw new ConfigurationException("No hostname for node: " + e.getNodename());
                 }
-                ai.addHost(e.getNodename(), e.getHostname(), new HashMap<String, String>(e.getAttributes()));
+                Map<String, String> attributes = e.getAttributes();
+                writer.addHost(e.getNodename(), e.getHostname(), attributes != null ? attributes : Map.of());
             }
-            writer.write(new Gson().toJson(ai));
             writer.close();
             return file;
         } catch (IOException e) {
+            file.delete();
             throw new ConfigurationException("Could not write temporary inventory: " + e.getMessage());
+        } catch (ConfigurationException e) {
+            file.delete();
+            throw e;
         }
     }
 }
@@ -0,0 +1,279 @@
+package com.rundeck.plugins.ansible.ansible;
+
+import com.dtolabs.rundeck.core.common.INodeSet;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Caches the node sets loaded from an ansible inventory.
+ * <p>
+ * An entry is reused while the fingerprint of the inventory sources it was loaded from is unchanged.
+ * Once the entry is older than the TTL, the stale node set is still returned while a single background
+ * refresh reloads it. A changed fingerprint always reloads synchronously.
+ * </p>
+ * <p>
+ * Entries and file states not used for an hour are dropped, so that the keys of sources that were removed or
+ * whose configuration changed do not pile up.
+ * </p>
+ */
+@Slf4j
+public class AnsibleInventoryCache {
+
+    @FunctionalInterface
+    public interface Loader {
+        INodeSet load() throws Exception;
+    }
+
+    private static class Entry {
+        private final INodeSet nodes;
+        private final String fingerprint;
+        private final long loadedAt;
+        private volatile long lastUsed;
+
+        private Entry(INodeSet nodes, String fingerprint, long loadedAt) {
+            this.nodes = nodes;
+            this.fingerprint = fingerprint;
+            this.loadedAt = loadedAt;
+            this.lastUsed = loadedAt;
+        }
+    }
+
+    private static class FileState {
+        private final long lastModified;
+        private final long size;
+        private final String hash;
+        private volatile long lastUsed;
+
+        private FileState(long lastModified, long size, String hash) {
+            this.lastModified = lastModified;
+            this.size = size;
+            this.hash = hash;
+        }
+    }
+
+    static final long IDLE_EVICTION_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private static final long EVICTION_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private static final ExecutorService REFRESH_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "ansible-inventory-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<String, Object> locks = new ConcurrentHashMap<>();
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+    private final Map<Path, FileState> fileStates = new ConcurrentHashMap<>();
+    private final LongSupplier clock;
+    private volatile long lastEviction;
+
+    public AnsibleInventoryCache() {
+        this(System::currentTimeMillis);
+    }
+
+    AnsibleInventoryCache(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Returns the cached node set for the key, loading it if needed.
+     *
+     * @param key         cache key, built from everything the loaded nodes depend on
+     * @param ttlMillis   age after which the entry is refreshed in the background
+     * @param fingerprint fingerprint of the inventory sources, see {@link #fingerprint(String...)}
+     * @param loader      loads the node set
+     * @return node set
+     * @throws Exception if the node set had to be loaded synchronously and the loader failed
+     */
+    public INodeSet get(String key, long ttlMillis, String fingerprint, Loader loader) throws Exception {
+        long now = clock.getAsLong();
+        if (now - lastEviction >= EVICTION_INTERVAL_MILLIS) {
+            lastEviction = now;
+            evictIdle(now);
+        }
+
+        Entry entry = entries.get(key);
+        if (entry != null && entry.fingerprint.equals(fingerprint)) {
+            entry.lastUsed = now;
+            if (now - entry.loadedAt >= ttlMillis) {
+                refreshInBackground(key, fingerprint, loader);
+            }
+            return entry.nodes;
+        }
+
+        synchronized (lock(key)) {
+            // another caller may have loaded it while this one was waiting
+            entry = entries.get(key);
+            if (entry != null && entry.fingerprint.equals(fingerprint)) {
+                return entry.nodes;
+            }
+            return load(key, fingerprint, loader);
+        }
+    }
+
+    public void invalidate(String key) {
+        entries.remove(key);
+    }
+
+    /**
+     * Drops the entries, and their locks, and the file states not used for {@link #IDLE_EVICTION_MILLIS}.
+     */
+    void evictIdle(long now) {
+        entries.entrySet().removeIf(entry -> {
+            boolean idle = now - entry.getValue().lastUsed >= IDLE_EVICTION_MILLIS && !refreshing.contains(entry.getKey());
+            if (idle) {
+                log.debug("Dropping the cached ansible inventory {}", entry.getKey());
+                locks.remove(entry.getKey());
+            }
+            return idle;
+        });
+        fileStates.values().removeIf(state -> now - state.lastUsed >= IDLE_EVICTION_MILLIS);
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    private void refreshInBackground(String key, String fingerprint, Loader loader) {
+        if (!refreshing.add(key)) {
+            return;
+        }
+        REFRESH_EXECUTOR.execute(() -> {
+            try {
+                synchronized (lock(key)) {
+                    load(key, fingerprint, loader);
+                }
+            } catch (Exception e) {
+                log.warn("Background refresh of the ansible inventory failed, keeping the previous nodes: {}", e.getMessage(), e);
+            } finally {
+                refreshing.remove(key);
+            }
+        });
+    }
+
+    private INodeSet load(String key, String fingerprint, Loader loader) throws Exception {
+        INodeSet nodes = loader.load();
+        entries.put(key, new Entry(nodes, fingerprint, clock.getAsLong()));
+        return nodes;
+    }
+
+    private Object lock(String key) {
+        return locks.computeIfAbsent(key, k -> new Object());
+    }
+
+    /**
+     * Builds a fingerprint of the local files behind the given inventory sources. Sources can be comma
+     * separated lists, directories are walked. Entries that are not local paths (e.g. inline host lists)
+     * are part of the fingerprint as plain text. Files are hashed only when their mtime or size changed.
+     *
+     * @param sources inventory and configuration file paths, null values are ignored
+     * @return fingerprint
+     */
+    public String fingerprint(String... sources) {
+        StringBuilder fingerprint = new StringBuilder();
+        for (String source : sources) {
+            if (source == null) {
+                continue;
+            }
+            for (String item : source.split(",")) {
+                item = item.trim();
+                if (item.isEmpty()) {
+                    continue;
+                }
+                fingerprint.append(item).append('\n');
+                for (Path file : listFiles(item)) {
+                    FileState state = fileState(file);
+                    if (state != null) {
+                        fingerprint.append(file).append(':').append(state.hash).append('\n');
+                    }
+                }
+            }
+        }
+        return fingerprint.toString();
+    }
+
+    private List<Path> listFiles(String item) {
+        Path path;
+        try {
+            path = Paths.get(item);
+        } catch (RuntimeException e) {
+            return List.of();
+        }
+
+        if (Files.isRegularFile(path)) {
+            return List.of(path);
+        }
+        if (Files.isDirectory(path)) {
+            try (Stream<Path> paths = Files.walk(path)) {
+                return paths.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+            } catch (IOException e) {
+                log.debug("Cannot list inventory directory {}: {}", path, e.getMessage());
+            }
+        }
+        return List.of();
+    }
+
+    private FileState fileState(Path file) {
+        try {
+            long lastModified = Files.getLastModifiedTime(file).toMillis();
+            long size = Files.size(file);
+            FileState state = fileStates.get(file);
+            if (state == null || state.lastModified != lastModified || state.size != size) {
+                state = new FileState(lastModified, size, hash(file));
+                fileStates.put(file, state);
+            }
+            state.lastUsed = clock.getAsLong();
+            return state;
+        } catch (IOException e) {
+            log.debug("Cannot read inventory file {}: {}", file, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @return hex SHA-256 of the value, to build cache keys out of sensitive configuration
+     */
+    public static String hash(String value) {
+        MessageDigest digest = sha256();
+        return HexFormat.of().formatHex(digest.digest(value.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static String hash(Path file) throws IOException {
+        MessageDigest digest = sha256();
+        byte[] buffer = new byte[8192];
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -11,6 +11,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
@@ -26,6 +27,8 @@ public class AnsibleInventoryList {
     private Path ansibleBinariesDirectory;
     private String configFile;
     private boolean debug;
+    // json output instead of yaml
+    private boolean json;
 
     private AnsibleVault ansibleVault;
     private VaultPrompt vaultPrompt;
@@ -39,11 +42,39 @@ public class AnsibleInventoryList {
 
     public static final String ANSIBLE_INVENTORY_COMMAND = "ansible-inventory";
 
+    /**
+     * Consumes the output of the ansible-inventory command while it runs
+     */
+    public interface NodeListReader {
+        void read(Reader output) throws Exception;
+    }
+
     /**
      * Executes Ansible command to bring all nodes from inventory
-     * @return output in yaml format
+     * @return output in yaml format, or json if enabled
      */
     public String getNodeList() throws IOException, AnsibleException {
+        StringBuilder stringBuilder = new StringBuilder();
+
+        boolean success = readNodeList(output -> {
+            final BufferedReader stdoutReader = new BufferedReader(output);
+
+            String line1;
+            while ((line1 = stdoutReader.readLine()) != null) {
+                stringBuilder.append(line1).append("\n");
+            }
+        });
+
+        return success ? stringBuilder.toString() : null;
+    }
+
+    /**
+     * Executes Ansible command to bring all nodes from inventory, passing its output to the reader
+     * as it is produced instead of buffering it
+     * @param nodeListReader consumer of the yaml (or json) output
+     * @return false if the command returned a non zero code
+     */
+    public boolean readNodeList(NodeListReader nodeListReader) throws IOException, AnsibleException {
 
         List<String> procArgs = new ArrayList<>();
         String ansibleCommand = ANSIBLE_INVENTORY_COMMAND;
@@ -56,7 +87,9 @@ public class AnsibleInventoryList {
             procArgs.add("--inventory-file" + "=" + inventory);
         }
         procArgs.add("--list");
-        procArgs.add("-y");
+        if (!json) {
+            procArgs.add("-y");
+        }
 
         Map<String, String> processEnvironment = new HashMap<>();
         if (configFile != null && !configFile.isEmpty()) {
@@ -93,26 +126,27 @@ public class AnsibleInventoryList {
                     .stdinVariables(stdinVariables)
                     .build().run();
 
-            StringBuilder stringBuilder = new StringBuilder();
-
             final InputStream stdoutInputStream = proc.getInputStream();
-            final BufferedReader stdoutReader = new BufferedReader(new InputStreamReader(stdoutInputStream));
-
-            String line1;
-            while ((line1 = stdoutReader.readLine()) != null) {
-                stringBuilder.append(line1).append("\n");
+            try {
+                nodeListReader.read(new InputStreamReader(stdoutInputStream));
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new AnsibleException("ERROR: Cannot read ansible-inventory output: " + e.getMessage(), e, AnsibleException.AnsibleFailureReason.Unknown);
             }
 
             int exitCode = proc.waitFor();
 
             if (exitCode != 0) {
                 System.err.println("ERROR: getNodeList: " + procArgs);
-                return null;
+                return false;
             }
-            return stringBuilder.toString();
+            return true;
 
         } catch (IOException e) {
             throw new AnsibleException("ERROR: Ansible IO failure: " + e.getMessage(), e, AnsibleException.AnsibleFailureReason.IOFailure);
+        } catch (AnsibleException e) {
+            throw e;
         } catch (InterruptedException e) {
             if (proc != null) {
                 proc.destroy();
@@ -0,0 +1,177 @@
+package com.rundeck.plugins.ansible.ansible;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Writes the inventory of the Rundeck nodes as it goes, one host at a time, in the same layout as
+ * {@link AnsibleInventory}: the host variables are written right away, only the group memberships are kept
+ * until {@link #close()}.
+ * <p>
+ * Attribute values holding json (numbers, booleans, objects, arrays) are written as json, any other value as
+ * a string. Values are classified by their first characters, only values that look like json objects, arrays
+ * or quoted strings are parsed.
+ * </p>
+ */
+public class AnsibleInventoryWriter implements Closeable {
+
+    private static final Gson GSON = new Gson();
+    private static final Pattern NUMBER = Pattern.compile("-?(?:0|[1-9][0-9]*)(?:\\.[0-9]+)?(?:[eE][+-]?[0-9]+)?");
+
+    private enum ValueType {
+        // empty or null values, left out of the inventory
+        NONE,
+        BOOLEAN,
+        NUMBER,
+        JSON,
+        STRING
+    }
+
+    private final JsonWriter json;
+    private final Map<String, Set<String>> groups = new LinkedHashMap<>();
+
+    public AnsibleInventoryWriter(Writer out) throws IOException {
+        this.json = new JsonWriter(out);
+        json.beginObject();
+        json.name("all").beginObject();
+        json.name("hosts").beginObject();
+    }
+
+    /**
+     * Writes a host and its variables.
+     *
+     * @param nodeName   inventory host name
+     * @param host       value of {@code ansible_host}
+     * @param attributes node attributes, written as host variables except for the ones reserved in ansible
+     * @throws IOException if the inventory cannot be written
+     */
+    public void addHost(String nodeName, String host, Map<String, String> attributes) throws IOException {
+        for (String attribute : AnsibleInventory.GROUP_ATTRIBUTES) {
+            String value = attributes.get(attribute);
+            if (value != null) {
+                for (String groupName : value.toLowerCase().split(",")) {
+                    groups.computeIfAbsent(AnsibleInventory.sanitizeGroupName(groupName), name -> new LinkedHashSet<>()).add(nodeName);
+                }
+            }
+        }
+
+        json.name(nodeName).beginObject();
+        for (Map.Entry<String, String> attribute : attributes.entrySet()) {
+            String name = attribute.getKey();
+            if (!AnsibleInventory.isReserved(name) && !"ansible_host".equals(name)) {
+                writeValue(name, attribute.getValue());
+            }
+        }
+        writeValue("ansible_host", host);
+        json.endObject();
+    }
+
+    /**
+     * Writes the groups and closes the inventory.
+     */
+    @Override
+    public void close() throws IOException {
+        json.endObject();
+        json.name("children").beginObject();
+        for (Map.Entry<String, Set<String>> group : groups.entrySet()) {
+            json.name(group.getKey()).beginObject();
+            json.name("hosts").beginObject();
+            for (String nodeName : group.getValue()) {
+                json.name(nodeName).beginObject().endObject();
+            }
+            json.endObject();
+            json.name("children").beginObject().endObject();
+            json.endObject();
+        }
+        json.endObject();
+        json.endObject();
+        json.endObject();
+        json.close();
+    }
+
+    private void writeValue(String name, String value) throws IOException {
+        String trimmed = value != null ? value.trim() : "";
+        switch (valueType(trimmed)) {
+            case NONE:
+                return;
+            case BOOLEAN:
+                json.name(name).value(Boolean.parseBoolean(trimmed));
+                return;
+            case NUMBER:
+                json.name(name).jsonValue(trimmed);
+                return;
+            case JSON:
+                json.name(name);
+                // drops the name again for json null, like the other null values
+                GSON.toJson(parseJson(trimmed, value), json);
+                return;
+            default:
+                json.name(name).value(value);
+        }
+    }
+
+    /**
+     * @param value attribute value
+     * @return the value as a json element, {@link JsonNull} for values left out of the inventory
+     */
+    static JsonElement toJsonElement(String value) {
+        String trimmed = value != null ? value.trim() : "";
+        switch (valueType(trimmed)) {
+            case NONE:
+                return JsonNull.INSTANCE;
+            case BOOLEAN:
+                return new JsonPrimitive(Boolean.parseBoolean(trimmed));
+            case NUMBER:
+            case JSON:
+                return parseJson(trimmed, value);
+            default:
+                return new JsonPrimitive(value);
+        }
+    }
+
+    private static ValueType valueType(String trimmed) {
+        if (trimmed.isEmpty() || "null".equalsIgnoreCase(trimmed)) {
+            return ValueType.NONE;
+        }
+        char first = trimmed.charAt(0);
+        switch (first) {
+            case '{':
+            case '[':
+            case '"':
+            case '\'':
+                return ValueType.JSON;
+            case 't':
+            case 'T':
+            case 'f':
+            case 'F':
+                return "true".equalsIgnoreCase(trimmed) || "false".equalsIgnoreCase(trimmed) ? ValueType.BOOLEAN : ValueType.STRING;
+            default:
+                return (first == '-' || (first >= '0' && first <= '9')) && NUMBER.matcher(trimmed).matches()
+                        ? ValueType.NUMBER
+                        : ValueType.STRING;
+        }
+    }
+
+    private static JsonElement parseJson(String trimmed, String value) {
+        try {
+            return JsonParser.parseString(trimmed);
+        } catch (JsonParseException e) {
+            // looked like json, but is not
+            return new JsonPrimitive(value);
+        }
+    }
+}
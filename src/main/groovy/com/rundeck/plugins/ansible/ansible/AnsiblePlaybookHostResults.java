@@ -0,0 +1,110 @@
+package com.rundeck.plugins.ansible.ansible;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.rundeck.plugins.ansible.util.AnsibleEvent;
+import com.rundeck.plugins.ansible.util.AnsibleEventParser;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Collects the outcome of each host of a playbook run from the events of the {@code rundeck_events} callback.
+ * <p>
+ * A host failed when its play recap counts failures or unreachable tasks, the message of its last failed task
+ * is kept as the failure message: a failure rescued by a {@code rescue:} block is followed by the one that failed
+ * the host. The host results and the recap of each host are kept as a short per-host
+ * output, in {@link AnsibleHostResult#getStdout()}.
+ * </p>
+ */
+public class AnsiblePlaybookHostResults implements AnsibleEventParser.EventHandler {
+
+    private final Map<String, AnsibleHostResult> results = new LinkedHashMap<>();
+    private final Map<String, StringBuilder> output = new HashMap<>();
+    private final Map<String, String> failures = new HashMap<>();
+
+    @Override
+    public void event(AnsibleEvent event) {
+        String host = event.getHost();
+        if (host == null) {
+            return;
+        }
+
+        switch (event.getType()) {
+            case HOST_OK:
+                append(host, "ok: [" + host + "] " + event.getTask());
+                break;
+            case HOST_CHANGED:
+                append(host, "changed: [" + host + "] " + event.getTask());
+                break;
+            case HOST_SKIPPED:
+                append(host, "skipping: [" + host + "] " + event.getTask());
+                break;
+            case HOST_FAILED:
+                if (event.isIgnoreErrors()) {
+                    append(host, "failed: [" + host + "] " + event.getTask() + " (ignored)");
+                } else {
+                    append(host, "failed: [" + host + "] " + event.getTask() + ": " + message(event.getResult()));
+                    failures.put(host, "Task '" + event.getTask() + "' failed: " + message(event.getResult()));
+                }
+                break;
+            case HOST_UNREACHABLE:
+                append(host, "unreachable: [" + host + "] " + event.getTask() + ": " + message(event.getResult()));
+                failures.put(host, "host unreachable: " + message(event.getResult()));
+                break;
+            case RECAP:
+                recap(host, event.getStats());
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void recap(String host, JsonObject stats) {
+        int failed = count(stats, "failures");
+        int unreachable = count(stats, "unreachable");
+        append(host, String.format("%s : ok=%d changed=%d unreachable=%d failed=%d skipped=%d rescued=%d ignored=%d",
+                host, count(stats, "ok"), count(stats, "changed"), unreachable, failed,
+                count(stats, "skipped"), count(stats, "rescued"), count(stats, "ignored")));
+
+        results.put(host, AnsibleHostResult.builder()
+                .host(host)
+                .changed(count(stats, "changed") > 0)
+                .failed(failed > 0)
+                .unreachable(unreachable > 0)
+                .msg(failed > 0 || unreachable > 0 ? failures.get(host) : null)
+                .stdout(output.get(host).toString())
+                .build());
+    }
+
+    /**
+     * @return the result of each host in the play recap, keyed by inventory host name
+     */
+    public Map<String, AnsibleHostResult> getResults() {
+        return results;
+    }
+
+    private void append(String host, String line) {
+        StringBuilder lines = output.computeIfAbsent(host, h -> new StringBuilder());
+        if (lines.length() > 0) {
+            lines.append('\n');
+        }
+        lines.append(line);
+    }
+
+    private static String message(JsonObject result) {
+        if (result != null && result.has("msg") && result.get("msg").isJsonPrimitive()) {
+            return result.get("msg").getAsString();
+        }
+        return "no message";
+    }
+
+    private static int count(JsonObject stats, String name) {
+        if (stats == null) {
+            return 0;
+        }
+        JsonElement count = stats.get(name);
+        return count != null && count.isJsonPrimitive() && count.getAsJsonPrimitive().isNumber() ? count.getAsInt() : 0;
+    }
+}
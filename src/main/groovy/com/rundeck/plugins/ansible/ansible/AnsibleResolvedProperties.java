@@ -0,0 +1,66 @@
+package com.rundeck.plugins.ansible.ansible;
+
+import com.dtolabs.rundeck.core.common.Framework;
+import com.dtolabs.rundeck.core.common.INodeEntry;
+import com.dtolabs.rundeck.core.dispatcher.DataContextUtils;
+import com.dtolabs.rundeck.core.execution.ExecutionContext;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Properties of a step resolved once: each property is looked up in the job configuration, node attributes,
+ * project and framework properties by {@link PropertyResolver} the first time it is asked for a node, later
+ * lookups return the same value. Data references expanded in the values are kept the same way.
+ * <p>
+ * The job configuration and the data context are expected not to change for the life of the step, like the
+ * {@link AnsibleRunnerContextBuilder} using them. Not thread safe.
+ * </p>
+ */
+public class AnsibleResolvedProperties {
+
+    private final ExecutionContext context;
+    private final Framework framework;
+    private final String frameworkProject;
+    private final Map<String, Object> jobConf;
+
+    // node name -> property -> value, null if not set
+    private final Map<String, Map<String, String>> properties = new HashMap<>();
+    private final Map<String, String> expanded = new HashMap<>();
+
+    public AnsibleResolvedProperties(ExecutionContext context, Framework framework, String frameworkProject, Map<String, Object> jobConf) {
+        this.context = context;
+        this.framework = framework;
+        this.frameworkProject = frameworkProject;
+        this.jobConf = jobConf;
+    }
+
+    /**
+     * @param attribute    property name
+     * @param defaultValue value when the property is not set
+     * @param node         node whose attributes are looked up, may be null
+     * @return the value of the property for the node
+     */
+    public String resolve(String attribute, String defaultValue, INodeEntry node) {
+        Map<String, String> nodeProperties = properties.computeIfAbsent(node != null ? node.getNodename() : null, name -> new HashMap<>());
+        String value;
+        if (nodeProperties.containsKey(attribute)) {
+            value = nodeProperties.get(attribute);
+        } else {
+            value = PropertyResolver.resolveProperty(attribute, null, frameworkProject, framework, node, jobConf);
+            nodeProperties.put(attribute, value);
+        }
+        return value != null ? value : defaultValue;
+    }
+
+    /**
+     * @param value value that may hold data references, like {@code ${job.id}}
+     * @return the value with the data references replaced from the data context of the execution
+     */
+    public String expand(String value) {
+        if (value == null || !value.contains("${")) {
+            return value;
+        }
+        return expanded.computeIfAbsent(value, v -> DataContextUtils.replaceDataReferencesInString(v, context.getDataContext()));
+    }
+}
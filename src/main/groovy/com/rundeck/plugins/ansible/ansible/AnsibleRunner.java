@@ -1,9 +1,9 @@
 package com.rundeck.plugins.ansible.ansible;
 
+import com.dtolabs.rundeck.core.common.INodeEntry;
 import com.dtolabs.rundeck.core.plugins.configuration.ConfigurationException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.rundeck.plugins.ansible.util.*;
-import com.dtolabs.rundeck.core.utils.SSHAgentProcess;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
 import com.fasterxml.jackson.dataformat.yaml.YAMLGenerator;
@@ -13,10 +13,14 @@ import lombok.extern.slf4j.Slf4j;
 
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.nio.file.attribute.PosixFilePermission;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.regex.Pattern;
 
 @Slf4j
 @Builder
@@ -216,6 +220,27 @@ public class AnsibleRunner {
             ansibleRunnerBuilder.encryptExtraVars(true);
         }
 
+        ansibleRunnerBuilder.executionId(contextBuilder.getExecutionId());
+
+        if (contextBuilder.nodesAuthHostVars()) {
+            ansibleRunnerBuilder.nodesAuthHostVars(true);
+        }
+
+        Integer sshControlPersist = contextBuilder.getSshControlPersist();
+        if (sshControlPersist != null) {
+            ansibleRunnerBuilder.sshControlPersist(sshControlPersist);
+        }
+
+        Integer forksBudget = contextBuilder.getForksBudget();
+        if (forksBudget != null) {
+            ansibleRunnerBuilder.forksBudget(forksBudget);
+        }
+
+        Collection<INodeEntry> nodes = contextBuilder.getNodes();
+        if (nodes != null) {
+            ansibleRunnerBuilder.forkTargets(nodes.size());
+        }
+
         return ansibleRunnerBuilder.build();
     }
 
@@ -245,7 +270,11 @@ public class AnsibleRunner {
     @Builder.Default
     private boolean sshUseAgent = false;
     private String sshPassphrase;
-    private SSHAgentProcess sshAgent;
+    // ssh-agent shared by the runs of the execution
+    private AnsibleSshAgents.Agent sshAgent;
+    private String executionId;
+    // ControlPersist of the ssh master connections shared by the runs of the execution, 0 to leave them to ansible
+    private Integer sshControlPersist;
     @Builder.Default
     private Integer sshAgentTimeToLive = 0;
 
@@ -274,12 +303,35 @@ public class AnsibleRunner {
 
     private Listener listener;
 
+    // when set, the rundeck_events stdout callback is used and its events are handed to the handler
+    private AnsibleEventParser.EventHandler eventHandler;
+
+    // results of each host of an ad-hoc run, read from the tree callback once the run is done
+    private Map<String, AnsibleHostResult> hostResults;
+    // keeps the stdout and stderr of each host in the host results, not only the size of its stdout
+    private boolean keepHostOutput;
+
+    // forks budget of the server, --forks is only sized when set and not configured by the user
+    private Integer forksBudget;
+    // number of target nodes, used when the limit does not tell how many hosts are run
+    private Integer forkTargets;
+
+    // write the node authentication to a host_vars file per host instead of the group_vars maps
+    @Builder.Default
+    private boolean nodesAuthHostVars = false;
+
     @Builder.Default
     private boolean encryptExtraVars = false;
 
     @Builder.Default
     private boolean useAnsibleVault = false;
 
+    // run the command in the warm ansible worker of its configuration
+    @Builder.Default
+    private boolean useWorker = false;
+    @Builder.Default
+    private long workerIdleTimeout = AnsibleWorker.DEFAULT_IDLE_TIMEOUT;
+
     static ObjectMapper mapperYaml = new ObjectMapper(
         new YAMLFactory()
             .enable(YAMLGenerator.Feature.LITERAL_BLOCK_STYLE)
@@ -303,7 +355,15 @@ public class AnsibleRunner {
     File vaultPromptFile;
     File tempNodeAuthFile;
     File groupVarsDir;
+    File hostVarsDir;
+    Path eventsCallbackDir;
+    Path treeDirectory;
+    boolean usingTempTreeDirectory;
+    int reservedForks;
+    Path sshControlPathDir;
     List<File> tempNodePrivateKeyFiles;
+    // SHA-256 of a node private key -> its temporary file, nodes sharing a key share the file
+    Map<String, File> nodePrivateKeyFiles;
 
     String customTmpDirPath;
 
@@ -438,6 +498,7 @@ public class AnsibleRunner {
 
                     // Track node-specific private key files for explicit cleanup
                     tempNodePrivateKeyFiles = new ArrayList<>();
+                    nodePrivateKeyFiles = new HashMap<>();
 
                     nodesAuthentication.forEach((nodeName, authValues) -> {
                         String user = authValues.get("ansible_user");
@@ -462,25 +523,8 @@ public class AnsibleRunner {
                         }
 
                         if(privateKey != null){
-                            //create temporary file for private key
-                            File tempHostPkFile;
                             try {
-                                // Sanitize node name for filesystem use
-                                String safeNodeName = sanitizeNodeNameForFilesystem(nodeName);
-                                if(!nodeName.equals(safeNodeName)) {
-                                    log.debug("Sanitized node name '{}' to '{}' for temp file", nodeName, safeNodeName);
-                                }
-                                tempHostPkFile = AnsibleUtil.createTemporaryFile("","id_rsa_node_"+safeNodeName, privateKey,customTmpDirPath);
-
-                                // Only the owner can read (SSH private key best practice: 0400)
-                                Set<PosixFilePermission> perms = new HashSet<PosixFilePermission>();
-                                perms.add(PosixFilePermission.OWNER_READ);
-                                Files.setPosixFilePermissions(tempHostPkFile.toPath(), perms);
-
-                                hostKeys.put(nodeName, tempHostPkFile.getAbsolutePath());
-
-                                // Track for explicit cleanup to minimize exposure time of sensitive credentials
-                                tempNodePrivateKeyFiles.add(tempHostPkFile);
+                                hostKeys.put(nodeName, nodePrivateKeyFile(nodeName, privateKey).getAbsolutePath());
                             } catch (IOException e) {
                                 throw new RuntimeException("Failed to create temporary private key file for node '" +
                                         nodeName + "': " + e.getMessage(), e);
@@ -488,83 +532,14 @@ public class AnsibleRunner {
                         }
                     });
 
-                    // Build YAML content using helper method
-                    String yamlContent = buildGroupVarsYaml(hostPasswords, hostUsers, hostKeys);
-
-                    log.debug("Building group_vars YAML with {} passwords, {} users, and {} private keys", hostPasswords.size(), hostUsers.size(), hostKeys.size());
-                    log.debug("YAML content built successfully, length: {}", yamlContent.length());
-
-                    try {
-
-                        // Create group_vars directory structure
-                        // IMPORTANT: Following Ansible convention, group_vars must be created in the same
-                        // directory as the inventory file for Ansible to find it. While this means writing
-                        // to user-specified locations, the passwords are vault-encrypted making them safe
-                        // for storage. Administrators should ensure inventory directories have appropriate
-                        // filesystem permissions to prevent unauthorized access.
-                        File inventoryFile = new File(inventory);
-                        File inventoryParentDir = inventoryFile.getParentFile();
-
-                        log.debug("inventoryFile: {}", inventoryFile.getAbsolutePath());
-                        log.debug("inventory file exists: {}", inventoryFile.exists());
-                        log.debug("inventoryParentDir: {}", (inventoryParentDir != null ? inventoryParentDir.getAbsolutePath() : "null"));
-
-                        if (inventoryParentDir != null) {
-                            groupVarsDir = new File(inventoryParentDir, "group_vars");
-                            log.debug("group_vars directory path: {}", groupVarsDir.getAbsolutePath());
-
-                            try {
-                                // Use Files.createDirectories() which is idempotent (safe to call if directory exists)
-                                // and handles race conditions properly. Unlike mkdirs(), it doesn't return false
-                                // when the directory already exists - it only throws IOException on actual failure.
-                                Files.createDirectories(groupVarsDir.toPath());
-                            } catch (IOException e) {
-                                throw new RuntimeException("Failed to create group_vars directory at: " + groupVarsDir.getAbsolutePath(), e);
-                            }
-
-                            // Create all.yaml in group_vars directory
-                            tempNodeAuthFile = new File(groupVarsDir, "all.yaml");
-                            java.nio.file.Files.writeString(
-                                    tempNodeAuthFile.toPath(),
-                                    yamlContent,
-                                    java.nio.charset.StandardCharsets.UTF_8
-                            );
-
-                            // Alert administrators that sensitive files are being created in their inventory directory
-                            log.info("Writing vault-encrypted authentication data to user-provided inventory location: {}. " +
-                                    "Administrators should ensure this directory has appropriate filesystem permissions. " +
-                                    "This file will be cleaned up after execution, but may persist if cleanup fails.",
-                                    tempNodeAuthFile.getAbsolutePath());
-
-                            log.debug("Writing all.yaml to: {}", tempNodeAuthFile.getAbsolutePath());
-                            log.debug("all.yaml written successfully, file size: {} bytes", tempNodeAuthFile.length());
-                        } else {
-                            // Fallback to temp file if inventory has no parent directory
-                            tempNodeAuthFile = AnsibleUtil.createTemporaryFile("group_vars", "all.yaml", yamlContent, customTmpDirPath);
-
-                            log.debug("No parent directory, using temporary file");
-                            log.debug("Temporary all.yaml created at: {}", tempNodeAuthFile.getAbsolutePath());
-                        }
-
-                        log.debug("tempNodeAuthFile: {}", tempNodeAuthFile.getAbsolutePath());
-                        log.debug("tempNodeAuthFile exists: {}", tempNodeAuthFile.exists());
-                        log.debug("tempNodeAuthFile readable: {}", tempNodeAuthFile.canRead());
-
-                        //set extra vars to resolve the host specific authentication
-                        if (!hostUsers.isEmpty()) {
-                            procArgs.add("-e ansible_user=\"{{ host_users[inventory_hostname] | default(omit) }}\"");
-                        }
-                        if(!hostPasswords.isEmpty()){
-                            procArgs.add("-e ansible_password=\"{{ host_passwords[inventory_hostname] | default(omit) }}\"");
-                        }
-
-                        if(!hostKeys.isEmpty()){
-                            procArgs.add("-e ansible_ssh_private_key_file=\"{{ host_private_keys[inventory_hostname] | default(omit) }}\"");
-                        }
+                    if (!hostKeys.isEmpty()) {
+                        log.debug("Wrote {} private key files for {} nodes", tempNodePrivateKeyFiles.size(), hostKeys.size());
+                    }
 
-                    } catch (IOException e) {
-                        log.error("ERROR: Failed to write all.yaml for node auth", e);
-                        throw new RuntimeException("Failed to write all.yaml for node auth", e);
+                    if (nodesAuthHostVars && writeNodesAuthHostVars(hostUsers, hostPasswords, hostKeys)) {
+                        log.debug("Wrote host_vars of {} nodes to: {}", nodesAuthentication.size(), hostVarsDir.getAbsolutePath());
+                    } else {
+                        writeNodesAuthGroupVars(hostUsers, hostPasswords, hostKeys, procArgs);
                     }
                 }
 
@@ -615,7 +590,14 @@ public class AnsibleRunner {
                 Files.setPosixFilePermissions(tempPkFile.toPath(), perms);
 
                 if (sshUseAgent) {
-                    registerKeySshAgent(tempPkFile.getAbsolutePath());
+                    if (sshAgent == null) {
+                        sshAgent = AnsibleSshAgents.getInstance().acquire(executionId, sshAgentTimeToLive);
+                    }
+                    String keyPath = tempPkFile.getAbsolutePath();
+                    // each key is added once to the agent of the execution
+                    if (!sshAgent.addKey(sha256(privateKeyData), socketPath -> registerKeySshAgent(keyPath))) {
+                        log.debug("Private key already added to the ssh-agent of the execution");
+                    }
                 }
                 procArgs.add("--private-key" + "=" + tempPkFile.toPath());
             }
@@ -672,6 +654,17 @@ public class AnsibleRunner {
                 procArgs.add("--become-user" + "=" + becomeUser);
             }
 
+            if (forksBudget != null && forksBudget > 0 && !hasConfiguredForks()) {
+                int targets = countTargets();
+                reservedForks = AnsibleForks.acquire(targets, forksBudget);
+                procArgs.add("--forks" + "=" + reservedForks);
+                log.info("Running ansible with {} forks for {} target hosts (forks budget {})",
+                        reservedForks, targets > 0 ? targets : "unknown", forksBudget);
+                if (debug) {
+                    System.out.println(" forks: " + reservedForks);
+                }
+            }
+
             // default the listener to stdout logger
             if (listener == null) {
                 listener = ListenerFactory.getListener(System.out);
@@ -715,8 +708,13 @@ public class AnsibleRunner {
             if (isAdHoc) {
                 processEnvironment.putIfAbsent("ANSIBLE_LOAD_CALLBACK_PLUGINS", "1");
                 processEnvironment.putIfAbsent("ANSIBLE_CALLBACKS_ENABLED", "ansible.builtin.tree");
-                if (baseDirectory != null) {
-                    processEnvironment.putIfAbsent("ANSIBLE_CALLBACK_TREE_DIR", baseDirectory.toFile().getAbsolutePath());
+                if (processEnvironment.containsKey("ANSIBLE_CALLBACK_TREE_DIR")) {
+                    treeDirectory = Path.of(processEnvironment.get("ANSIBLE_CALLBACK_TREE_DIR"));
+                } else {
+                    // a directory of its own, so only the results of this run are read
+                    treeDirectory = Files.createTempDirectory(Path.of(customTmpDirPath), "ansible-tree");
+                    usingTempTreeDirectory = true;
+                    processEnvironment.put("ANSIBLE_CALLBACK_TREE_DIR", treeDirectory.toFile().getAbsolutePath());
                 }
                 // Legacy shim for 2.9–2.11:
                 // - whitelist instead of callbacks_enabled
@@ -727,6 +725,31 @@ public class AnsibleRunner {
                 processEnvironment.put("SSH_AUTH_SOCK", this.sshAgent.getSocketPath());
             }
 
+            if (sshControlPersist != null && sshControlPersist > 0 && executionId != null && !executionId.isEmpty()
+                    && !hasConfiguredSshMultiplexing()) {
+                // the master connections of the previous runs of the execution are reused
+                try {
+                    sshControlPathDir = AnsibleSshControlPaths.getInstance().acquire(customTmpDirPath, executionId, sshControlPersist);
+                    processEnvironment.put("ANSIBLE_SSH_ARGS", "-C -o ControlMaster=auto -o ControlPersist=" + sshControlPersist + "s");
+                    processEnvironment.put("ANSIBLE_SSH_CONTROL_PATH_DIR", sshControlPathDir.toString());
+                } catch (IOException e) {
+                    log.warn("Failed to create the ssh ControlPath directory of execution {}: {}", executionId, e.getMessage());
+                }
+            }
+
+            Listener output = listener;
+            if (eventHandler != null) {
+                eventsCallbackDir = Files.createTempDirectory(Path.of(customTmpDirPath), "ansible-events");
+                Files.copy(AnsibleRunner.class.getClassLoader().getResourceAsStream(AnsibleEventParser.EVENTS_CALLBACK_PY),
+                        eventsCallbackDir.resolve(AnsibleEventParser.EVENTS_CALLBACK_PY));
+                processEnvironment.merge("ANSIBLE_CALLBACK_PLUGINS", eventsCallbackDir.toFile().getAbsolutePath(),
+                        (configured, events) -> events + File.pathSeparator + configured);
+                processEnvironment.put("ANSIBLE_STDOUT_CALLBACK", AnsibleEventParser.EVENTS_CALLBACK);
+                // ansible only uses the stdout callback of ad-hoc commands when asked to
+                processEnvironment.put("ANSIBLE_LOAD_CALLBACK_PLUGINS", "1");
+                output = new AnsibleEventParser(listener, eventHandler);
+            }
+
             //set STDIN variables
             List<VaultPrompt> stdinVariables = new ArrayList<>();
 
@@ -773,21 +796,33 @@ public class AnsibleRunner {
                 processExecutorBuilder.promptStdinLogFile(vaultPromptFile);
             }
 
-            proc = processExecutorBuilder.build().run();
+            AnsibleWorker worker = null;
+            if (useWorker && AnsibleWorker.supports(procArgs)) {
+                try {
+                    // a temporary base directory has no ansible.cfg, it does not need a worker of its own
+                    worker = AnsibleWorker.get(customTmpDirPath, workerIdleTimeout, procArgs, processEnvironment,
+                            usingTempDirectory ? null : baseDirectory.toFile());
+                } catch (IOException e) {
+                    log.warn("Ansible worker not available, running the ansible command: {}", e.getMessage());
+                }
+            }
 
-            Thread errthread = Logging.copyStreamThread(proc.getErrorStream(), listener);
-            Thread outthread = Logging.copyStreamThread(proc.getInputStream(), listener);
-            errthread.start();
-            outthread.start();
-            result = proc.waitFor();
-            outthread.join();
-            errthread.join();
+            if (worker != null) {
+                result = worker.run(procArgs, processEnvironment, baseDirectory.toFile(), stdinVariables, vaultPromptFile, output);
+            } else {
+                proc = processExecutorBuilder.build().run();
+
+                Logging.pump(output, proc.getInputStream(), proc.getErrorStream());
+                result = proc.waitFor();
+            }
             System.err.flush();
             System.out.flush();
 
-            if (sshUseAgent) {
-                if (sshAgent != null) {
-                    sshAgent.stopAgent();
+            if (treeDirectory != null) {
+                try {
+                    hostResults = AnsibleHostResult.readTreeDirectory(treeDirectory, keepHostOutput);
+                } catch (IOException e) {
+                    log.warn("Failed to read the host results of the tree callback in {}: {}", treeDirectory, e.getMessage());
                 }
             }
 
@@ -813,6 +848,21 @@ public class AnsibleRunner {
             }
             throw new AnsibleException("ERROR: Ansible execution returned with non zero code.", e, AnsibleException.AnsibleFailureReason.Unknown);
         } finally {
+            if (sshAgent != null) {
+                AnsibleSshAgents.getInstance().release(sshAgent);
+                sshAgent = null;
+            }
+
+            if (sshControlPathDir != null) {
+                AnsibleSshControlPaths.getInstance().release(executionId);
+                sshControlPathDir = null;
+            }
+
+            if (reservedForks > 0) {
+                AnsibleForks.release(reservedForks);
+                reservedForks = 0;
+            }
+
             // Make sure to always cleanup on failure and success
             if (proc != null) {
                 proc.getErrorStream().close();
@@ -862,6 +912,16 @@ public class AnsibleRunner {
                 }
             }
 
+            // host_vars is only written when the directory did not exist, so it is always ours
+            if (hostVarsDir != null && hostVarsDir.exists()) {
+                try {
+                    deleteTempDirectory(hostVarsDir.toPath());
+                } catch (IOException e) {
+                    log.warn("Failed to delete host_vars directory: {}. Error: {}", hostVarsDir.getAbsolutePath(), e.getMessage());
+                    hostVarsDir.deleteOnExit();
+                }
+            }
+
             // Clean up group_vars directory if it was created alongside user-provided inventory
             // Note: When inventory is generated/inline, group_vars is inside executionSpecificDir
             // and is cleaned up by AnsibleRunnerContextBuilder.cleanupTempFiles()
@@ -877,6 +937,14 @@ public class AnsibleRunner {
                 }
             }
 
+            if (eventsCallbackDir != null) {
+                deleteTempDirectory(eventsCallbackDir);
+            }
+
+            if (usingTempTreeDirectory && treeDirectory != null && Files.exists(treeDirectory)) {
+                deleteTempDirectory(treeDirectory);
+            }
+
             if (usingTempDirectory && !retainTempDirectory) {
                 deleteTempDirectory(baseDirectory);
             }
@@ -885,10 +953,144 @@ public class AnsibleRunner {
         return result;
     }
 
+    /**
+     * Returns the temporary file of a node private key, written once for all the nodes using the same key.
+     *
+     * @param nodeName   node the key is for, names the file when the key is first written
+     * @param privateKey private key content
+     * @return the private key file, readable by the owner only
+     * @throws IOException if the file cannot be written
+     */
+    File nodePrivateKeyFile(String nodeName, String privateKey) throws IOException {
+        String digest = sha256(privateKey);
+        File keyFile = nodePrivateKeyFiles.get(digest);
+        if (keyFile != null) {
+            return keyFile;
+        }
+
+        // Sanitize node name for filesystem use
+        String safeNodeName = sanitizeNodeNameForFilesystem(nodeName);
+        if(!nodeName.equals(safeNodeName)) {
+            log.debug("Sanitized node name '{}' to '{}' for temp file", nodeName, safeNodeName);
+        }
+        keyFile = AnsibleUtil.createTemporaryFile("","id_rsa_node_"+safeNodeName, privateKey,customTmpDirPath);
+
+        // Only the owner can read (SSH private key best practice: 0400)
+        Set<PosixFilePermission> perms = new HashSet<PosixFilePermission>();
+        perms.add(PosixFilePermission.OWNER_READ);
+        Files.setPosixFilePermissions(keyFile.toPath(), perms);
+
+        nodePrivateKeyFiles.put(digest, keyFile);
+        // Track for explicit cleanup to minimize exposure time of sensitive credentials
+        tempNodePrivateKeyFiles.add(keyFile);
+        return keyFile;
+    }
+
+    private static String sha256(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return number of hosts in the limit when it only lists host names, otherwise the number of target nodes,
+     * 0 if unknown
+     */
+    int countTargets() {
+        if (limits != null && !limits.isEmpty()) {
+            int hosts = 0;
+            for (String limit : limits) {
+                for (String host : limit.split(",")) {
+                    if (LIMIT_PATTERN.matcher(host).find()) {
+                        // a host pattern, its hosts are only known to ansible
+                        return forkTargets != null ? forkTargets : 0;
+                    }
+                    if (!host.trim().isEmpty()) {
+                        hosts++;
+                    }
+                }
+            }
+            return hosts;
+        }
+        return forkTargets != null ? forkTargets : 0;
+    }
+
+    /**
+     * @return true if the forks are set in the extra params, the options, the environment of Rundeck or the
+     * ansible.cfg ansible uses
+     */
+    boolean hasConfiguredForks() {
+        if (extraParams != null && !extraParams.isEmpty()) {
+            for (String param : tokenizeCommand(extraParams)) {
+                if (param.equals("-f") || param.equals("--forks") || param.startsWith("--forks=") || param.matches("-f\\d+")) {
+                    return true;
+                }
+            }
+        }
+        if (options.containsKey("ANSIBLE_FORKS") || System.getenv("ANSIBLE_FORKS") != null) {
+            return true;
+        }
+        return ansibleConfigMatches(CONFIG_FORKS_PATTERN);
+    }
+
+    /**
+     * @return true if the ssh args or the ControlPath are set in the options, the environment of Rundeck or the
+     * ansible.cfg ansible uses
+     */
+    boolean hasConfiguredSshMultiplexing() {
+        for (String variable : List.of("ANSIBLE_SSH_ARGS", "ANSIBLE_SSH_CONTROL_PATH", "ANSIBLE_SSH_CONTROL_PATH_DIR")) {
+            if (options.containsKey(variable) || System.getenv(variable) != null) {
+                return true;
+            }
+        }
+        return ansibleConfigMatches(CONFIG_SSH_MULTIPLEXING_PATTERN);
+    }
+
+    private boolean ansibleConfigMatches(Pattern pattern) {
+        File ansibleConfig = findAnsibleConfig();
+        if (ansibleConfig != null) {
+            try {
+                return pattern.matcher(Files.readString(ansibleConfig.toPath())).find();
+            } catch (IOException e) {
+                log.debug("Failed to read {}: {}", ansibleConfig, e.getMessage());
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the ansible.cfg ansible uses, the first one found in the ansible search order
+     */
+    private File findAnsibleConfig() {
+        List<File> candidates = new ArrayList<>();
+        if (configFile != null && !configFile.isEmpty()) {
+            candidates.add(new File(configFile));
+        } else if (options.get("ANSIBLE_CONFIG") != null) {
+            candidates.add(new File(options.get("ANSIBLE_CONFIG")));
+        } else if (System.getenv("ANSIBLE_CONFIG") != null) {
+            candidates.add(new File(System.getenv("ANSIBLE_CONFIG")));
+        }
+        if (baseDirectory != null) {
+            candidates.add(new File(baseDirectory.toFile(), "ansible.cfg"));
+        }
+        candidates.add(new File(System.getProperty("user.home"), ".ansible.cfg"));
+        candidates.add(new File("/etc/ansible/ansible.cfg"));
+
+        for (File candidate : candidates) {
+            if (candidate.isFile()) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
     public boolean registerKeySshAgent(String keyPath) throws Exception {
 
         if (sshAgent == null) {
-            sshAgent = new SSHAgentProcess(this.sshAgentTimeToLive);
+            sshAgent = AnsibleSshAgents.getInstance().acquire(executionId, sshAgentTimeToLive);
         }
 
         List<String> procArgs = new ArrayList<>();
@@ -1046,6 +1248,179 @@ public class AnsibleRunner {
         return result;
     }
 
+    /**
+     * Writes the authentication of the nodes to {@code group_vars/all.yaml} next to the inventory, as maps keyed by
+     * host name, and adds the extra vars resolving the values of each host from them.
+     *
+     * @param hostUsers     Map of host names to usernames
+     * @param hostPasswords Map of host names to vault-encrypted password strings
+     * @param hostKeys      Map of host names to private key file paths
+     * @param procArgs      ansible command line the extra vars are added to
+     */
+    void writeNodesAuthGroupVars(Map<String, String> hostUsers, Map<String, String> hostPasswords, Map<String, String> hostKeys,
+                                 List<String> procArgs) {
+        // Build YAML content using helper method
+        String yamlContent = buildGroupVarsYaml(hostPasswords, hostUsers, hostKeys);
+
+        log.debug("Building group_vars YAML with {} passwords, {} users, and {} private keys", hostPasswords.size(), hostUsers.size(), hostKeys.size());
+        log.debug("YAML content built successfully, length: {}", yamlContent.length());
+
+        try {
+
+            // Create group_vars directory structure
+            // IMPORTANT: Following Ansible convention, group_vars must be created in the same
+            // directory as the inventory file for Ansible to find it. While this means writing
+            // to user-specified locations, the passwords are vault-encrypted making them safe
+            // for storage. Administrators should ensure inventory directories have appropriate
+            // filesystem permissions to prevent unauthorized access.
+            File inventoryFile = new File(inventory);
+            File inventoryParentDir = inventoryFile.getParentFile();
+
+            log.debug("inventoryFile: {}", inventoryFile.getAbsolutePath());
+            log.debug("inventory file exists: {}", inventoryFile.exists());
+            log.debug("inventoryParentDir: {}", (inventoryParentDir != null ? inventoryParentDir.getAbsolutePath() : "null"));
+
+            if (inventoryParentDir != null) {
+                groupVarsDir = new File(inventoryParentDir, "group_vars");
+                log.debug("group_vars directory path: {}", groupVarsDir.getAbsolutePath());
+
+                try {
+                    // Use Files.createDirectories() which is idempotent (safe to call if directory exists)
+                    // and handles race conditions properly. Unlike mkdirs(), it doesn't return false
+                    // when the directory already exists - it only throws IOException on actual failure.
+                    Files.createDirectories(groupVarsDir.toPath());
+                } catch (IOException e) {
+                    throw new RuntimeException("Failed to create group_vars directory at: " + groupVarsDir.getAbsolutePath(), e);
+                }
+
+                // Create all.yaml in group_vars directory
+                tempNodeAuthFile = new File(groupVarsDir, "all.yaml");
+                java.nio.file.Files.writeString(
+                        tempNodeAuthFile.toPath(),
+                        yamlContent,
+                        java.nio.charset.StandardCharsets.UTF_8
+                );
+
+                // Alert administrators that sensitive files are being created in their inventory directory
+                log.info("Writing vault-encrypted authentication data to user-provided inventory location: {}. " +
+                        "Administrators should ensure this directory has appropriate filesystem permissions. " +
+                        "This file will be cleaned up after execution, but may persist if cleanup fails.",
+                        tempNodeAuthFile.getAbsolutePath());
+
+                log.debug("Writing all.yaml to: {}", tempNodeAuthFile.getAbsolutePath());
+                log.debug("all.yaml written successfully, file size: {} bytes", tempNodeAuthFile.length());
+            } else {
+                // Fallback to temp file if inventory has no parent directory
+                tempNodeAuthFile = AnsibleUtil.createTemporaryFile("group_vars", "all.yaml", yamlContent, customTmpDirPath);
+
+                log.debug("No parent directory, using temporary file");
+                log.debug("Temporary all.yaml created at: {}", tempNodeAuthFile.getAbsolutePath());
+            }
+
+            log.debug("tempNodeAuthFile: {}", tempNodeAuthFile.getAbsolutePath());
+            log.debug("tempNodeAuthFile exists: {}", tempNodeAuthFile.exists());
+            log.debug("tempNodeAuthFile readable: {}", tempNodeAuthFile.canRead());
+
+            //set extra vars to resolve the host specific authentication
+            if (!hostUsers.isEmpty()) {
+                procArgs.add("-e ansible_user=\"{{ host_users[inventory_hostname] | default(omit) }}\"");
+            }
+            if(!hostPasswords.isEmpty()){
+                procArgs.add("-e ansible_password=\"{{ host_passwords[inventory_hostname] | default(omit) }}\"");
+            }
+
+            if(!hostKeys.isEmpty()){
+                procArgs.add("-e ansible_ssh_private_key_file=\"{{ host_private_keys[inventory_hostname] | default(omit) }}\"");
+            }
+
+        } catch (IOException e) {
+            log.error("ERROR: Failed to write all.yaml for node auth", e);
+            throw new RuntimeException("Failed to write all.yaml for node auth", e);
+        }
+    }
+
+    /**
+     * Writes the authentication of each node to {@code host_vars/<node>.yaml} next to the inventory, where ansible
+     * loads it into the variables of that host only. Unlike the group_vars maps, no host carries the credentials of
+     * the others and no extra var has to be templated on each task.
+     * <p>
+     * The files are only written when the inventory has a parent directory without host_vars, which is then
+     * created for the run and deleted after it, and when every node name can be used as a file name.
+     * </p>
+     *
+     * @param hostUsers     Map of host names to usernames
+     * @param hostPasswords Map of host names to vault-encrypted password strings
+     * @param hostKeys      Map of host names to private key file paths
+     * @return false when the files cannot be written and the group_vars layout must be used
+     */
+    boolean writeNodesAuthHostVars(Map<String, String> hostUsers, Map<String, String> hostPasswords, Map<String, String> hostKeys) throws IOException {
+        File inventoryParentDir = new File(inventory).getParentFile();
+        if (inventoryParentDir == null) {
+            log.debug("No inventory directory, node authentication is written to group_vars");
+            return false;
+        }
+        for (String nodeName : nodesAuthentication.keySet()) {
+            if (!nodeName.equals(sanitizeNodeNameForFilesystem(nodeName))) {
+                log.debug("Node name {} is not a file name, node authentication is written to group_vars", nodeName);
+                return false;
+            }
+        }
+
+        File dir = new File(inventoryParentDir, "host_vars");
+        try {
+            // fails when the directory exists: host_vars of the user are never written over
+            Files.createDirectory(dir.toPath());
+        } catch (FileAlreadyExistsException e) {
+            log.debug("{} already exists, node authentication is written to group_vars", dir.getAbsolutePath());
+            return false;
+        }
+        hostVarsDir = dir;
+
+        for (String nodeName : nodesAuthentication.keySet()) {
+            String yamlContent = buildHostVarsYaml(hostUsers.get(nodeName), hostPasswords.get(nodeName), hostKeys.get(nodeName));
+            Files.writeString(new File(hostVarsDir, nodeName + ".yaml").toPath(), yamlContent, StandardCharsets.UTF_8);
+        }
+
+        log.info("Writing vault-encrypted authentication data to user-provided inventory location: {}. " +
+                "This directory will be cleaned up after execution, but may persist if cleanup fails.",
+                hostVarsDir.getAbsolutePath());
+        return true;
+    }
+
+    /**
+     * Builds the YAML content of the host_vars file of a host.
+     *
+     * @param user     username, may be null
+     * @param password vault-encrypted password, may be null
+     * @param key      private key file path, may be null
+     * @return YAML content string ready to be written to host_vars/&lt;host&gt;.yaml
+     */
+    String buildHostVarsYaml(String user, String password, String key) {
+        StringBuilder yamlContent = new StringBuilder();
+
+        if (user != null) {
+            yamlContent.append("ansible_user: ").append(escapeYamlValue(user)).append("\n");
+        }
+        if (password != null) {
+            if (!isValidVaultFormat(password)) {
+                throw new RuntimeException("Invalid vault format for host password");
+            }
+            // "!vault |" followed by the encrypted content, indented under the key
+            String[] lines = password.split("\n", -1);
+            yamlContent.append("ansible_password: ").append(lines[0]).append("\n");
+            for (int i = 1; i < lines.length; i++) {
+                if (i < lines.length - 1 || !lines[i].isEmpty()) {
+                    yamlContent.append("  ").append(lines[i].trim()).append("\n");
+                }
+            }
+        }
+        if (key != null) {
+            yamlContent.append("ansible_ssh_private_key_file: ").append(escapeYamlValue(key)).append("\n");
+        }
+
+        return yamlContent.toString();
+    }
+
     /**
      * Helper method to append a simple YAML map section with key-value pairs.
      * Extracted to reduce duplication between host_private_keys and host_users sections.
@@ -1072,6 +1447,24 @@ public class AnsibleRunner {
         }
     }
 
+    /**
+     * Characters of ansible host patterns: wildcards, regexes, unions, intersections, exclusions and slices.
+     * A limit without them lists host names.
+     */
+    private static final Pattern LIMIT_PATTERN = Pattern.compile("[*?~!&:\\[\\]@]");
+
+    /**
+     * A <code>forks</code> setting in an ansible.cfg.
+     */
+    private static final Pattern CONFIG_FORKS_PATTERN = Pattern.compile("(?m)^\\s*forks\\s*[=:]");
+
+    /**
+     * An ansible.cfg setting of the ssh connection sharing: <code>ssh_args</code>, <code>control_path</code> or
+     * <code>control_path_dir</code>.
+     */
+    private static final Pattern CONFIG_SSH_MULTIPLEXING_PATTERN =
+            Pattern.compile("(?m)^\\s*(ssh_args|control_path|control_path_dir)\\s*[=:]");
+
     /**
      * Pattern for detecting YAML special characters that require quoting.
      * Matches any string containing one or more of these characters:
@@ -1093,8 +1486,8 @@ public class AnsibleRunner {
      * </ul>
      * Regex pattern: <code>.*[:\\[\\]{}#&amp;*!|&gt;'\"%@`\\\\].*</code>
      */
-    private static final java.util.regex.Pattern YAML_SPECIAL_CHARS_PATTERN =
-            java.util.regex.Pattern.compile(".*[:\\[\\]{}#&*!|>'\"%@`\\\\].*");
+    private static final Pattern YAML_SPECIAL_CHARS_PATTERN =
+            Pattern.compile(".*[:\\[\\]{}#&*!|>'\"%@`\\\\].*");
 
     /**
      * Checks if a string needs YAML quoting based on special characters and prefixes.
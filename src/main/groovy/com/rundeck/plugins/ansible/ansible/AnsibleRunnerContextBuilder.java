@@ -10,7 +10,6 @@ import com.dtolabs.rundeck.core.common.INodeSet;
 import com.rundeck.plugins.ansible.ansible.AnsibleDescribable.AuthenticationType;
 import com.rundeck.plugins.ansible.ansible.AnsibleDescribable.BecomeMethodType;
 import com.dtolabs.rundeck.core.common.Framework;
-import com.dtolabs.rundeck.core.dispatcher.DataContextUtils;
 import com.dtolabs.rundeck.core.execution.ExecutionContext;
 import com.dtolabs.rundeck.core.plugins.configuration.ConfigurationException;
 import com.dtolabs.rundeck.core.storage.ResourceMeta;
@@ -49,9 +48,23 @@ public class AnsibleRunnerContextBuilder {
      * EXCLUSIVELY owned by this builder; safe to delete recursively.
      */
     private File executionSpecificDir;
+    /**
+     * Generated inventory shared by the steps of the execution, linked into {@link #executionSpecificDir}.
+     */
+    private AnsibleExecutionInventoryCache.Lease generatedInventory;
+    private File generatedInventoryLink;
 
     private AnsiblePluginGroup pluginGroup;
 
+    /**
+     * Properties of the step, each resolved once.
+     */
+    private final AnsibleResolvedProperties properties;
+    /**
+     * Secrets read from the key storage, shared by the steps of the execution.
+     */
+    private AnsibleSecretCache.Secrets secrets;
+
 
     public AnsibleRunnerContextBuilder(final ExecutionContext context, final Framework framework, INodeSet nodes, final Map<String, Object> configuration) {
         this.context = context;
@@ -60,6 +73,7 @@ public class AnsibleRunnerContextBuilder {
         this.jobConf = configuration;
         this.nodes = nodes.getNodes();
         this.tempFiles = new LinkedList<>();
+        this.properties = new AnsibleResolvedProperties(context, framework, frameworkProject, configuration);
     }
 
     public AnsibleRunnerContextBuilder(final INodeEntry node, final ExecutionContext context, final Framework framework, final Map<String, Object> configuration) {
@@ -69,6 +83,7 @@ public class AnsibleRunnerContextBuilder {
         this.jobConf = configuration;
         this.nodes = Collections.singleton(node);
         this.tempFiles = new LinkedList<>();
+        this.properties = new AnsibleResolvedProperties(context, framework, frameworkProject, configuration);
     }
 
     public AnsibleRunnerContextBuilder(final ExecutionContext context, final Framework framework, INodeSet nodes, final Map<String, Object> configuration, final AnsiblePluginGroup pluginGroup) {
@@ -78,6 +93,7 @@ public class AnsibleRunnerContextBuilder {
         this.jobConf = configuration;
         this.nodes = nodes.getNodes();
         this.tempFiles = new LinkedList<>();
+        this.properties = new AnsibleResolvedProperties(context, framework, frameworkProject, configuration);
         this.pluginGroup = pluginGroup;
     }
 
@@ -92,18 +108,15 @@ public class AnsibleRunnerContextBuilder {
     }
 
     public String getPrivateKeyfilePath() {
-        String path = PropertyResolver.resolveProperty(
+        String path = properties.resolve(
                 AnsibleDescribable.ANSIBLE_SSH_KEYPATH,
                 null,
-                getFrameworkProject(),
-                getFramework(),
-                getNode(),
-                getJobConf()
+                getNode()
         );
 
         //expand properties in path
         if (path != null && path.contains("${")) {
-            path = DataContextUtils.replaceDataReferencesInString(path, context.getDataContext());
+            path = properties.expand(path);
         }
         return path;
     }
@@ -140,18 +153,15 @@ public class AnsibleRunnerContextBuilder {
      * Extracted to reduce duplication between password and private key storage path resolution.
      */
     private String resolveAndExpandStoragePath(String propertyName, INodeEntry node) {
-        String path = PropertyResolver.resolveProperty(
+        String path = properties.resolve(
                 propertyName,
                 null,
-                getFrameworkProject(),
-                getFramework(),
-                node,
-                getJobConf()
+                node
         );
 
         //expand properties in path
         if (path != null && path.contains("${")) {
-            path = DataContextUtils.replaceDataReferencesInString(path, context.getDataContext());
+            path = properties.expand(path);
         }
         return path;
     }
@@ -190,13 +200,10 @@ public class AnsibleRunnerContextBuilder {
 
         //look for option values first
         //typically jobs use secure options to dynamically setup the ssh password
-        final String passwordOption = PropertyResolver.resolveProperty(
+        final String passwordOption = properties.resolve(
                 AnsibleDescribable.ANSIBLE_SSH_PASSWORD_OPTION,
                 AnsibleDescribable.DEFAULT_ANSIBLE_SSH_PASSWORD_OPTION,
-                getFrameworkProject(),
-                getFramework(),
-                node,
-                getJobConf()
+                node
         );
         String sshPassword = PropertyResolver.evaluateSecureOption(passwordOption, getContext());
 
@@ -241,6 +248,10 @@ public class AnsibleRunnerContextBuilder {
             return null;
         }
 
+        return secrets().get(storagePath, path -> readStorage(path, resourceType));
+    }
+
+    private String readStorage(String storagePath, String resourceType) throws ConfigurationException {
         Path path = PathUtil.asPath(storagePath);
         try {
             ResourceMeta contents = context.getStorageTree().getResource(path)
@@ -256,13 +267,10 @@ public class AnsibleRunnerContextBuilder {
 
     public Integer getSSHTimeout() throws ConfigurationException {
         Integer timeout = null;
-        final String stimeout = PropertyResolver.resolveProperty(
+        final String stimeout = properties.resolve(
                 AnsibleDescribable.ANSIBLE_SSH_TIMEOUT,
                 null,
-                getFrameworkProject(),
-                getFramework(),
-                getNode(),
-                getJobConf()
+                getNode()
         );
         if (null != stimeout) {
             try {
@@ -277,17 +285,14 @@ public class AnsibleRunnerContextBuilder {
 
     public String getSshUser() {
         final String user;
-        user = PropertyResolver.resolveProperty(
+        user = properties.resolve(
                 AnsibleDescribable.ANSIBLE_SSH_USER,
                 null,
-                getFrameworkProject(),
-                getFramework(),
-                getNode(),
-                getJobConf()
+                getNode()
         );
 
         if (null != user && user.contains("${")) {
-            return DataContextUtils.replaceDataReferencesInString(user, getContext().getDataContext());
+            return properties.expand(user);
         }
         return user;
     }
@@ -296,7 +301,7 @@ public class AnsibleRunnerContextBuilder {
         final String user;
         user = node.getUsername();
         if (null != user && user.contains("${")) {
-            return DataContextUtils.replaceDataReferencesInString(user, getContext().getDataContext());
+            return properties.expand(user);
         }
         return user;
     }
@@ -308,13 +313,10 @@ public class AnsibleRunnerContextBuilder {
 
 
     public AuthenticationType getSshAuthenticationType(INodeEntry node) {
-        String authType = PropertyResolver.resolveProperty(
+        String authType = properties.resolve(
                 AnsibleDescribable.ANSIBLE_SSH_AUTH_TYPE,
                 null,
-                getFrameworkProject(),
-                getFramework(),
-                node,
-                getJobConf()
+                node
         );
 
         if (null != authType) {
@@ -325,29 +327,24 @@ public class AnsibleRunnerContextBuilder {
 
     public String getBecomeUser() {
         final String user;
-        user = PropertyResolver.resolveProperty(
+        user = properties.resolve(
                 AnsibleDescribable.ANSIBLE_BECOME_USER,
                 null,
-                getFrameworkProject(),
-                getFramework(), getNode(),
-                getJobConf()
+                getNode()
         );
 
         if (null != user && user.contains("${")) {
-            return DataContextUtils.replaceDataReferencesInString(user, getContext().getDataContext());
+            return properties.expand(user);
         }
         return user;
     }
 
     public Boolean getBecome() {
         Boolean become = null;
-        String sbecome = PropertyResolver.resolveProperty(
+        String sbecome = properties.resolve(
                 AnsibleDescribable.ANSIBLE_BECOME,
                 null,
-                getFrameworkProject(),
-                getFramework(),
-                getNode(),
-                getJobConf()
+                getNode()
         );
 
         if (null != sbecome) {
@@ -358,29 +355,23 @@ public class AnsibleRunnerContextBuilder {
 
     public String getExtraParams() {
         final String extraParams;
-        extraParams = PropertyResolver.resolveProperty(
+        extraParams = properties.resolve(
                 AnsibleDescribable.ANSIBLE_EXTRA_PARAM,
                 null,
-                getFrameworkProject(),
-                getFramework(),
-                getNode(),
-                getJobConf()
+                getNode()
         );
 
         if (null != extraParams && extraParams.contains("${")) {
-            return DataContextUtils.replaceDataReferencesInString(extraParams, getContext().getDataContext());
+            return properties.expand(extraParams);
         }
         return extraParams;
     }
 
     public BecomeMethodType getBecomeMethod() {
-        String becomeMethod = PropertyResolver.resolveProperty(
+        String becomeMethod = properties.resolve(
                 AnsibleDescribable.ANSIBLE_BECOME_METHOD,
                 null,
-                getFrameworkProject(),
-                getFramework(),
-                getNode(),
-                getJobConf()
+                getNode()
         );
 
         if (null != becomeMethod) {
@@ -394,17 +385,14 @@ public class AnsibleRunnerContextBuilder {
     }
 
     public String getBecomePasswordStoragePath() {
-        String path = PropertyResolver.resolveProperty(
+        String path = properties.resolve(
                 AnsibleDescribable.ANSIBLE_BECOME_PASSWORD_STORAGE_PATH,
                 null,
-                getFrameworkProject(),
-                getFramework(),
-                getNode(),
-                getJobConf()
+                getNode()
         );
         //expand properties in path
         if (path != null && path.contains("${")) {
-            path = DataContextUtils.replaceDataReferencesInString(path, context.getDataContext());
+            path = properties.expand(path);
         }
         return path;
     }
@@ -417,13 +405,10 @@ public class AnsibleRunnerContextBuilder {
 
         //look for option values first
         //typically jobs use secure options to dynamically setup the become password
-        String passwordOption = PropertyResolver.resolveProperty(
+        String passwordOption = properties.resolve(
                 AnsibleDescribable.ANSIBLE_BECOME_PASSWORD_OPTION,
                 AnsibleDescribable.DEFAULT_ANSIBLE_BECOME_PASSWORD_OPTION,
-                getFrameworkProject(),
-                getFramework(),
-                getNode(),
-                getJobConf()
+                getNode()
         );
         String becomePassword = PropertyResolver.evaluateSecureOption(passwordOption, getContext());
 
@@ -432,22 +417,16 @@ public class AnsibleRunnerContextBuilder {
             return becomePassword;
         } else {
             //look for storage option
-            String storagePath = PropertyResolver.resolveProperty(
+            String storagePath = properties.resolve(
                     AnsibleDescribable.ANSIBLE_BECOME_PASSWORD_STORAGE_PATH,
                     null,
-                    getFrameworkProject(),
-                    getFramework(),
-                    getNode(),
-                    getJobConf()
+                    getNode()
             );
 
             if (null != storagePath) {
                 //look up storage value
                 if (storagePath.contains("${")) {
-                    storagePath = DataContextUtils.replaceDataReferencesInString(
-                            storagePath,
-                            context.getDataContext()
-                    );
+                    storagePath = properties.expand(storagePath);
                 }
                 Path path = PathUtil.asPath(storagePath);
                 try {
@@ -469,22 +448,16 @@ public class AnsibleRunnerContextBuilder {
 
     public String  getVaultKeyStoragePath(){
 
-        String storagePath = PropertyResolver.resolveProperty(
+        String storagePath = properties.resolve(
                 AnsibleDescribable.ANSIBLE_VAULTSTORE_PATH,
                 null,
-                getFrameworkProject(),
-                getFramework(),
-                getNode(),
-                getJobConf()
+                getNode()
         );
 
         if(null!=storagePath) {
             //expand properties in path
             if (storagePath.contains("${")) {
-                storagePath = DataContextUtils.replaceDataReferencesInString(
-                        storagePath,
-                        context.getDataContext()
-                );
+                storagePath = properties.expand(storagePath);
             }
 
             return storagePath;
@@ -513,18 +486,15 @@ public class AnsibleRunnerContextBuilder {
             }
         } else {
 
-            String path = PropertyResolver.resolveProperty(
+            String path = properties.resolve(
                     AnsibleDescribable.ANSIBLE_VAULT_PATH,
                     null,
-                    getFrameworkProject(),
-                    getFramework(),
-                    getNode(),
-                    getJobConf()
+                    getNode()
             );
 
             //expand properties in path
             if (path != null && path.contains("${")) {
-                path = DataContextUtils.replaceDataReferencesInString(path, context.getDataContext());
+                path = properties.expand(path);
             }
 
             if (path != null) {
@@ -547,7 +517,7 @@ public class AnsibleRunnerContextBuilder {
         }
 
         if (null != playbook && playbook.contains("${")) {
-            return DataContextUtils.replaceDataReferencesInString(playbook, getContext().getDataContext());
+            return properties.expand(playbook);
         }
         return playbook;
     }
@@ -559,7 +529,7 @@ public class AnsibleRunnerContextBuilder {
         }
 
         if (null != playbook && playbook.contains("${")) {
-            return DataContextUtils.replaceDataReferencesInString(playbook, getContext().getDataContext());
+            return properties.expand(playbook);
         }
         return playbook;
     }
@@ -571,7 +541,7 @@ public class AnsibleRunnerContextBuilder {
         }
 
         if (null != module && module.contains("${")) {
-            return DataContextUtils.replaceDataReferencesInString(module, getContext().getDataContext());
+            return properties.expand(module);
         }
         return module;
     }
@@ -583,37 +553,31 @@ public class AnsibleRunnerContextBuilder {
         }
 
         if (null != args && args.contains("${")) {
-            return DataContextUtils.replaceDataReferencesInString(args, getContext().getDataContext());
+            return properties.expand(args);
         }
         return args;
     }
 
     public String getExecutable() {
         final String executable;
-        executable = PropertyResolver.resolveProperty(
+        executable = properties.resolve(
                 AnsibleDescribable.ANSIBLE_EXECUTABLE,
                 null,
-                getFrameworkProject(),
-                getFramework(),
-                getNode(),
-                getJobConf()
+                getNode()
         );
 
         if (null != executable && executable.contains("${")) {
-            return DataContextUtils.replaceDataReferencesInString(executable, getContext().getDataContext());
+            return properties.expand(executable);
         }
         return executable;
     }
 
     public Boolean getDebug() {
         Boolean debug = Boolean.FALSE;
-        String sdebug = PropertyResolver.resolveProperty(
+        String sdebug = properties.resolve(
                 AnsibleDescribable.ANSIBLE_DEBUG,
                 null,
-                getFrameworkProject(),
-                getFramework(),
-                getNode(),
-                getJobConf()
+                getNode()
         );
 
         if (null != sdebug) {
@@ -624,30 +588,24 @@ public class AnsibleRunnerContextBuilder {
 
     public String getExtraVars() {
         final String extraVars;
-        extraVars = PropertyResolver.resolveProperty(
+        extraVars = properties.resolve(
                 AnsibleDescribable.ANSIBLE_EXTRA_VARS,
                 null,
-                getFrameworkProject(),
-                getFramework(),
-                getNode(),
-                getJobConf()
+                getNode()
         );
 
         if (null != extraVars && extraVars.contains("${")) {
-            return DataContextUtils.replaceDataReferencesInString(extraVars, getContext().getDataContext());
+            return properties.expand(extraVars);
         }
         return extraVars;
     }
 
     public Boolean generateInventory() {
         Boolean generateInventory = null;
-        String sgenerateInventory = PropertyResolver.resolveProperty(
+        String sgenerateInventory = properties.resolve(
                 AnsibleDescribable.ANSIBLE_GENERATE_INVENTORY,
                 null,
-                getFrameworkProject(),
-                getFramework(),
-                getNode(),
-                getJobConf()
+                getNode()
         );
 
         if (null != sgenerateInventory) {
@@ -665,18 +623,19 @@ public class AnsibleRunnerContextBuilder {
 
         if (isGenerated != null && isGenerated) {
             String executionSpecificDir = getExecutionSpecificTmpDir();
+            String executionId = getExecutionId();
+            if (executionId != null && !executionId.isEmpty()) {
+                return linkGeneratedInventory(executionId, executionSpecificDir);
+            }
             File tempInventory = new AnsibleInventoryBuilder(this.nodes, executionSpecificDir).buildInventory();
             tempFiles.add(tempInventory);
             inventory = tempInventory.getAbsolutePath();
             return inventory;
         }
-        inline_inventory = PropertyResolver.resolveProperty(
+        inline_inventory = properties.resolve(
                 AnsibleDescribable.ANSIBLE_INVENTORY_INLINE,
                 null,
-                getFrameworkProject(),
-                getFramework(),
-                getNode(),
-                getJobConf()
+                getNode()
         );
 
         if (inline_inventory != null) {
@@ -692,17 +651,14 @@ public class AnsibleRunnerContextBuilder {
             return inventory;
         }
 
-        inventory = PropertyResolver.resolveProperty(
+        inventory = properties.resolve(
                 AnsibleDescribable.ANSIBLE_INVENTORY,
                 null,
-                getFrameworkProject(),
-                getFramework(),
-                getNode(),
-                getJobConf()
+                getNode()
         );
 
         if (null != inventory && inventory.contains("${")) {
-            return DataContextUtils.replaceDataReferencesInString(inventory, getContext().getDataContext());
+            return properties.expand(inventory);
         }
 
         return inventory;
@@ -724,17 +680,14 @@ public class AnsibleRunnerContextBuilder {
         }
 
         // Get Limit from Rundeck
-        limit = PropertyResolver.resolveProperty(
+        limit = properties.resolve(
                 AnsibleDescribable.ANSIBLE_LIMIT,
                 null,
-                getFrameworkProject(),
-                getFramework(),
-                getNode(),
-                getJobConf()
+                getNode()
         );
 
         if (null != limit && limit.contains("${")) {
-            return DataContextUtils.replaceDataReferencesInString(limit, getContext().getDataContext());
+            return properties.expand(limit);
         }
         return limit;
     }
@@ -742,17 +695,14 @@ public class AnsibleRunnerContextBuilder {
     public String getConfigFile() {
 
         String configFile;
-        configFile = PropertyResolver.resolveProperty(
+        configFile = properties.resolve(
                 AnsibleDescribable.ANSIBLE_CONFIG_FILE_PATH,
                 null,
-                getFrameworkProject(),
-                getFramework(),
-                getNode(),
-                getJobConf()
+                getNode()
         );
 
         if (null != configFile && configFile.contains("${")) {
-            return DataContextUtils.replaceDataReferencesInString(configFile, getContext().getDataContext());
+            return properties.expand(configFile);
         }
 
         if(null == configFile || configFile.isEmpty()) {
@@ -771,13 +721,10 @@ public class AnsibleRunnerContextBuilder {
 
     public String getBaseDir() {
         String baseDir;
-        baseDir = PropertyResolver.resolveProperty(
+        baseDir = properties.resolve(
                 AnsibleDescribable.ANSIBLE_BASE_DIR_PATH,
                 null,
-                getFrameworkProject(),
-                getFramework(),
-                getNode(),
-                getJobConf()
+                getNode()
         );
 
         if (null == baseDir || baseDir.isEmpty()) {
@@ -791,7 +738,7 @@ public class AnsibleRunnerContextBuilder {
 
         String resolved;
         if (null != baseDir && baseDir.contains("${")) {
-            resolved = DataContextUtils.replaceDataReferencesInString(baseDir, getContext().getDataContext());
+            resolved = properties.expand(baseDir);
         } else {
             resolved = baseDir;
         }
@@ -801,17 +748,14 @@ public class AnsibleRunnerContextBuilder {
 
     public String getBinariesFilePath() {
         String binariesFilePathStr;
-        binariesFilePathStr = PropertyResolver.resolveProperty(
+        binariesFilePathStr = properties.resolve(
                 AnsibleDescribable.ANSIBLE_BINARIES_DIR_PATH,
                 null,
-                getFrameworkProject(),
-                getFramework(),
-                getNode(),
-                getJobConf()
+                getNode()
         );
 
         if (null != binariesFilePathStr && binariesFilePathStr.contains("${")) {
-            return DataContextUtils.replaceDataReferencesInString(binariesFilePathStr, getContext().getDataContext());
+            return properties.expand(binariesFilePathStr);
         }
 
         if(null == binariesFilePathStr || binariesFilePathStr.isEmpty()){
@@ -827,15 +771,48 @@ public class AnsibleRunnerContextBuilder {
         return binariesFilePathStr;
     }
 
+    /**
+     * Links the inventory shared by the steps of the execution into the builder directory. The runner writes
+     * group_vars next to the inventory, so each builder gets its own link rather than the shared path.
+     */
+    private String linkGeneratedInventory(String executionId, String executionSpecificDir) throws ConfigurationException {
+        if (generatedInventoryLink != null) {
+            return generatedInventoryLink.getAbsolutePath();
+        }
+
+        AnsibleExecutionInventoryCache.Lease lease = AnsibleExecutionInventoryCache.getInstance()
+                .acquire(executionId, AnsibleUtil.getCustomTmpPathDir(framework), this.nodes);
+        File shared = lease.getFile();
+        File link = new File(executionSpecificDir, shared.getName());
+        try {
+            try {
+                Files.createLink(link.toPath(), shared.toPath());
+            } catch (UnsupportedOperationException | IOException e) {
+                log.debug("Cannot link the shared inventory {}, copying it: {}", shared.getAbsolutePath(), e.getMessage());
+                Files.copy(shared.toPath(), link.toPath());
+            }
+        } catch (IOException e) {
+            lease.release();
+            throw new ConfigurationException("Could not write temporary inventory: " + e.getMessage());
+        }
+
+        generatedInventory = lease;
+        generatedInventoryLink = link;
+        tempFiles.add(link);
+        return link.getAbsolutePath();
+    }
+
     public INodeEntry getNode() {
         return nodes.size() == 1 ? nodes.iterator().next() : null;
     }
 
 
     public void cleanupTempFiles() {
+        boolean debug = getDebug();
+
         // Clean up individual temp files
         for (File temp : tempFiles) {
-            if (!getDebug()) {
+            if (!debug) {
                 log.debug("Attempting to delete temp file: {}", temp.getAbsolutePath());
                 if (!temp.delete()) {
                     log.warn("Failed to delete temp file: {}. Marking for deletion on JVM exit.", temp.getAbsolutePath());
@@ -851,13 +828,20 @@ public class AnsibleRunnerContextBuilder {
         }
         tempFiles.clear();
 
+        // the shared inventory itself is deleted by the cache once no step of the execution uses it
+        if (generatedInventory != null) {
+            generatedInventory.release();
+            generatedInventory = null;
+            generatedInventoryLink = null;
+        }
+
         // Clean up the builder-specific working directory (including group_vars when inventory
         // was generated/inline). Note: group_vars created alongside user-provided inventory files
         // is cleaned up by AnsibleRunner.
         // executionSpecificDir is an EXCLUSIVE per-builder directory (ansible-exec-<execId>-builder-<rand>/),
         // so recursive deletion is always safe — no sibling builder shares files with it.
         if (executionSpecificDir != null && executionSpecificDir.exists()) {
-            if (!getDebug()) {
+            if (!debug) {
                 log.debug("Cleaning up builder-specific directory: {}", executionSpecificDir.getAbsolutePath());
                 if (!deleteDirectoryRecursively(executionSpecificDir)) {
                     log.warn("Failed to completely delete builder-specific directory: {}", executionSpecificDir.getAbsolutePath());
@@ -906,13 +890,10 @@ public class AnsibleRunnerContextBuilder {
 
     public Boolean getUseSshAgent() {
         boolean useAgent = false;
-        String sAgent = PropertyResolver.resolveProperty(
+        String sAgent = properties.resolve(
                 AnsibleDescribable.ANSIBLE_SSH_USE_AGENT,
                 null,
-                getFrameworkProject(),
-                getFramework(),
-                getNode(),
-                getJobConf()
+                getNode()
         );
 
         if (null != sAgent) {
@@ -924,13 +905,10 @@ public class AnsibleRunnerContextBuilder {
     String getPassphrase() throws ConfigurationException {
         //look for option values first
         //typically jobs use secure options to dynamically setup the ssh password
-        final String passphraseOption = PropertyResolver.resolveProperty(
+        final String passphraseOption = properties.resolve(
                 AnsibleDescribable.ANSIBLE_SSH_PASSPHRASE_OPTION,
                 AnsibleDescribable.DEFAULT_ANSIBLE_SSH_PASSPHRASE_OPTION,
-                getFrameworkProject(),
-                getFramework(),
-                getNode(),
-                getJobConf()
+                getNode()
         );
         String sshPassword = PropertyResolver.evaluateSecureOption(passphraseOption, getContext());
 
@@ -944,19 +922,16 @@ public class AnsibleRunnerContextBuilder {
 
     public String getPassphraseStoragePath() {
 
-        String storagePath = PropertyResolver.resolveProperty(
+        String storagePath = properties.resolve(
                 AnsibleDescribable.ANSIBLE_SSH_PASSPHRASE,
                 null,
-                getFrameworkProject(),
-                getFramework(),
-                getNode(),
-                getJobConf()
+                getNode()
         );
 
         if (null != storagePath) {
             //expand properties in path
             if (storagePath.contains("${")) {
-                storagePath = DataContextUtils.replaceDataReferencesInString(storagePath, context.getDataContext());
+                storagePath = properties.expand(storagePath);
             }
 
             return storagePath;
@@ -1006,6 +981,50 @@ public class AnsibleRunnerContextBuilder {
         return encryptExtraVars;
     }
 
+    public boolean useWorker() throws ConfigurationException {
+        return PropertyResolver.resolveBooleanProperty(
+                AnsibleDescribable.ANSIBLE_WORKER,
+                false,
+                getFrameworkProject(),
+                getFramework(),
+                getNode(),
+                getJobConf()
+        );
+    }
+
+    public Long getWorkerIdleTimeout() throws ConfigurationException {
+        return PropertyResolver.resolveLongProperty(
+                AnsibleDescribable.ANSIBLE_WORKER_IDLE_TIMEOUT,
+                Long.valueOf(AnsibleDescribable.DEFAULT_ANSIBLE_WORKER_IDLE_TIMEOUT),
+                getFrameworkProject(),
+                getFramework(),
+                getNode(),
+                getJobConf()
+        );
+    }
+
+    public Integer getSshControlPersist() throws ConfigurationException {
+        return PropertyResolver.resolveIntProperty(
+                AnsibleDescribable.ANSIBLE_SSH_CONTROL_PERSIST,
+                0,
+                getFrameworkProject(),
+                getFramework(),
+                getNode(),
+                getJobConf()
+        );
+    }
+
+    public Integer getForksBudget() throws ConfigurationException {
+        return PropertyResolver.resolveIntProperty(
+                AnsibleDescribable.ANSIBLE_FORKS_BUDGET,
+                AnsibleForks.defaultBudget(),
+                getFrameworkProject(),
+                getFramework(),
+                getNode(),
+                getJobConf()
+        );
+    }
+
     public Map<String,String> getListOptions(){
         Map<String, String> options = new HashMap<>();
         Map<String, String> optionsContext = context.getDataContext().get("option");
@@ -1060,6 +1079,8 @@ public class AnsibleRunnerContextBuilder {
 
         Map<String, Map<String, String>> authenticationNodesMap = new HashMap<>();
 
+        prefetchNodesSecrets();
+
         this.context.getNodes().forEach((node) -> {
             Map<String, String> auth = new HashMap<>();
             final AuthenticationType authType = getSshAuthenticationType(node);
@@ -1121,6 +1142,30 @@ public class AnsibleRunnerContextBuilder {
     }
 
 
+    /**
+     * Reads the distinct storage paths of the node credentials in parallel, before the nodes are walked one by one.
+     */
+    private void prefetchNodesSecrets() {
+        Set<String> storagePaths = new LinkedHashSet<>();
+        for (INodeEntry node : this.context.getNodes()) {
+            AuthenticationType authType = getSshAuthenticationType(node);
+            if (AuthenticationType.privateKey == authType) {
+                storagePaths.add(getPrivateKeyStoragePath(node));
+            } else if (AuthenticationType.password == authType) {
+                storagePaths.add(getPasswordStoragePath(node));
+            }
+        }
+        storagePaths.remove(null);
+        secrets().prefetch(storagePaths, path -> readStorage(path, "secret"));
+    }
+
+    private AnsibleSecretCache.Secrets secrets() {
+        if (secrets == null) {
+            secrets = AnsibleSecretCache.getInstance().forExecution(getExecutionId());
+        }
+        return secrets;
+    }
+
     public List<String> getListNodesKeyPath(){
 
         if(!generateInventoryNodesAuth()) {
@@ -1130,13 +1175,10 @@ public class AnsibleRunnerContextBuilder {
         List<String> secretPaths = new ArrayList<>();
 
         this.context.getNodes().forEach((node) -> {
-            String keyPath = PropertyResolver.resolveProperty(
+            String keyPath = properties.resolve(
                     AnsibleDescribable.ANSIBLE_SSH_PASSWORD_STORAGE_PATH,
                     null,
-                    getFrameworkProject(),
-                    getFramework(),
-                    node,
-                    getJobConf()
+                    node
             );
 
             if(null!=keyPath){
@@ -1145,13 +1187,10 @@ public class AnsibleRunnerContextBuilder {
                 }
             }
 
-            String privateKeyPath = PropertyResolver.resolveProperty(
+            String privateKeyPath = properties.resolve(
                     AnsibleDescribable.ANSIBLE_SSH_KEYPATH_STORAGE_PATH,
                     null,
-                    getFrameworkProject(),
-                    getFramework(),
-                    node,
-                    getJobConf()
+                    node
             );
 
             if(null!=privateKeyPath){
@@ -1172,13 +1211,10 @@ public class AnsibleRunnerContextBuilder {
         log.debug("Property key: {}", AnsibleDescribable.ANSIBLE_GENERATE_INVENTORY_NODES_AUTH);
         log.debug("Framework project: {}", getFrameworkProject());
 
-        String sgenerateInventoryNodesAuth = PropertyResolver.resolveProperty(
+        String sgenerateInventoryNodesAuth = properties.resolve(
                 AnsibleDescribable.ANSIBLE_GENERATE_INVENTORY_NODES_AUTH,
                 null,
-                getFrameworkProject(),
-                getFramework(),
-                getNode(),
-                getJobConf()
+                getNode()
         );
 
         log.debug("PropertyResolver returned: {}", sgenerateInventoryNodesAuth);
@@ -1193,6 +1229,17 @@ public class AnsibleRunnerContextBuilder {
         return generateInventoryNodesAuth;
     }
 
+    public boolean nodesAuthHostVars() throws ConfigurationException {
+        return PropertyResolver.resolveBooleanProperty(
+                AnsibleDescribable.ANSIBLE_NODES_AUTH_HOST_VARS,
+                false,
+                getFrameworkProject(),
+                getFramework(),
+                getNode(),
+                getJobConf()
+        );
+    }
+
     /**
      * Creates and returns a builder-specific temporary directory path.
      *
@@ -1216,13 +1263,7 @@ public class AnsibleRunnerContextBuilder {
             return executionSpecificDir.getAbsolutePath();
         }
 
-        String executionId = null;
-
-        // Get execution ID from data context
-        if (context.getDataContext() != null && context.getDataContext().get("job") != null) {
-            executionId = context.getDataContext().get("job").get("execid");
-            log.debug("Execution ID from context: {}", executionId);
-        }
+        String executionId = getExecutionId();
 
         // Get base tmp directory
         String baseTmpDir = AnsibleUtil.getCustomTmpPathDir(framework);
@@ -1245,4 +1286,15 @@ public class AnsibleRunnerContextBuilder {
         }
         return baseTmpDir;
     }
+
+    String getExecutionId() {
+        String executionId = null;
+
+        // Get execution ID from data context
+        if (context.getDataContext() != null && context.getDataContext().get("job") != null) {
+            executionId = context.getDataContext().get("job").get("execid");
+            log.debug("Execution ID from context: {}", executionId);
+        }
+        return executionId;
+    }
 }
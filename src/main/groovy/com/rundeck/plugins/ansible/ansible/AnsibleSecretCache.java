@@ -0,0 +1,155 @@
+package com.rundeck.plugins.ansible.ansible;
+
+import com.dtolabs.rundeck.core.plugins.configuration.ConfigurationException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps the secrets read from the Rundeck key storage for the steps of an execution, so that each storage path is
+ * read once however many nodes use it.
+ * <p>
+ * Secrets are only shared within an execution, storage access being authorized for the user of the execution.
+ * The secrets of an execution are dropped once no step has asked for them for the time to live, see
+ * {@link AnsibleExecutionRegistry}.
+ * </p>
+ */
+@Slf4j
+public class AnsibleSecretCache {
+
+    static final long DEFAULT_TTL_MILLIS = TimeUnit.SECONDS.toMillis(60);
+    static final int PREFETCH_THREADS = 8;
+
+    private static final AnsibleSecretCache INSTANCE = new AnsibleSecretCache(DEFAULT_TTL_MILLIS);
+
+    /**
+     * Reads a secret from the key storage.
+     */
+    public interface SecretReader {
+        String read(String storagePath) throws ConfigurationException;
+    }
+
+    /**
+     * Secrets of an execution, keyed by storage path.
+     */
+    public static class Secrets {
+        private final Map<String, Secret> secrets = new ConcurrentHashMap<>();
+
+        /**
+         * @param storagePath storage path of the secret
+         * @param reader      reads the secret when it is not known yet
+         * @return the secret
+         * @throws ConfigurationException if the secret cannot be read, failed reads are not kept
+         */
+        public String get(String storagePath, SecretReader reader) throws ConfigurationException {
+            Secret secret = secrets.computeIfAbsent(storagePath, path -> new Secret());
+            synchronized (secret) {
+                if (!secret.loaded) {
+                    secret.value = reader.read(storagePath);
+                    secret.loaded = true;
+                }
+                return secret.value;
+            }
+        }
+
+        /**
+         * Reads the secrets not known yet, a few at a time. Failures are left to the later {@link #get}, which reports
+         * them to the step.
+         *
+         * @param storagePaths storage paths of the secrets
+         * @param reader       reads a secret
+         */
+        public void prefetch(Collection<String> storagePaths, SecretReader reader) {
+            Set<String> missing = new LinkedHashSet<>();
+            for (String storagePath : storagePaths) {
+                Secret secret = secrets.get(storagePath);
+                if (storagePath != null && (secret == null || !secret.loaded)) {
+                    missing.add(storagePath);
+                }
+            }
+            if (missing.size() < 2) {
+                // nothing to read in parallel
+                return;
+            }
+
+            List<Callable<Void>> reads = new ArrayList<>();
+            for (String storagePath : missing) {
+                reads.add(() -> {
+                    try {
+                        get(storagePath, reader);
+                    } catch (ConfigurationException | RuntimeException e) {
+                        log.debug("Failed to prefetch the secret {}: {}", storagePath, e.getMessage());
+                    }
+                    return null;
+                });
+            }
+
+            AtomicInteger threads = new AtomicInteger();
+            ExecutorService executor = Executors.newFixedThreadPool(Math.min(PREFETCH_THREADS, reads.size()), runnable -> {
+                Thread thread = new Thread(runnable, "ansible-secret-prefetch-" + threads.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            try {
+                executor.invokeAll(reads);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+
+        int size() {
+            return secrets.size();
+        }
+    }
+
+    private static class Secret {
+        private boolean loaded;
+        private String value;
+    }
+
+    private final AnsibleExecutionRegistry<Secrets> executions;
+
+    AnsibleSecretCache(long ttlMillis) {
+        this.executions = new AnsibleExecutionRegistry<>(secrets -> ttlMillis,
+                (executionId, secrets) -> log.debug("Dropping the secrets of execution {}", executionId));
+    }
+
+    public static AnsibleSecretCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @param executionId Rundeck execution id, null or empty for secrets that are not shared
+     * @return the secrets of the execution
+     */
+    public Secrets forExecution(String executionId) {
+        if (executionId == null || executionId.isEmpty()) {
+            return new Secrets();
+        }
+        return executions.get(executionId, id -> new Secrets());
+    }
+
+    /**
+     * Drops the secrets of the executions not used for the time to live.
+     */
+    void expire(long now) {
+        executions.expire(now);
+    }
+
+    int size() {
+        return executions.size();
+    }
+}
@@ -0,0 +1,151 @@
+package com.rundeck.plugins.ansible.ansible;
+
+import com.dtolabs.rundeck.core.utils.SSHAgentProcess;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shares an ssh-agent between the runs of an execution, so that the agent is started once and each private key
+ * is added to it once however many nodes and steps use it.
+ * <p>
+ * The agent of an execution is stopped once no run has used it for the time to live, see
+ * {@link AnsibleExecutionRegistry}. Agents of runs without an execution id, or whose keys expire from the agent,
+ * are not shared and are stopped at the end of the run.
+ * </p>
+ */
+@Slf4j
+public class AnsibleSshAgents {
+
+    static final long DEFAULT_TTL_MILLIS = TimeUnit.SECONDS.toMillis(60);
+
+    private static final AnsibleSshAgents INSTANCE = new AnsibleSshAgents(DEFAULT_TTL_MILLIS, keysTimeToLive -> {
+        SSHAgentProcess process = new SSHAgentProcess(keysTimeToLive);
+        return new AgentProcess() {
+            @Override
+            public String getSocketPath() {
+                return process.getSocketPath();
+            }
+
+            @Override
+            public void stopAgent() {
+                process.stopAgent();
+            }
+        };
+    });
+
+    /**
+     * A running ssh-agent.
+     */
+    interface AgentProcess {
+        String getSocketPath();
+
+        void stopAgent();
+    }
+
+    /**
+     * Starts an ssh-agent.
+     */
+    interface AgentStarter {
+        AgentProcess start(Integer keysTimeToLive) throws Exception;
+    }
+
+    /**
+     * Adds a private key to the ssh-agent listening on a socket.
+     */
+    public interface KeyAdder {
+        void add(String socketPath) throws Exception;
+    }
+
+    /**
+     * ssh-agent of an execution, with the fingerprints of the keys added to it.
+     */
+    public static class Agent {
+        private final AgentProcess process;
+        // execution sharing the agent, null if it is not shared
+        private final String executionId;
+        private final Set<String> fingerprints = new HashSet<>();
+
+        Agent(AgentProcess process, String executionId) {
+            this.process = process;
+            this.executionId = executionId;
+        }
+
+        public String getSocketPath() {
+            return process.getSocketPath();
+        }
+
+        /**
+         * @param fingerprint fingerprint of the private key
+         * @param adder       adds the key when the agent does not hold it yet
+         * @return true if the key was added, false if the agent already held it
+         * @throws Exception if the key cannot be added, it is tried again by the next run
+         */
+        public synchronized boolean addKey(String fingerprint, KeyAdder adder) throws Exception {
+            if (fingerprints.contains(fingerprint)) {
+                return false;
+            }
+            adder.add(process.getSocketPath());
+            fingerprints.add(fingerprint);
+            return true;
+        }
+    }
+
+    private final AnsibleExecutionRegistry<Agent> executions;
+    private final AgentStarter starter;
+
+    AnsibleSshAgents(long ttlMillis, AgentStarter starter) {
+        this.executions = new AnsibleExecutionRegistry<>(agent -> ttlMillis, (executionId, agent) -> {
+            log.debug("Stopping the ssh-agent of execution {}", executionId);
+            agent.process.stopAgent();
+        });
+        this.starter = starter;
+    }
+
+    public static AnsibleSshAgents getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Gets the agent of the execution for a run, starting it if needed. The agent must be given back with
+     * {@link #release(Agent)} once the run is done.
+     *
+     * @param executionId    Rundeck execution id, null or empty for an agent that is not shared
+     * @param keysTimeToLive lifetime of the keys added to the agent in seconds, 0 for no limit
+     * @return the agent
+     */
+    public Agent acquire(String executionId, Integer keysTimeToLive) throws Exception {
+        // keys that expire from the agent would be missing for the later runs
+        if (executionId == null || executionId.isEmpty() || (keysTimeToLive != null && keysTimeToLive > 0)) {
+            return new Agent(starter.start(keysTimeToLive), null);
+        }
+        return executions.acquire(executionId, id -> {
+            log.debug("Starting the ssh-agent of execution {}", id);
+            return new Agent(starter.start(keysTimeToLive), id);
+        });
+    }
+
+    /**
+     * Gives back the agent of a run that is done, an agent that is not shared is stopped.
+     */
+    public void release(Agent agent) {
+        if (agent.executionId == null) {
+            agent.process.stopAgent();
+            return;
+        }
+        executions.release(agent.executionId);
+    }
+
+    /**
+     * Stops the agents of the executions not used by any run for the time to live.
+     */
+    void expire(long now) {
+        executions.expire(now);
+    }
+
+    int size() {
+        return executions.size();
+    }
+}
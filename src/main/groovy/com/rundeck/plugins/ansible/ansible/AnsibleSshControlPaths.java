@@ -0,0 +1,109 @@
+package com.rundeck.plugins.ansible.ansible;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Keeps a directory of ssh ControlPath sockets per execution, so that the ansible runs of an execution reuse the
+ * master connections opened by the previous runs instead of negotiating a new ssh connection to each host.
+ * <p>
+ * The directory of an execution is deleted once no run has used it for the ControlPersist time, when its master
+ * connections are gone, and the grace time, see {@link AnsibleExecutionRegistry}.
+ * </p>
+ */
+@Slf4j
+public class AnsibleSshControlPaths {
+
+    static final long DEFAULT_GRACE_MILLIS = TimeUnit.SECONDS.toMillis(60);
+    // longest unix socket path accepted on all platforms
+    private static final int MAX_SOCKET_PATH = 100;
+    // ansible names the sockets with a hash of 10 characters, ssh adds a suffix of 17 while it creates them
+    private static final int SOCKET_NAME_LENGTH = 1 + 10 + 17;
+
+    private static final AnsibleSshControlPaths INSTANCE = new AnsibleSshControlPaths(DEFAULT_GRACE_MILLIS);
+
+    private static class ControlPath {
+        private final Path directory;
+        private volatile long persistMillis;
+
+        private ControlPath(Path directory) {
+            this.directory = directory;
+        }
+    }
+
+    private final AnsibleExecutionRegistry<ControlPath> executions;
+
+    AnsibleSshControlPaths(long graceMillis) {
+        this.executions = new AnsibleExecutionRegistry<>(controlPath -> controlPath.persistMillis + graceMillis,
+                AnsibleSshControlPaths::delete);
+    }
+
+    public static AnsibleSshControlPaths getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Gets the ControlPath directory of the execution for a run, creating it if needed. The directory must be
+     * given back with {@link #release(String)} once the run is done.
+     *
+     * @param tmpDir                base temporary directory
+     * @param executionId           Rundeck execution id
+     * @param controlPersistSeconds ControlPersist of the master connections
+     * @return the directory
+     * @throws IOException if the directory cannot be created, or its socket paths would be too long
+     */
+    public Path acquire(String tmpDir, String executionId, int controlPersistSeconds) throws IOException {
+        ControlPath controlPath = executions.acquire(executionId, id -> {
+            String name = "ansible-cp-" + id.replaceAll("[^a-zA-Z0-9_-]", "_");
+            Path directory = Path.of(tmpDir, name).toAbsolutePath();
+            if (directory.toString().length() + SOCKET_NAME_LENGTH > MAX_SOCKET_PATH) {
+                directory = Path.of(System.getProperty("java.io.tmpdir"), name).toAbsolutePath();
+            }
+            if (directory.toString().length() + SOCKET_NAME_LENGTH > MAX_SOCKET_PATH) {
+                throw new IOException("the ssh socket paths in " + directory + " would be too long");
+            }
+            Files.createDirectories(directory);
+            Files.setPosixFilePermissions(directory, PosixFilePermissions.fromString("rwx------"));
+            log.debug("Created the ssh ControlPath directory {} of execution {}", directory, id);
+            return new ControlPath(directory);
+        });
+        synchronized (controlPath) {
+            controlPath.persistMillis = Math.max(controlPath.persistMillis, TimeUnit.SECONDS.toMillis(controlPersistSeconds));
+        }
+        return controlPath.directory;
+    }
+
+    /**
+     * Gives back the ControlPath directory of a run that is done.
+     */
+    public void release(String executionId) {
+        executions.release(executionId);
+    }
+
+    /**
+     * Deletes the directories of the executions whose master connections are gone.
+     */
+    void expire(long now) {
+        executions.expire(now);
+    }
+
+    int size() {
+        return executions.size();
+    }
+
+    private static void delete(String executionId, ControlPath controlPath) {
+        log.debug("Deleting the ssh ControlPath directory of execution {}", executionId);
+        try (Stream<Path> paths = Files.walk(controlPath.directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            log.warn("Failed to delete the ssh ControlPath directory {}: {}", controlPath.directory, e.getMessage());
+        }
+    }
+}
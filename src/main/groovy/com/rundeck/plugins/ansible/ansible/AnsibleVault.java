@@ -13,6 +13,7 @@ import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
 import java.nio.file.attribute.PosixFilePermission;
 import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
 import java.util.*;
 import com.rundeck.plugins.ansible.ansible.AnsibleException;
 
@@ -27,8 +28,23 @@ public class AnsibleVault {
     private Path ansibleBinariesDirectory;
 
     public final String ANSIBLE_VAULT_COMMAND = "ansible-vault";
+    public static final String INTERNAL_VAULT_ID = "internal-encrypt";
 
+    // indentation of the vault text in the ansible-vault encrypt_string output
+    private static final String VAULT_STRING_INDENT = "          ";
+
+    /**
+     * Values are encrypted in the JVM, so the ansible-vault command is only needed when the JVM lacks the vault
+     * algorithms. ansible-playbook decrypts the values itself.
+     */
     public boolean checkAnsibleVault() {
+        return AnsibleVaultCipher.isAvailable() || checkAnsibleVaultCommand();
+    }
+
+    /**
+     * Checks the ansible-vault command can be run.
+     */
+    public boolean checkAnsibleVaultCommand() {
         List<String> procArgs = new ArrayList<>();
         String ansibleCommand = ANSIBLE_VAULT_COMMAND;
         if (ansibleBinariesDirectory != null) {
@@ -56,8 +72,38 @@ public class AnsibleVault {
         }
     }
 
+    /**
+     * Encrypts a value with the internal vault id, in the ansible-vault encrypt_string output format.
+     * <p>
+     * Values are encrypted in the JVM by {@link AnsibleVaultCipher}. If the JVM lacks the vault algorithms,
+     * each value is encrypted by its own ansible-vault process.
+     * </p>
+     */
     public String encryptVariable(String key,
                                   String content ) throws IOException, AnsibleException, InterruptedException {
+        try {
+            return formatVaultString(AnsibleVaultCipher.encrypt(content, masterPassword, INTERNAL_VAULT_ID));
+        } catch (GeneralSecurityException e) {
+            System.err.println("WARN: cannot encrypt in the JVM, using ansible-vault: " + e.getMessage());
+        }
+        return encryptVariableWithCommand(key, content);
+    }
+
+    /**
+     * @return the vault text as written by ansible-vault encrypt_string, as a yaml tagged literal block
+     */
+    static String formatVaultString(String vaultText) {
+        StringBuilder stringBuilder = new StringBuilder("!vault |\n");
+        for (String line : vaultText.split("\n")) {
+            if (!line.isEmpty()) {
+                stringBuilder.append(VAULT_STRING_INDENT).append(line).append("\n");
+            }
+        }
+        return stringBuilder.toString();
+    }
+
+    private String encryptVariableWithCommand(String key,
+                                              String content ) throws IOException, AnsibleException, InterruptedException {
 
         List<String> procArgs = new ArrayList<>();
         String ansibleCommand = ANSIBLE_VAULT_COMMAND;
@@ -67,7 +113,7 @@ public class AnsibleVault {
         procArgs.add(ansibleCommand);
         procArgs.add("encrypt_string");
         procArgs.add("--encrypt-vault-id");
-        procArgs.add("internal-encrypt");
+        procArgs.add(INTERNAL_VAULT_ID);
 
         if(debug){
             System.out.println("encryptVariable " + key + ": " + procArgs);
@@ -0,0 +1,186 @@
+package com.rundeck.plugins.ansible.ansible;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.HexFormat;
+
+/**
+ * Encrypts and decrypts the ansible vault {@code AES256} format (vault versions 1.1 and 1.2) in the JVM,
+ * the same way as {@code ansible.parsing.vault.VaultAES256}.
+ * <p>
+ * The AES key, the HMAC key and the CTR initial counter are derived from the password and a random 32 bytes salt
+ * with PBKDF2-SHA256 (10000 iterations). The PKCS#7 padded plaintext is encrypted with AES-CTR and authenticated
+ * with an HMAC-SHA256 of the ciphertext. The hex encoded salt, HMAC and ciphertext are joined by newlines, hex
+ * encoded again and written in lines of 80 characters after the {@code $ANSIBLE_VAULT} header.
+ * </p>
+ */
+public class AnsibleVaultCipher {
+
+    public static final String HEADER = "$ANSIBLE_VAULT";
+    public static final String CIPHER_NAME = "AES256";
+
+    private static final int SALT_LENGTH = 32;
+    private static final int KEY_LENGTH = 32;
+    private static final int IV_LENGTH = 16;
+    private static final int ITERATIONS = 10000;
+    private static final int LINE_LENGTH = 80;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final HexFormat HEX = HexFormat.of();
+
+    private AnsibleVaultCipher() {
+    }
+
+    /**
+     * Encrypts a value.
+     *
+     * @param plaintext value to encrypt
+     * @param password  vault password
+     * @param vaultId   vault id, written in a 1.2 header; null or "default" writes a 1.1 header
+     * @return vault text, ending with a newline
+     * @throws GeneralSecurityException if the JVM does not provide the algorithms
+     */
+    public static String encrypt(String plaintext, String password, String vaultId) throws GeneralSecurityException {
+        byte[] salt = new byte[SALT_LENGTH];
+        RANDOM.nextBytes(salt);
+        return encrypt(plaintext.getBytes(StandardCharsets.UTF_8), password, vaultId, salt);
+    }
+
+    static String encrypt(byte[] plaintext, String password, String vaultId, byte[] salt) throws GeneralSecurityException {
+        byte[] derived = deriveKey(password, salt);
+
+        Cipher cipher = Cipher.getInstance("AES/CTR/NoPadding");
+        cipher.init(Cipher.ENCRYPT_MODE, aesKey(derived), iv(derived));
+        byte[] ciphertext = cipher.doFinal(pad(plaintext));
+        byte[] hmac = hmac(derived, ciphertext);
+
+        String body = HEX.formatHex(salt) + "\n" + HEX.formatHex(hmac) + "\n" + HEX.formatHex(ciphertext);
+        String hexBody = HEX.formatHex(body.getBytes(StandardCharsets.US_ASCII));
+
+        StringBuilder vaultText = new StringBuilder(HEADER);
+        if (vaultId != null && !vaultId.isEmpty() && !"default".equals(vaultId)) {
+            vaultText.append(";1.2;").append(CIPHER_NAME).append(';').append(vaultId);
+        } else {
+            vaultText.append(";1.1;").append(CIPHER_NAME);
+        }
+        vaultText.append('\n');
+        for (int i = 0; i < hexBody.length(); i += LINE_LENGTH) {
+            vaultText.append(hexBody, i, Math.min(i + LINE_LENGTH, hexBody.length())).append('\n');
+        }
+        return vaultText.toString();
+    }
+
+    /**
+     * Decrypts a vault text.
+     *
+     * @param vaultText vault text, with its header; leading whitespace on each line is ignored
+     * @param password  vault password
+     * @return the decrypted value
+     * @throws GeneralSecurityException if the vault text is not valid or the password is wrong
+     */
+    public static String decrypt(String vaultText, String password) throws GeneralSecurityException {
+        String[] lines = vaultText.trim().split("\\s*\\n\\s*");
+        String[] header = lines[0].trim().split(";");
+        if (header.length < 3 || !HEADER.equals(header[0]) || !CIPHER_NAME.equals(header[2])
+                || !("1.1".equals(header[1]) || "1.2".equals(header[1]))) {
+            throw new GeneralSecurityException("Unsupported vault format: " + lines[0]);
+        }
+
+        StringBuilder hexBody = new StringBuilder();
+        for (int i = 1; i < lines.length; i++) {
+            hexBody.append(lines[i].trim());
+        }
+
+        String[] parts;
+        try {
+            parts = new String(HEX.parseHex(hexBody), StandardCharsets.US_ASCII).split("\n");
+        } catch (IllegalArgumentException e) {
+            throw new GeneralSecurityException("Invalid vault text", e);
+        }
+        if (parts.length != 3) {
+            throw new GeneralSecurityException("Invalid vault text");
+        }
+
+        byte[] salt;
+        byte[] expectedHmac;
+        byte[] ciphertext;
+        try {
+            salt = HEX.parseHex(parts[0]);
+            expectedHmac = HEX.parseHex(parts[1]);
+            ciphertext = HEX.parseHex(parts[2]);
+        } catch (IllegalArgumentException e) {
+            throw new GeneralSecurityException("Invalid vault text", e);
+        }
+
+        byte[] derived = deriveKey(password, salt);
+        if (!MessageDigest.isEqual(expectedHmac, hmac(derived, ciphertext))) {
+            throw new GeneralSecurityException("HMAC verification failed, wrong vault password?");
+        }
+
+        Cipher cipher = Cipher.getInstance("AES/CTR/NoPadding");
+        cipher.init(Cipher.DECRYPT_MODE, aesKey(derived), iv(derived));
+        return new String(unpad(cipher.doFinal(ciphertext)), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Checks the JVM provides the algorithms used by the vault format.
+     */
+    public static boolean isAvailable() {
+        try {
+            Cipher.getInstance("AES/CTR/NoPadding");
+            Mac.getInstance("HmacSHA256");
+            SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256");
+            return true;
+        } catch (GeneralSecurityException e) {
+            return false;
+        }
+    }
+
+    private static byte[] deriveKey(String password, byte[] salt) throws GeneralSecurityException {
+        // PBEKeySpec encodes the password chars in UTF-8, like ansible does with the vault secret bytes
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, ITERATIONS, (2 * KEY_LENGTH + IV_LENGTH) * 8);
+        try {
+            return SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256").generateSecret(spec).getEncoded();
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    private static SecretKeySpec aesKey(byte[] derived) {
+        return new SecretKeySpec(derived, 0, KEY_LENGTH, "AES");
+    }
+
+    private static IvParameterSpec iv(byte[] derived) {
+        return new IvParameterSpec(derived, 2 * KEY_LENGTH, IV_LENGTH);
+    }
+
+    private static byte[] hmac(byte[] derived, byte[] ciphertext) throws GeneralSecurityException {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(derived, KEY_LENGTH, KEY_LENGTH, "HmacSHA256"));
+        return mac.doFinal(ciphertext);
+    }
+
+    private static byte[] pad(byte[] plaintext) {
+        int padding = IV_LENGTH - plaintext.length % IV_LENGTH;
+        byte[] padded = Arrays.copyOf(plaintext, plaintext.length + padding);
+        Arrays.fill(padded, plaintext.length, padded.length, (byte) padding);
+        return padded;
+    }
+
+    private static byte[] unpad(byte[] padded) throws GeneralSecurityException {
+        int padding = padded.length > 0 ? padded[padded.length - 1] & 0xff : 0;
+        if (padding < 1 || padding > IV_LENGTH || padding > padded.length) {
+            throw new GeneralSecurityException("Invalid vault padding");
+        }
+        return Arrays.copyOf(padded, padded.length - padding);
+    }
+}
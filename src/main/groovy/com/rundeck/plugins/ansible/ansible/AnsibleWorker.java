@@ -0,0 +1,362 @@
+package com.rundeck.plugins.ansible.ansible;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.rundeck.plugins.ansible.util.Listener;
+import com.rundeck.plugins.ansible.util.VaultPrompt;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Long-lived local process running the {@code ansible} and {@code ansible-playbook} commands without paying the
+ * interpreter startup, imports and configuration load of a new process for each command.
+ * <p>
+ * One worker runs {@code ansible-worker.py} per ansible installation and ansible configuration. The commands are
+ * sent over a unix socket and each one runs in a child forked from the warm worker. A worker exits on its own
+ * once idle for its idle timeout, a dead worker is started again on the next command.
+ * </p>
+ */
+@Slf4j
+public class AnsibleWorker {
+
+    public static final String WORKER_PY = "ansible-worker.py";
+    public static final long DEFAULT_IDLE_TIMEOUT = 300;
+
+    private static final long START_TIMEOUT_MILLIS = 60 * 1000;
+    private static final String READY = "READY";
+    private static final String DEFAULT_PYTHON = "python3";
+    // longest unix socket path accepted on all platforms
+    private static final int MAX_SOCKET_PATH = 100;
+
+    // commands the worker knows how to run
+    private static final Set<String> COMMANDS = Set.of("ansible", "ansible-playbook");
+    // read by ansible each time they are used, they do not need a worker of their own
+    private static final Set<String> RUN_VARIABLES = Set.of("ANSIBLE_CALLBACK_TREE_DIR", "ANSIBLE_SSH_CONTROL_PATH_DIR");
+
+    private static final Map<String, AnsibleWorker> WORKERS = new ConcurrentHashMap<>();
+    private static final Gson GSON = new Gson();
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> WORKERS.values().forEach(AnsibleWorker::stop)));
+    }
+
+    private final String key;
+    private final Process process;
+    private final Path socket;
+    private final Path script;
+
+    private AnsibleWorker(String key, Process process, Path socket, Path script) {
+        this.key = key;
+        this.process = process;
+        this.socket = socket;
+        this.script = script;
+    }
+
+    /**
+     * @param procArgs ansible command line
+     * @return true if the worker can run the command
+     */
+    public static boolean supports(List<String> procArgs) {
+        return !procArgs.isEmpty() && COMMANDS.contains(Paths.get(procArgs.get(0)).getFileName().toString());
+    }
+
+    /**
+     * Returns the running worker of the ansible installation and configuration of the command, starting it if needed.
+     *
+     * @param tmpDir             directory of the worker socket and script
+     * @param idleTimeoutSeconds idle time after which a new worker exits
+     * @param procArgs           ansible command line
+     * @param environment        environment of the command
+     * @param directory          working directory of the command, where ansible looks for ansible.cfg, null for a
+     *                           temporary directory of the command
+     * @return the worker
+     * @throws IOException if the worker cannot be started
+     */
+    public static AnsibleWorker get(String tmpDir, long idleTimeoutSeconds, List<String> procArgs,
+                                    Map<String, String> environment, File directory) throws IOException {
+        String executable = procArgs.get(0);
+        String key = workerKey(executable, environment, directory);
+
+        AnsibleWorker worker = WORKERS.get(key);
+        if (worker != null && worker.isAlive()) {
+            return worker;
+        }
+
+        synchronized (WORKERS) {
+            worker = WORKERS.get(key);
+            if (worker != null && worker.isAlive()) {
+                return worker;
+            }
+            if (worker != null) {
+                log.debug("Restarting the ansible worker {}", key);
+                worker.stop();
+            }
+            worker = start(key, tmpDir, idleTimeoutSeconds, python(executable), environment, directory);
+            WORKERS.put(key, worker);
+            return worker;
+        }
+    }
+
+    /**
+     * Runs an ansible command in the worker.
+     *
+     * @param procArgs    ansible command line
+     * @param environment environment variables of the command, on top of the environment of Rundeck
+     * @param directory   working directory of the command
+     * @param prompts     vault passwords of the command
+     * @param promptLog   file the vault-client.py prompts are logged to, null to send the passwords at once
+     * @param listener    receives the command output
+     * @return exit code of the command
+     * @throws IOException          if the worker cannot be reached or stopped during the command
+     * @throws InterruptedException if interrupted, the command is stopped
+     */
+    public int run(List<String> procArgs, Map<String, String> environment, File directory, List<VaultPrompt> prompts,
+                   File promptLog, Listener listener) throws IOException, InterruptedException {
+        JsonObject request = new JsonObject();
+        request.add("argv", GSON.toJsonTree(procArgs));
+        // the whole environment, the command does not see the one of the command that started the worker
+        Map<String, String> commandEnvironment = new TreeMap<>(System.getenv());
+        commandEnvironment.putAll(environment);
+        request.add("env", GSON.toJsonTree(commandEnvironment));
+        if (directory != null) {
+            request.addProperty("cwd", directory.getAbsolutePath());
+        }
+        if (prompts != null && !prompts.isEmpty()) {
+            List<Map<String, String>> passwords = new ArrayList<>();
+            for (VaultPrompt prompt : prompts) {
+                Map<String, String> password = new LinkedHashMap<>();
+                password.put("vault_id", prompt.getVaultId());
+                password.put("password", prompt.getVaultPassword());
+                passwords.add(password);
+            }
+            request.add("prompts", GSON.toJsonTree(passwords));
+        }
+        if (promptLog != null) {
+            request.addProperty("prompt_log", promptLog.getAbsolutePath());
+        }
+
+        try (SocketChannel channel = connect()) {
+            Writer writer = Channels.newWriter(channel, StandardCharsets.UTF_8);
+            writer.write(GSON.toJson(request));
+            writer.write('\n');
+            writer.flush();
+
+            BufferedReader reader = new BufferedReader(Channels.newReader(channel, StandardCharsets.UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                JsonObject response;
+                try {
+                    response = GSON.fromJson(line, JsonObject.class);
+                } catch (JsonParseException e) {
+                    throw new IOException("Invalid ansible worker response: " + line, e);
+                }
+                if (response.has("out")) {
+                    // the lines of each read of the command output
+                    List<String> lines = new ArrayList<>();
+                    for (JsonElement out : response.getAsJsonArray("out")) {
+                        lines.add(out.getAsString());
+                    }
+                    listener.output(lines);
+                } else if (response.has("rc")) {
+                    return response.get("rc").getAsInt();
+                }
+            }
+        } catch (ClosedByInterruptException e) {
+            throw new InterruptedException("Ansible worker command interrupted");
+        }
+
+        WORKERS.remove(key, this);
+        throw new IOException("The ansible worker stopped before the end of the command");
+    }
+
+    private SocketChannel connect() throws IOException {
+        SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+        try {
+            channel.connect(UnixDomainSocketAddress.of(socket));
+            return channel;
+        } catch (IOException e) {
+            channel.close();
+            // started again on the next command
+            WORKERS.remove(key, this);
+            throw new IOException("The ansible worker is not running: " + e.getMessage(), e);
+        }
+    }
+
+    public boolean isAlive() {
+        return process.isAlive() && Files.exists(socket);
+    }
+
+    void stop() {
+        process.destroy();
+        try {
+            Files.deleteIfExists(socket);
+            Files.deleteIfExists(script);
+        } catch (IOException e) {
+            log.debug("Failed to remove the ansible worker files", e);
+        }
+    }
+
+    private static AnsibleWorker start(String key, String tmpDir, long idleTimeoutSeconds, String python,
+                                       Map<String, String> environment, File workingDirectory) throws IOException {
+        String name = "ansible-worker-" + key.substring(0, 16);
+        Path directory = Paths.get(tmpDir).toAbsolutePath();
+        if (directory.resolve(name + ".sock").toString().length() > MAX_SOCKET_PATH) {
+            directory = Paths.get(System.getProperty("java.io.tmpdir")).toAbsolutePath();
+        }
+        Path socket = directory.resolve(name + ".sock");
+        Path script = directory.resolve(name + ".py");
+        Files.copy(AnsibleWorker.class.getClassLoader().getResourceAsStream(WORKER_PY), script,
+                StandardCopyOption.REPLACE_EXISTING);
+
+        List<String> command = List.of(python, script.toString(), "--socket", socket.toString(),
+                "--idle-timeout", String.valueOf(idleTimeoutSeconds));
+        ProcessBuilder processBuilder = new ProcessBuilder(command).redirectErrorStream(true);
+        processBuilder.environment().putAll(environment);
+        // ansible reads the ansible.cfg of the working directory when it is imported
+        processBuilder.directory(workingDirectory != null ? workingDirectory : directory.toFile());
+        processBuilder.redirectInput(ProcessBuilder.Redirect.from(new File("/dev/null")));
+        Process process = processBuilder.start();
+
+        CountDownLatch ready = new CountDownLatch(1);
+        StringBuilder startOutput = new StringBuilder();
+        Thread output = new Thread(() -> {
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (ready.getCount() > 0 && READY.equals(line)) {
+                        ready.countDown();
+                    } else if (ready.getCount() > 0) {
+                        synchronized (startOutput) {
+                            startOutput.append(line).append('\n');
+                        }
+                    } else {
+                        log.debug("[ansible worker] {}", line);
+                    }
+                }
+            } catch (IOException e) {
+                log.debug("Ansible worker output closed", e);
+            }
+        }, name);
+        output.setDaemon(true);
+        output.start();
+
+        try {
+            long end = System.currentTimeMillis() + START_TIMEOUT_MILLIS;
+            while (!ready.await(100, TimeUnit.MILLISECONDS)) {
+                if (!process.isAlive() || System.currentTimeMillis() > end) {
+                    process.destroy();
+                    output.join(1000);
+                    synchronized (startOutput) {
+                        throw new IOException("The ansible worker did not start: " + startOutput.toString().trim());
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            process.destroy();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while starting the ansible worker", e);
+        }
+
+        log.debug("Started the ansible worker {} with {}", socket, python);
+        return new AnsibleWorker(key, process, socket, script);
+    }
+
+    /**
+     * Workers are shared by the commands of the same ansible installation and configuration.
+     */
+    static String workerKey(String executable, Map<String, String> environment, File directory) {
+        StringBuilder key = new StringBuilder(executable);
+        if (directory != null) {
+            key.append('\n').append(directory.getAbsolutePath());
+        }
+        new TreeMap<>(environment).forEach((name, value) -> {
+            if (name.startsWith("ANSIBLE_") && !RUN_VARIABLES.contains(name)) {
+                key.append('\n').append(name).append('=').append(value);
+            }
+        });
+
+        // a changed configuration file needs a new worker
+        String configFile = environment.get("ANSIBLE_CONFIG");
+        if (configFile != null) {
+            key.append('\n').append(new File(configFile).lastModified());
+        } else if (directory != null) {
+            key.append('\n').append(new File(directory, "ansible.cfg").lastModified());
+        }
+
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(key.toString().getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * The worker has to run with the python interpreter of the ansible installation, read from the first line
+     * of the ansible command.
+     */
+    static String python(String executable) {
+        Path command = Paths.get(executable);
+        if (!command.isAbsolute()) {
+            command = null;
+            String path = System.getenv("PATH");
+            if (path != null) {
+                for (String directory : path.split(File.pathSeparator)) {
+                    Path candidate = Paths.get(directory, executable);
+                    if (Files.isExecutable(candidate)) {
+                        command = candidate;
+                        break;
+                    }
+                }
+            }
+        }
+        if (command == null || !Files.isRegularFile(command)) {
+            return DEFAULT_PYTHON;
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(command, StandardCharsets.UTF_8)) {
+            String shebang = reader.readLine();
+            if (shebang == null || !shebang.startsWith("#!")) {
+                return DEFAULT_PYTHON;
+            }
+            String[] interpreter = shebang.substring(2).trim().split("\\s+");
+            // #!/usr/bin/env python3
+            if (interpreter.length > 1 && interpreter[0].endsWith("/env")) {
+                return interpreter[1];
+            }
+            return interpreter[0].isEmpty() ? DEFAULT_PYTHON : interpreter[0];
+        } catch (IOException e) {
+            return DEFAULT_PYTHON;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.rundeck.plugins.ansible.ansible;
+
+import com.dtolabs.rundeck.core.resources.ResourceModelSourceException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.rundeck.plugins.ansible.ansible.InventoryList.ALL;
+import static com.rundeck.plugins.ansible.ansible.InventoryList.CHILDREN;
+import static com.rundeck.plugins.ansible.ansible.InventoryList.HOSTS;
+
+/**
+ * Reads the JSON output of {@code ansible-inventory --list} with a Jackson token stream.
+ * <p>
+ * Host variables under {@code _meta.hostvars} are handed to the handler one host at a time as they are read.
+ * Only the group structure (names and member lists) is kept, and once the document is read the groups are
+ * walked from {@code all} the same way {@code AnsibleResourceModelSource.processChildren} walks the yaml
+ * output: child groups in name order, group names accumulating as tags and cleared after each group holding hosts.
+ * </p>
+ */
+@Slf4j
+public class InventoryListJsonParser {
+
+    public static final String META = "_meta";
+    public static final String HOSTVARS = "hostvars";
+
+    /**
+     * Receives the hosts of the inventory.
+     */
+    public interface InventoryHandler {
+        /**
+         * Called once for each host having variables, before any {@link #host(String, Set)} call.
+         */
+        void hostVars(String host, Map<String, Object> vars) throws ResourceModelSourceException;
+
+        /**
+         * Called for each host of each group, hosts in several groups are reported several times.
+         *
+         * @param tags groups of the host, only valid during the call
+         */
+        void host(String host, Set<String> tags) throws ResourceModelSourceException;
+    }
+
+    private static class Group {
+        private final List<String> hosts = new ArrayList<>();
+        private final List<String> children = new ArrayList<>();
+    }
+
+    private static final TypeReference<Map<String, Object>> VARS_TYPE = new TypeReference<Map<String, Object>>() {};
+
+    private final ObjectMapper mapper;
+
+    public InventoryListJsonParser() {
+        this(new ObjectMapper());
+    }
+
+    public InventoryListJsonParser(ObjectMapper mapper) {
+        this.mapper = mapper;
+    }
+
+    /**
+     * Parses the inventory.
+     *
+     * @param reader  ansible-inventory JSON output
+     * @param handler inventory handler
+     * @throws IOException                  if the output is not valid JSON
+     * @throws ResourceModelSourceException if the handler failed
+     */
+    public void parse(Reader reader, InventoryHandler handler) throws IOException, ResourceModelSourceException {
+        Map<String, Group> groups = new HashMap<>();
+
+        try (JsonParser parser = mapper.getFactory().createParser(reader)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                log.warn("Tag '{}' is empty!", ALL);
+                return;
+            }
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                JsonToken value = parser.nextToken();
+
+                if (value != JsonToken.START_OBJECT) {
+                    parser.skipChildren();
+                } else if (META.equals(name)) {
+                    readMeta(parser, handler);
+                } else {
+                    groups.put(name, readGroup(parser));
+                }
+            }
+        }
+
+        Group all = groups.get(ALL);
+        if (all == null) {
+            log.warn("Tag '{}' is empty!", ALL);
+            return;
+        }
+        walkChildren(all.children, groups, new HashSet<>(), new HashSet<>(), handler);
+    }
+
+    private void readMeta(JsonParser parser, InventoryHandler handler) throws IOException, ResourceModelSourceException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (HOSTVARS.equals(name) && value == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String host = parser.currentName();
+                    if (parser.nextToken() == JsonToken.START_OBJECT) {
+                        handler.hostVars(host, mapper.readValue(parser, VARS_TYPE));
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private Group readGroup(JsonParser parser) throws IOException {
+        Group group = new Group();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (value == JsonToken.START_ARRAY && (HOSTS.equals(name) || CHILDREN.equals(name))) {
+                List<String> target = HOSTS.equals(name) ? group.hosts : group.children;
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    target.add(parser.getValueAsString());
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return group;
+    }
+
+    private void walkChildren(List<String> children, Map<String, Group> groups, Set<String> tags,
+                              Set<String> path, InventoryHandler handler) throws ResourceModelSourceException {
+        if (children.isEmpty()) {
+            log.warn("Tag '{}' is empty!", CHILDREN);
+            return;
+        }
+
+        // the yaml output lists child groups as sorted mapping keys
+        List<String> sorted = new ArrayList<>(children);
+        sorted.sort(null);
+
+        for (String name : sorted) {
+            // empty groups are still listed as children but, as in the yaml output, have no entry of their own
+            Group group = groups.get(name);
+            if (group == null) {
+                continue;
+            }
+            tags.add(name);
+
+            if (!group.children.isEmpty()) {
+                if (!path.add(name)) {
+                    log.warn("Skipping group '{}' included in itself", name);
+                    continue;
+                }
+                walkChildren(group.children, groups, tags, path, handler);
+                path.remove(name);
+            } else {
+                if (group.hosts.isEmpty()) {
+                    log.warn("Tag '{}' is empty!", HOSTS);
+                }
+                for (String host : group.hosts) {
+                    handler.host(host, tags);
+                }
+                tags.clear();
+            }
+        }
+    }
+}
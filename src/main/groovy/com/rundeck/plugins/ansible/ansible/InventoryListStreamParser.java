@@ -0,0 +1,277 @@
+package com.rundeck.plugins.ansible.ansible;
+
+import com.dtolabs.rundeck.core.resources.ResourceModelSourceException;
+import lombok.extern.slf4j.Slf4j;
+import org.yaml.snakeyaml.LoaderOptions;
+import org.yaml.snakeyaml.constructor.SafeConstructor;
+import org.yaml.snakeyaml.error.YAMLException;
+import org.yaml.snakeyaml.events.AliasEvent;
+import org.yaml.snakeyaml.events.Event;
+import org.yaml.snakeyaml.events.NodeEvent;
+import org.yaml.snakeyaml.events.ScalarEvent;
+import org.yaml.snakeyaml.nodes.NodeId;
+import org.yaml.snakeyaml.nodes.ScalarNode;
+import org.yaml.snakeyaml.nodes.Tag;
+import org.yaml.snakeyaml.parser.Parser;
+import org.yaml.snakeyaml.parser.ParserImpl;
+import org.yaml.snakeyaml.reader.StreamReader;
+import org.yaml.snakeyaml.resolver.Resolver;
+
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.rundeck.plugins.ansible.ansible.InventoryList.ALL;
+import static com.rundeck.plugins.ansible.ansible.InventoryList.CHILDREN;
+import static com.rundeck.plugins.ansible.ansible.InventoryList.HOSTS;
+
+/**
+ * Reads the output of {@code ansible-inventory --list -y} from SnakeYAML parse events, handing every host
+ * to a {@link HostHandler} as soon as its mapping is complete instead of loading the whole document.
+ * <p>
+ * Groups are walked like {@code AnsibleResourceModelSource.processChildren}: group names accumulate as tags
+ * down the {@code children} tree and are cleared after each group holding hosts. ansible-inventory sorts the
+ * keys, so {@code children} always comes before {@code hosts} in a group. Scalars are typed by the same
+ * resolver and constructors as {@code new Yaml(new SafeConstructor(options)).load(...)}.
+ * </p>
+ * Only anchored values are kept for the whole document, so they can be resolved when aliased by later hosts.
+ */
+@Slf4j
+public class InventoryListStreamParser {
+
+    /**
+     * Receives the hosts of the inventory.
+     */
+    public interface HostHandler {
+        /**
+         * @param hostKey   host name, as constructed from the yaml key
+         * @param hostValue host variables, usually a map
+         * @param tags      groups of the host, only valid during the call
+         */
+        void host(Object hostKey, Object hostValue, Set<String> tags) throws ResourceModelSourceException;
+    }
+
+    private static class ScalarConstructor extends SafeConstructor {
+        private ScalarConstructor(LoaderOptions loaderOptions) {
+            super(loaderOptions);
+        }
+
+        // bypasses constructObject, which keeps every constructed node until the end of the document
+        private Object constructValue(ScalarNode node) {
+            return getConstructor(node).construct(node);
+        }
+    }
+
+    private final LoaderOptions loaderOptions;
+    private final Resolver resolver = new Resolver();
+    private final ScalarConstructor constructor;
+    private final Map<String, Object> anchors = new HashMap<>();
+    private int collectionAliases;
+    private Parser parser;
+
+    public InventoryListStreamParser(LoaderOptions loaderOptions) {
+        this.loaderOptions = loaderOptions;
+        this.constructor = new ScalarConstructor(loaderOptions);
+    }
+
+    /**
+     * Parses the inventory, calling the handler for each host.
+     *
+     * @param reader  ansible-inventory yaml output
+     * @param handler host handler
+     * @throws ResourceModelSourceException if the handler failed
+     * @throws YAMLException                if the output is not valid yaml
+     */
+    public void parse(Reader reader, HostHandler handler) throws ResourceModelSourceException {
+        parser = new ParserImpl(new StreamReader(reader), loaderOptions);
+        anchors.clear();
+        collectionAliases = 0;
+
+        try {
+            parser.getEvent(); // stream start
+            if (parser.checkEvent(Event.ID.StreamEnd)) {
+                return;
+            }
+            parser.getEvent(); // document start
+
+            if (parser.checkEvent(Event.ID.MappingStart)) {
+                parser.getEvent();
+                while (!parser.checkEvent(Event.ID.MappingEnd)) {
+                    Object key = readValue();
+                    if (ALL.equals(key)) {
+                        parseAll(handler);
+                    } else {
+                        readValue();
+                    }
+                }
+                parser.getEvent();
+            } else {
+                readValue();
+            }
+
+            // consume the rest of the stream so the process can finish writing
+            while (!parser.checkEvent(Event.ID.StreamEnd)) {
+                parser.getEvent();
+            }
+        } finally {
+            anchors.clear();
+            parser = null;
+        }
+    }
+
+    private void parseAll(HostHandler handler) throws ResourceModelSourceException {
+        if (!parser.checkEvent(Event.ID.MappingStart)) {
+            readValue();
+            log.warn("Tag '{}' is empty!", ALL);
+            return;
+        }
+
+        parser.getEvent();
+        boolean hasChildren = false;
+        while (!parser.checkEvent(Event.ID.MappingEnd)) {
+            Object key = readValue();
+            if (CHILDREN.equals(key)) {
+                hasChildren = true;
+                parseChildren(new HashSet<>(), handler);
+            } else {
+                readValue();
+            }
+        }
+        parser.getEvent();
+
+        if (!hasChildren) {
+            log.warn("Tag '{}' is empty!", CHILDREN);
+        }
+    }
+
+    private void parseChildren(Set<String> tags, HostHandler handler) throws ResourceModelSourceException {
+        if (!parser.checkEvent(Event.ID.MappingStart)) {
+            readValue();
+            log.warn("Tag '{}' is empty!", CHILDREN);
+            return;
+        }
+
+        parser.getEvent();
+        while (!parser.checkEvent(Event.ID.MappingEnd)) {
+            tags.add(String.valueOf(readValue()));
+            parseGroup(tags, handler);
+        }
+        parser.getEvent();
+    }
+
+    private void parseGroup(Set<String> tags, HostHandler handler) throws ResourceModelSourceException {
+        boolean hasChildren = false;
+        boolean hasHosts = false;
+
+        if (parser.checkEvent(Event.ID.MappingStart)) {
+            parser.getEvent();
+            while (!parser.checkEvent(Event.ID.MappingEnd)) {
+                Object key = readValue();
+                if (CHILDREN.equals(key)) {
+                    hasChildren = true;
+                    parseChildren(tags, handler);
+                } else if (HOSTS.equals(key) && !hasChildren) {
+                    hasHosts = true;
+                    parseHosts(tags, handler);
+                } else {
+                    readValue();
+                }
+            }
+            parser.getEvent();
+        } else {
+            readValue();
+        }
+
+        if (!hasChildren) {
+            if (!hasHosts) {
+                log.warn("Tag '{}' is empty!", HOSTS);
+            }
+            tags.clear();
+        }
+    }
+
+    private void parseHosts(Set<String> tags, HostHandler handler) throws ResourceModelSourceException {
+        if (!parser.checkEvent(Event.ID.MappingStart)) {
+            readValue();
+            log.warn("Tag '{}' is empty!", HOSTS);
+            return;
+        }
+
+        parser.getEvent();
+        while (!parser.checkEvent(Event.ID.MappingEnd)) {
+            Object hostKey = readValue();
+            Object hostValue = readValue();
+            handler.host(hostKey, hostValue, tags);
+        }
+        parser.getEvent();
+    }
+
+    /**
+     * Builds the value starting at the next event, the way the SafeConstructor would.
+     */
+    private Object readValue() {
+        Event event = parser.getEvent();
+
+        if (event.is(Event.ID.Alias)) {
+            String anchor = ((AliasEvent) event).getAnchor();
+            if (!anchors.containsKey(anchor)) {
+                throw new YAMLException("found undefined alias " + anchor);
+            }
+            Object value = anchors.get(anchor);
+            if ((value instanceof Map || value instanceof List)
+                    && ++collectionAliases > loaderOptions.getMaxAliasesForCollections()) {
+                throw new YAMLException("Number of aliases for non-scalar nodes exceeds the specified max="
+                        + loaderOptions.getMaxAliasesForCollections());
+            }
+            return value;
+        }
+
+        if (event.is(Event.ID.Scalar)) {
+            ScalarEvent scalar = (ScalarEvent) event;
+            Tag tag;
+            if (scalar.getTag() == null || "!".equals(scalar.getTag())) {
+                tag = resolver.resolve(NodeId.scalar, scalar.getValue(), scalar.getImplicit().canOmitTagInPlainScalar());
+            } else {
+                tag = new Tag(scalar.getTag());
+            }
+            Object value = constructor.constructValue(new ScalarNode(tag, scalar.getValue(),
+                    scalar.getStartMark(), scalar.getEndMark(), scalar.getScalarStyle()));
+            registerAnchor(scalar, value);
+            return value;
+        }
+
+        if (event.is(Event.ID.SequenceStart)) {
+            List<Object> list = new ArrayList<>();
+            registerAnchor((NodeEvent) event, list);
+            while (!parser.checkEvent(Event.ID.SequenceEnd)) {
+                list.add(readValue());
+            }
+            parser.getEvent();
+            return list;
+        }
+
+        if (event.is(Event.ID.MappingStart)) {
+            Map<Object, Object> map = new LinkedHashMap<>();
+            registerAnchor((NodeEvent) event, map);
+            while (!parser.checkEvent(Event.ID.MappingEnd)) {
+                Object key = readValue();
+                map.put(key, readValue());
+            }
+            parser.getEvent();
+            return map;
+        }
+
+        throw new YAMLException("Unexpected yaml event: " + event);
+    }
+
+    private void registerAnchor(NodeEvent event, Object value) {
+        if (event.getAnchor() != null) {
+            anchors.put(event.getAnchor(), value);
+        }
+    }
+}
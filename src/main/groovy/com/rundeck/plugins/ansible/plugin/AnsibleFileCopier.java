@@ -47,6 +47,7 @@ public class AnsibleFileCopier implements FileCopier, AnsibleDescribable, ProxyR
         builder.property(SSH_KEY_FILE_PROP);
         builder.property(SSH_KEY_STORAGE_PROP);
         builder.property(SSH_TIMEOUT_PROP);
+        builder.property(SSH_CONTROL_PERSIST_PROP);
         builder.property(SSH_USE_AGENT);
         builder.property(SSH_PASSPHRASE);
         builder.property(SSH_PASSPHRASE_OPTION);
@@ -56,6 +57,8 @@ public class AnsibleFileCopier implements FileCopier, AnsibleDescribable, ProxyR
         builder.property(BECOME_PASSWORD_STORAGE_PROP);
         builder.property(VAULT_KEY_FILE_PROP);
         builder.property(VAULT_KEY_STORAGE_PROP);
+        builder.property(WORKER_PROP);
+        builder.property(WORKER_IDLE_TIMEOUT_PROP);
 
         builder.mapping(ANSIBLE_BINARIES_DIR_PATH,PROJ_PROP_PREFIX + ANSIBLE_BINARIES_DIR_PATH);
         builder.frameworkMapping(ANSIBLE_BINARIES_DIR_PATH,FWK_PROP_PREFIX + ANSIBLE_BINARIES_DIR_PATH);
@@ -73,6 +76,12 @@ public class AnsibleFileCopier implements FileCopier, AnsibleDescribable, ProxyR
         builder.frameworkMapping(ANSIBLE_SSH_PASSPHRASE_OPTION,FWK_PROP_PREFIX + ANSIBLE_SSH_PASSPHRASE_OPTION);
         builder.mapping(ANSIBLE_SSH_USE_AGENT,PROJ_PROP_PREFIX + ANSIBLE_SSH_USE_AGENT);
         builder.frameworkMapping(ANSIBLE_SSH_USE_AGENT,FWK_PROP_PREFIX + ANSIBLE_SSH_USE_AGENT);
+        builder.mapping(ANSIBLE_WORKER,PROJ_PROP_PREFIX + ANSIBLE_WORKER);
+        builder.frameworkMapping(ANSIBLE_WORKER,FWK_PROP_PREFIX + ANSIBLE_WORKER);
+        builder.mapping(ANSIBLE_WORKER_IDLE_TIMEOUT,PROJ_PROP_PREFIX + ANSIBLE_WORKER_IDLE_TIMEOUT);
+        builder.frameworkMapping(ANSIBLE_WORKER_IDLE_TIMEOUT,FWK_PROP_PREFIX + ANSIBLE_WORKER_IDLE_TIMEOUT);
+        builder.mapping(ANSIBLE_SSH_CONTROL_PERSIST,PROJ_PROP_PREFIX + ANSIBLE_SSH_CONTROL_PERSIST);
+        builder.frameworkMapping(ANSIBLE_SSH_CONTROL_PERSIST,FWK_PROP_PREFIX + ANSIBLE_SSH_CONTROL_PERSIST);
 
         DESC=builder.build();
   }
@@ -155,6 +164,8 @@ public class AnsibleFileCopier implements FileCopier, AnsibleDescribable, ProxyR
     try {
         runner = AnsibleRunner.buildAnsibleRunner(contextBuilder);
         runner.setCustomTmpDirPath(AnsibleUtil.getCustomTmpPathDir(contextBuilder.getFramework()));
+        runner.setUseWorker(contextBuilder.useWorker());
+        runner.setWorkerIdleTimeout(contextBuilder.getWorkerIdleTimeout());
     } catch (ConfigurationException e) {
           throw new FileCopierException("Error configuring Ansible.",AnsibleFailureReason.ParseArgumentsError, e);
     }
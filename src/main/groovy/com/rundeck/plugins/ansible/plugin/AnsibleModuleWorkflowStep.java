@@ -1,10 +1,13 @@
 package com.rundeck.plugins.ansible.plugin;
 
+import com.dtolabs.rundeck.core.dispatcher.ContextView;
 import com.dtolabs.rundeck.core.execution.ExecutionContext;
+import com.dtolabs.rundeck.core.execution.workflow.SharedOutputContext;
 import com.dtolabs.rundeck.core.execution.proxy.ProxySecretBundleCreator;
 import com.dtolabs.rundeck.core.execution.proxy.SecretBundle;
 import com.rundeck.plugins.ansible.ansible.AnsibleDescribable;
 import com.rundeck.plugins.ansible.ansible.AnsibleException;
+import com.rundeck.plugins.ansible.ansible.AnsibleHostResult;
 import com.rundeck.plugins.ansible.ansible.AnsibleRunner;
 import com.rundeck.plugins.ansible.ansible.AnsibleRunnerContextBuilder;
 import com.dtolabs.rundeck.core.execution.workflow.steps.StepException;
@@ -44,6 +47,7 @@ public class AnsibleModuleWorkflowStep implements StepPlugin, AnsibleDescribable
         builder.property(SSH_KEY_FILE_PROP);
         builder.property(SSH_KEY_STORAGE_PROP);
         builder.property(SSH_TIMEOUT_PROP);
+        builder.property(SSH_CONTROL_PERSIST_PROP);
         builder.property(SSH_USE_AGENT);
         builder.property(SSH_PASSPHRASE);
         builder.property(SSH_PASSPHRASE_OPTION);
@@ -51,9 +55,14 @@ public class AnsibleModuleWorkflowStep implements StepPlugin, AnsibleDescribable
         builder.property(BECOME_AUTH_TYPE_PROP);
         builder.property(BECOME_USER_PROP);
         builder.property(BECOME_PASSWORD_STORAGE_PROP);
+        builder.property(FORKS_BUDGET_PROP);
 
         builder.mapping(ANSIBLE_BASE_DIR_PATH,PROJ_PROP_PREFIX + ANSIBLE_BASE_DIR_PATH);
         builder.frameworkMapping(ANSIBLE_BASE_DIR_PATH,FWK_PROP_PREFIX + ANSIBLE_BASE_DIR_PATH);
+        builder.mapping(ANSIBLE_FORKS_BUDGET,PROJ_PROP_PREFIX + ANSIBLE_FORKS_BUDGET);
+        builder.frameworkMapping(ANSIBLE_FORKS_BUDGET,FWK_PROP_PREFIX + ANSIBLE_FORKS_BUDGET);
+        builder.mapping(ANSIBLE_SSH_CONTROL_PERSIST,PROJ_PROP_PREFIX + ANSIBLE_SSH_CONTROL_PERSIST);
+        builder.frameworkMapping(ANSIBLE_SSH_CONTROL_PERSIST,FWK_PROP_PREFIX + ANSIBLE_SSH_CONTROL_PERSIST);
 
         DESC = builder.build();
     }
@@ -96,15 +105,67 @@ public class AnsibleModuleWorkflowStep implements StepPlugin, AnsibleDescribable
         try {
             runner.run();
         } catch (AnsibleException e) {
-            throw new StepException(e.getMessage(), e, e.getFailureReason());
+            throw new StepException(failureMessage(e.getMessage(), runner.getHostResults()), e, e.getFailureReason());
         } catch (Exception e) {
             throw new StepException(e.getMessage(), e, AnsibleException.AnsibleFailureReason.AnsibleError);
         }finally {
+            addHostOutputs(context, runner.getHostResults());
             contextBuilder.cleanupTempFiles();
         }
 
     }
 
+    /**
+     * Adds the result of each host to the data context of its node, as {@code ${ansible.rc@node}},
+     * {@code ${ansible.changed@node}}, {@code ${ansible.failed@node}}, {@code ${ansible.unreachable@node}},
+     * {@code ${ansible.msg@node}} and {@code ${ansible.stdout_size@node}}.
+     */
+    static void addHostOutputs(PluginStepContext context, Map<String, AnsibleHostResult> hostResults) {
+        SharedOutputContext outputContext = context.getExecutionContext() != null ? context.getExecutionContext().getOutputContext() : null;
+        if (outputContext == null || hostResults == null) {
+            return;
+        }
+        for (AnsibleHostResult hostResult : hostResults.values()) {
+            ContextView view = ContextView.node(hostResult.getHost());
+            if (hostResult.getRc() != null) {
+                outputContext.addOutput(view, "ansible", "rc", String.valueOf(hostResult.getRc()));
+            }
+            outputContext.addOutput(view, "ansible", "changed", String.valueOf(hostResult.isChanged()));
+            outputContext.addOutput(view, "ansible", "failed", String.valueOf(hostResult.isFailed()));
+            outputContext.addOutput(view, "ansible", "unreachable", String.valueOf(hostResult.isUnreachable()));
+            if (hostResult.getMsg() != null) {
+                outputContext.addOutput(view, "ansible", "msg", hostResult.getMsg());
+            }
+            if (hostResult.getStdoutSize() != null) {
+                outputContext.addOutput(view, "ansible", "stdout_size", String.valueOf(hostResult.getStdoutSize()));
+            }
+        }
+    }
+
+    /**
+     * @return the message of the run, followed by the hosts that failed and why
+     */
+    static String failureMessage(String message, Map<String, AnsibleHostResult> hostResults) {
+        if (hostResults == null) {
+            return message;
+        }
+        StringBuilder failures = new StringBuilder();
+        for (AnsibleHostResult hostResult : hostResults.values()) {
+            if (hostResult.isSuccess()) {
+                continue;
+            }
+            failures.append(failures.length() > 0 ? ", " : " Failed hosts: ");
+            failures.append(hostResult.getHost());
+            if (hostResult.isUnreachable()) {
+                failures.append(" (unreachable)");
+            }
+            if (hostResult.getMsg() != null) {
+                failures.append(": ").append(hostResult.getMsg());
+            }
+        }
+        return message + failures;
+    }
+
     @Override
     public Description getDescription() {
         return DESC;
@@ -15,10 +15,16 @@ import com.dtolabs.rundeck.plugins.ServiceNameConstants;
 import com.dtolabs.rundeck.plugins.util.DescriptionBuilder;
 import com.rundeck.plugins.ansible.util.AnsibleUtil;
 
+import com.dtolabs.rundeck.core.common.NodeSetImpl;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
+@Slf4j
 @Plugin(name = AnsibleNodeExecutor.SERVICE_PROVIDER_NAME, service = ServiceNameConstants.NodeExecutor)
 public class AnsibleNodeExecutor implements NodeExecutor, AnsibleDescribable, ProxyRunnerPlugin {
 
@@ -26,6 +32,8 @@ public class AnsibleNodeExecutor implements NodeExecutor, AnsibleDescribable, Pr
 
   public static Description DESC = null;
 
+  private static final AnsibleBatchDispatcher<AnsibleHostResult> BATCH_DISPATCHER = new AnsibleBatchDispatcher<>();
+
   static {
         DescriptionBuilder builder = DescriptionBuilder.builder();
         builder.name(SERVICE_PROVIDER_NAME);
@@ -38,12 +46,14 @@ public class AnsibleNodeExecutor implements NodeExecutor, AnsibleDescribable, Pr
         builder.property(BASE_DIR_PROP);
         builder.property(GENERATE_INVENTORY_PROP);
         builder.property(GENERATE_INVENTORY_NODES_AUTH);
+        builder.property(NODES_AUTH_HOST_VARS);
         builder.property(SSH_AUTH_TYPE_PROP);
         builder.property(SSH_USER_PROP);
         builder.property(SSH_PASSWORD_STORAGE_PROP);
         builder.property(SSH_KEY_FILE_PROP);
         builder.property(SSH_KEY_STORAGE_PROP);
         builder.property(SSH_TIMEOUT_PROP);
+        builder.property(SSH_CONTROL_PERSIST_PROP);
         builder.property(SSH_USE_AGENT);
         builder.property(SSH_PASSPHRASE);
         builder.property(SSH_PASSPHRASE_OPTION);
@@ -53,7 +63,10 @@ public class AnsibleNodeExecutor implements NodeExecutor, AnsibleDescribable, Pr
         builder.property(BECOME_PASSWORD_STORAGE_PROP);
         builder.property(VAULT_KEY_FILE_PROP);
         builder.property(VAULT_KEY_STORAGE_PROP);
-
+        builder.property(NODE_EXECUTOR_BATCH_PROP);
+        builder.property(NODE_EXECUTOR_BATCH_WINDOW_PROP);
+        builder.property(WORKER_PROP);
+        builder.property(WORKER_IDLE_TIMEOUT_PROP);
 
         builder.mapping(ANSIBLE_BINARIES_DIR_PATH,PROJ_PROP_PREFIX + ANSIBLE_BINARIES_DIR_PATH);
         builder.frameworkMapping(ANSIBLE_BINARIES_DIR_PATH,FWK_PROP_PREFIX + ANSIBLE_BINARIES_DIR_PATH);
@@ -69,6 +82,8 @@ public class AnsibleNodeExecutor implements NodeExecutor, AnsibleDescribable, Pr
         builder.frameworkMapping(ANSIBLE_GENERATE_INVENTORY,FWK_PROP_PREFIX + ANSIBLE_GENERATE_INVENTORY);
         builder.mapping(ANSIBLE_GENERATE_INVENTORY_NODES_AUTH,PROJ_PROP_PREFIX + ANSIBLE_GENERATE_INVENTORY_NODES_AUTH);
         builder.frameworkMapping(ANSIBLE_GENERATE_INVENTORY_NODES_AUTH,FWK_PROP_PREFIX + ANSIBLE_GENERATE_INVENTORY_NODES_AUTH);
+        builder.mapping(ANSIBLE_NODES_AUTH_HOST_VARS,PROJ_PROP_PREFIX + ANSIBLE_NODES_AUTH_HOST_VARS);
+        builder.frameworkMapping(ANSIBLE_NODES_AUTH_HOST_VARS,FWK_PROP_PREFIX + ANSIBLE_NODES_AUTH_HOST_VARS);
         builder.mapping(ANSIBLE_SSH_AUTH_TYPE,PROJ_PROP_PREFIX + ANSIBLE_SSH_AUTH_TYPE);
         builder.frameworkMapping(ANSIBLE_SSH_AUTH_TYPE,FWK_PROP_PREFIX + ANSIBLE_SSH_AUTH_TYPE);
         builder.mapping(ANSIBLE_SSH_USER,PROJ_PROP_PREFIX + ANSIBLE_SSH_USER);
@@ -99,6 +114,16 @@ public class AnsibleNodeExecutor implements NodeExecutor, AnsibleDescribable, Pr
         builder.frameworkMapping(ANSIBLE_VAULT_PATH,FWK_PROP_PREFIX + ANSIBLE_VAULT_PATH);
         builder.mapping(ANSIBLE_VAULTSTORE_PATH,PROJ_PROP_PREFIX + ANSIBLE_VAULTSTORE_PATH);
         builder.frameworkMapping(ANSIBLE_VAULTSTORE_PATH,FWK_PROP_PREFIX + ANSIBLE_VAULTSTORE_PATH);
+        builder.mapping(ANSIBLE_NODE_EXECUTOR_BATCH,PROJ_PROP_PREFIX + ANSIBLE_NODE_EXECUTOR_BATCH);
+        builder.frameworkMapping(ANSIBLE_NODE_EXECUTOR_BATCH,FWK_PROP_PREFIX + ANSIBLE_NODE_EXECUTOR_BATCH);
+        builder.mapping(ANSIBLE_NODE_EXECUTOR_BATCH_WINDOW,PROJ_PROP_PREFIX + ANSIBLE_NODE_EXECUTOR_BATCH_WINDOW);
+        builder.frameworkMapping(ANSIBLE_NODE_EXECUTOR_BATCH_WINDOW,FWK_PROP_PREFIX + ANSIBLE_NODE_EXECUTOR_BATCH_WINDOW);
+        builder.mapping(ANSIBLE_WORKER,PROJ_PROP_PREFIX + ANSIBLE_WORKER);
+        builder.frameworkMapping(ANSIBLE_WORKER,FWK_PROP_PREFIX + ANSIBLE_WORKER);
+        builder.mapping(ANSIBLE_WORKER_IDLE_TIMEOUT,PROJ_PROP_PREFIX + ANSIBLE_WORKER_IDLE_TIMEOUT);
+        builder.frameworkMapping(ANSIBLE_WORKER_IDLE_TIMEOUT,FWK_PROP_PREFIX + ANSIBLE_WORKER_IDLE_TIMEOUT);
+        builder.mapping(ANSIBLE_SSH_CONTROL_PERSIST,PROJ_PROP_PREFIX + ANSIBLE_SSH_CONTROL_PERSIST);
+        builder.frameworkMapping(ANSIBLE_SSH_CONTROL_PERSIST,FWK_PROP_PREFIX + ANSIBLE_SSH_CONTROL_PERSIST);
 
       DESC=builder.build();
   }
@@ -171,12 +196,18 @@ public class AnsibleNodeExecutor implements NodeExecutor, AnsibleDescribable, Pr
       jobConf.put(AnsibleDescribable.ANSIBLE_DEBUG,"False");
     }
 
+    String batchKey = getBatchKey(context, node, jobConf);
+    if (batchKey != null) {
+        return executeBatched(context, node, jobConf, batchKey);
+    }
 
     AnsibleRunnerContextBuilder contextBuilder = new AnsibleRunnerContextBuilder(node, context, context.getFramework(), jobConf);
 
     try {
         runner = AnsibleRunner.buildAnsibleRunner(contextBuilder);
         runner.setCustomTmpDirPath(AnsibleUtil.getCustomTmpPathDir(contextBuilder.getFramework()));
+        runner.setUseWorker(contextBuilder.useWorker());
+        runner.setWorkerIdleTimeout(contextBuilder.getWorkerIdleTimeout());
     } catch (ConfigurationException e) {
           return NodeExecutorResultImpl.createFailure(AnsibleException.AnsibleFailureReason.ParseArgumentsError, e.getMessage(), node);
     }
@@ -184,6 +215,11 @@ public class AnsibleNodeExecutor implements NodeExecutor, AnsibleDescribable, Pr
     try {
         runner.run();
     } catch (Exception e) {
+        // the tree callback tells why the command failed on the node
+        AnsibleHostResult hostResult = runner.getHostResults() != null ? runner.getHostResults().get(node.getNodename()) : null;
+        if (hostResult != null && !hostResult.isSuccess()) {
+            return NodeExecutorResultImpl.createFailure(AnsibleException.AnsibleFailureReason.AnsibleNonZero, failureMessage(hostResult), node);
+        }
         return NodeExecutorResultImpl.createFailure(AnsibleException.AnsibleFailureReason.AnsibleError, e.getMessage(), node);
     }finally {
         contextBuilder.cleanupTempFiles();
@@ -192,6 +228,154 @@ public class AnsibleNodeExecutor implements NodeExecutor, AnsibleDescribable, Pr
     return NodeExecutorResultImpl.createSuccess(node);
   }
 
+  /**
+   * Returns the key grouping this invocation with the other nodes of the same step, or null if the
+   * command has to run on its own (batching disabled, sequential dispatch or a single target node).
+   */
+  String getBatchKey(ExecutionContext context, INodeEntry node, Map<String, Object> jobConf) {
+    String batch = PropertyResolver.resolveProperty(
+            AnsibleDescribable.ANSIBLE_NODE_EXECUTOR_BATCH,
+            "false",
+            context.getFrameworkProject(),
+            context.getFramework(),
+            node,
+            null
+    );
+    if (!Boolean.parseBoolean(batch)) {
+      return null;
+    }
+
+    if (context.getThreadCount() <= 1 || context.getNodes() == null || context.getNodes().getNodeNames().size() <= 1) {
+      return null;
+    }
+
+    String executionId = null;
+    if (context.getDataContext() != null && context.getDataContext().get("job") != null) {
+      executionId = context.getDataContext().get("job").get("execid");
+    }
+    if (executionId == null) {
+      return null;
+    }
+
+    // nodes overriding ansible settings through their attributes can only share a run with
+    // nodes using the exact same overrides
+    StringBuilder key = new StringBuilder();
+    key.append(executionId)
+       .append('\n').append(jobConf.get(AnsibleDescribable.ANSIBLE_MODULE))
+       .append('\n').append(jobConf.get(AnsibleDescribable.ANSIBLE_MODULE_ARGS));
+    new TreeMap<>(getAnsibleNodeAttributes(node)).forEach((name, value) ->
+            key.append('\n').append(name).append('=').append(value));
+    return key.toString();
+  }
+
+  private NodeExecutorResult executeBatched(ExecutionContext context, INodeEntry node, Map<String, Object> jobConf, String batchKey) {
+    long window;
+    try {
+      window = PropertyResolver.resolveLongProperty(
+              AnsibleDescribable.ANSIBLE_NODE_EXECUTOR_BATCH_WINDOW,
+              Long.valueOf(AnsibleDescribable.DEFAULT_ANSIBLE_NODE_EXECUTOR_BATCH_WINDOW),
+              context.getFrameworkProject(),
+              context.getFramework(),
+              node,
+              null
+      );
+    } catch (ConfigurationException e) {
+      return NodeExecutorResultImpl.createFailure(AnsibleException.AnsibleFailureReason.ParseArgumentsError, e.getMessage(), node);
+    }
+
+    int expectedSize = Math.min(context.getThreadCount(), context.getNodes().getNodeNames().size());
+
+    AnsibleHostResult hostResult;
+    try {
+      hostResult = BATCH_DISPATCHER.dispatch(batchKey, node, expectedSize, window,
+              nodes -> runBatch(context, nodes, jobConf));
+    } catch (ConfigurationException e) {
+      return NodeExecutorResultImpl.createFailure(AnsibleException.AnsibleFailureReason.ParseArgumentsError, e.getMessage(), node);
+    } catch (Exception e) {
+      return NodeExecutorResultImpl.createFailure(AnsibleException.AnsibleFailureReason.AnsibleError, e.getMessage(), node);
+    }
+
+    if (hostResult == null) {
+      return NodeExecutorResultImpl.createFailure(AnsibleException.AnsibleFailureReason.AnsibleError,
+              "ERROR: Ansible returned no result for node " + node.getNodename(), node);
+    }
+
+    // printed from the node's own thread so the output is logged for the node it belongs to
+    if (hostResult.getStdout() != null && !hostResult.getStdout().isEmpty()) {
+      System.out.println(hostResult.getStdout());
+    }
+    if (hostResult.getStderr() != null && !hostResult.getStderr().isEmpty()) {
+      System.err.println(hostResult.getStderr());
+    }
+
+    if (!hostResult.isSuccess()) {
+      return NodeExecutorResultImpl.createFailure(AnsibleException.AnsibleFailureReason.AnsibleNonZero, failureMessage(hostResult), node);
+    }
+    return NodeExecutorResultImpl.createSuccess(node);
+  }
+
+  private static String failureMessage(AnsibleHostResult hostResult) {
+    String message = hostResult.getMsg() != null ? hostResult.getMsg() : "ERROR: Ansible execution returned with non zero code.";
+    if (hostResult.isUnreachable()) {
+      message = "ERROR: host unreachable: " + message;
+    }
+    return message;
+  }
+
+  /**
+   * Runs the command once for all nodes of a batch and splits the outcome per host using
+   * the tree callback output, read by the runner.
+   */
+  private Map<String, AnsibleHostResult> runBatch(ExecutionContext context, List<INodeEntry> nodes, Map<String, Object> jobConf) throws Exception {
+    Map<String, Object> batchConf = new HashMap<>(jobConf);
+    // all batch members share the same ansible-* attributes, so they can be resolved as job settings
+    getAnsibleNodeAttributes(nodes.get(0)).forEach(batchConf::putIfAbsent);
+
+    NodeSetImpl nodeSet = new NodeSetImpl();
+    List<String> limits = new ArrayList<>();
+    for (INodeEntry entry : nodes) {
+      nodeSet.putNode(entry);
+      limits.add(entry.getNodename());
+    }
+
+    AnsibleRunnerContextBuilder contextBuilder = new AnsibleRunnerContextBuilder(context, context.getFramework(), nodeSet, batchConf);
+
+    try {
+      AnsibleRunner runner = AnsibleRunner.buildAnsibleRunner(contextBuilder);
+      runner.setCustomTmpDirPath(AnsibleUtil.getCustomTmpPathDir(contextBuilder.getFramework()));
+      runner.setUseWorker(contextBuilder.useWorker());
+      runner.setWorkerIdleTimeout(contextBuilder.getWorkerIdleTimeout());
+      if (runner.getLimits() != null) {
+        // limit is only unset when ansible-disable-limit is configured
+        runner.setLimits(limits);
+      }
+      // per-host failures are reported through the tree results, not the exit code
+      runner.setIgnoreErrors(true);
+      // the output of each node is printed from its own thread
+      runner.setKeepHostOutput(true);
+      runner.setListener(line -> log.debug("[ansible batch] {}", line));
+
+      log.debug("Running batched command for {} nodes", limits.size());
+      runner.run();
+
+      return runner.getHostResults();
+    } finally {
+      contextBuilder.cleanupTempFiles();
+    }
+  }
+
+  private static Map<String, String> getAnsibleNodeAttributes(INodeEntry node) {
+    Map<String, String> attributes = new HashMap<>();
+    if (node.getAttributes() != null) {
+      node.getAttributes().forEach((name, value) -> {
+        if (name.startsWith("ansible-") && value != null) {
+          attributes.put(name, value);
+        }
+      });
+    }
+    return attributes;
+  }
+
   @Override
   public Description getDescription() {
     return DESC;
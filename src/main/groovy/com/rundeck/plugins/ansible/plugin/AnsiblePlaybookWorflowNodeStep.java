@@ -3,10 +3,14 @@ package com.rundeck.plugins.ansible.plugin;
 import com.dtolabs.rundeck.core.execution.ExecutionContext;
 import com.dtolabs.rundeck.core.execution.proxy.ProxyRunnerPlugin;
 import com.dtolabs.rundeck.plugins.config.ConfiguredBy;
+import com.rundeck.plugins.ansible.ansible.AnsibleBatchDispatcher;
 import com.rundeck.plugins.ansible.ansible.AnsibleDescribable;
 import com.rundeck.plugins.ansible.ansible.AnsibleException;
+import com.rundeck.plugins.ansible.ansible.AnsibleHostResult;
+import com.rundeck.plugins.ansible.ansible.AnsiblePlaybookHostResults;
 import com.rundeck.plugins.ansible.ansible.AnsibleRunner;
 import com.rundeck.plugins.ansible.ansible.AnsibleRunnerContextBuilder;
+import com.rundeck.plugins.ansible.ansible.PropertyResolver;
 import com.dtolabs.rundeck.core.common.INodeEntry;
 import com.dtolabs.rundeck.core.execution.workflow.steps.node.NodeStepException;
 import com.dtolabs.rundeck.core.plugins.Plugin;
@@ -18,8 +22,10 @@ import com.dtolabs.rundeck.plugins.step.PluginStepContext;
 import com.dtolabs.rundeck.plugins.util.DescriptionBuilder;
 import com.rundeck.plugins.ansible.util.AnsibleUtil;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
 @Plugin(name = AnsiblePlaybookWorflowNodeStep.SERVICE_PROVIDER_NAME, service = ServiceNameConstants.WorkflowNodeStep)
 public class AnsiblePlaybookWorflowNodeStep implements NodeStepPlugin, AnsibleDescribable, ProxyRunnerPlugin, ConfiguredBy<AnsiblePluginGroup> {
@@ -28,6 +34,8 @@ public class AnsiblePlaybookWorflowNodeStep implements NodeStepPlugin, AnsibleDe
 
     public static Description DESC = null;
 
+    private static final AnsibleBatchDispatcher<AnsibleHostResult> BATCH_DISPATCHER = new AnsibleBatchDispatcher<>();
+
     private AnsiblePluginGroup pluginGroup;
 
     static {
@@ -54,13 +62,25 @@ public class AnsiblePlaybookWorflowNodeStep implements NodeStepPlugin, AnsibleDe
         builder.property(SSH_PASSPHRASE);
         builder.property(SSH_PASSPHRASE_OPTION);
         builder.property(SSH_TIMEOUT_PROP);
+        builder.property(SSH_CONTROL_PERSIST_PROP);
         builder.property(BECOME_PROP);
         builder.property(BECOME_AUTH_TYPE_PROP);
         builder.property(BECOME_USER_PROP);
         builder.property(BECOME_PASSWORD_STORAGE_PROP);
+        builder.property(PLAYBOOK_NODE_STEP_BATCH_PROP);
+        builder.property(PLAYBOOK_NODE_STEP_BATCH_WINDOW_PROP);
+        builder.property(FORKS_BUDGET_PROP);
 
         builder.mapping(ANSIBLE_BASE_DIR_PATH,PROJ_PROP_PREFIX + ANSIBLE_BASE_DIR_PATH);
         builder.frameworkMapping(ANSIBLE_BASE_DIR_PATH,FWK_PROP_PREFIX + ANSIBLE_BASE_DIR_PATH);
+        builder.mapping(ANSIBLE_FORKS_BUDGET,PROJ_PROP_PREFIX + ANSIBLE_FORKS_BUDGET);
+        builder.frameworkMapping(ANSIBLE_FORKS_BUDGET,FWK_PROP_PREFIX + ANSIBLE_FORKS_BUDGET);
+        builder.mapping(ANSIBLE_PLAYBOOK_NODE_STEP_BATCH,PROJ_PROP_PREFIX + ANSIBLE_PLAYBOOK_NODE_STEP_BATCH);
+        builder.frameworkMapping(ANSIBLE_PLAYBOOK_NODE_STEP_BATCH,FWK_PROP_PREFIX + ANSIBLE_PLAYBOOK_NODE_STEP_BATCH);
+        builder.mapping(ANSIBLE_PLAYBOOK_NODE_STEP_BATCH_WINDOW,PROJ_PROP_PREFIX + ANSIBLE_PLAYBOOK_NODE_STEP_BATCH_WINDOW);
+        builder.frameworkMapping(ANSIBLE_PLAYBOOK_NODE_STEP_BATCH_WINDOW,FWK_PROP_PREFIX + ANSIBLE_PLAYBOOK_NODE_STEP_BATCH_WINDOW);
+        builder.mapping(ANSIBLE_SSH_CONTROL_PERSIST,PROJ_PROP_PREFIX + ANSIBLE_SSH_CONTROL_PERSIST);
+        builder.frameworkMapping(ANSIBLE_SSH_CONTROL_PERSIST,FWK_PROP_PREFIX + ANSIBLE_SSH_CONTROL_PERSIST);
 
         DESC=builder.build();
     }
@@ -87,6 +107,12 @@ public class AnsiblePlaybookWorflowNodeStep implements NodeStepPlugin, AnsibleDe
             configuration.put(AnsibleDescribable.ANSIBLE_DEBUG,"False");
         }
 
+        String batchKey = getBatchKey(context, configuration, entry);
+        if (batchKey != null) {
+            executeBatched(context, configuration, entry, batchKey);
+            return;
+        }
+
         AnsibleRunnerContextBuilder
                 contextBuilder = new AnsibleRunnerContextBuilder(context.getExecutionContext(),
                 context.getFramework(),
@@ -113,6 +139,135 @@ public class AnsiblePlaybookWorflowNodeStep implements NodeStepPlugin, AnsibleDe
         }
     }
 
+    /**
+     * Returns the key grouping this invocation with the other nodes of the same step, or null if the
+     * playbook has to run on its own (batching disabled, sequential dispatch or a single target node).
+     */
+    String getBatchKey(PluginStepContext context, Map<String, Object> configuration, INodeEntry entry) {
+        ExecutionContext executionContext = context.getExecutionContext();
+        String batch = PropertyResolver.resolveProperty(
+                AnsibleDescribable.ANSIBLE_PLAYBOOK_NODE_STEP_BATCH,
+                "false",
+                executionContext.getFrameworkProject(),
+                context.getFramework(),
+                entry,
+                configuration
+        );
+        if (!Boolean.parseBoolean(batch)) {
+            return null;
+        }
+
+        if (executionContext.getThreadCount() <= 1 || context.getNodes() == null || context.getNodes().getNodeNames().size() <= 1) {
+            return null;
+        }
+
+        String executionId = null;
+        if (executionContext.getDataContext() != null && executionContext.getDataContext().get("job") != null) {
+            executionId = executionContext.getDataContext().get("job").get("execid");
+        }
+        if (executionId == null) {
+            return null;
+        }
+
+        // the configuration is resolved for each node, only nodes resolving it the same way can share a run
+        StringBuilder key = new StringBuilder();
+        key.append(executionId)
+           .append('\n').append(context.getStepContext()).append('/').append(context.getStepNumber());
+        new TreeMap<>(configuration).forEach((name, value) -> {
+            if (!AnsibleDescribable.ANSIBLE_LIMIT.equals(name)) {
+                key.append('\n').append(name).append('=').append(value);
+            }
+        });
+        return key.toString();
+    }
+
+    private void executeBatched(PluginStepContext context, Map<String, Object> configuration, INodeEntry entry, String batchKey)
+            throws NodeStepException {
+        ExecutionContext executionContext = context.getExecutionContext();
+        long window;
+        try {
+            window = PropertyResolver.resolveLongProperty(
+                    AnsibleDescribable.ANSIBLE_PLAYBOOK_NODE_STEP_BATCH_WINDOW,
+                    Long.valueOf(AnsibleDescribable.DEFAULT_ANSIBLE_PLAYBOOK_NODE_STEP_BATCH_WINDOW),
+                    executionContext.getFrameworkProject(),
+                    context.getFramework(),
+                    entry,
+                    configuration
+            );
+        } catch (ConfigurationException e) {
+            throw new NodeStepException("Error configuring Ansible runner: "+e.getMessage(), AnsibleException.AnsibleFailureReason.ParseArgumentsError, entry.getNodename());
+        }
+
+        int expectedSize = Math.min(executionContext.getThreadCount(), context.getNodes().getNodeNames().size());
+
+        AnsibleHostResult hostResult;
+        try {
+            hostResult = BATCH_DISPATCHER.dispatch(batchKey, entry, expectedSize, window,
+                    nodes -> runBatch(context, configuration, nodes));
+        } catch (ConfigurationException e) {
+            throw new NodeStepException("Error configuring Ansible runner: "+e.getMessage(), AnsibleException.AnsibleFailureReason.ParseArgumentsError, entry.getNodename());
+        } catch (AnsibleException e) {
+            throw new NodeStepException(e.getMessage(), e.getFailureReason(), entry.getNodename());
+        } catch (Exception e) {
+            throw new NodeStepException(e.getMessage(), AnsibleException.AnsibleFailureReason.AnsibleError, entry.getNodename());
+        }
+
+        // hosts left out of the recap were not targeted by any play, as with a run limited to the node alone
+        if (hostResult == null) {
+            return;
+        }
+
+        // printed from the node's own thread so the output is logged for the node it belongs to
+        if (hostResult.getStdout() != null && !hostResult.getStdout().isEmpty()) {
+            System.out.println(hostResult.getStdout());
+        }
+
+        if (!hostResult.isSuccess()) {
+            String message = hostResult.getMsg() != null ? "ERROR: " + hostResult.getMsg() : "ERROR: Ansible execution returned with non zero code.";
+            throw new NodeStepException(message, AnsibleException.AnsibleFailureReason.AnsibleNonZero, entry.getNodename());
+        }
+    }
+
+    /**
+     * Runs the playbook once for all nodes of a batch and splits the outcome per host using the play recap.
+     * The playbook output is logged by the node leading the batch.
+     */
+    private Map<String, AnsibleHostResult> runBatch(PluginStepContext context, Map<String, Object> configuration, List<INodeEntry> nodes) throws Exception {
+        List<String> limits = new ArrayList<>();
+        for (INodeEntry node : nodes) {
+            limits.add(node.getNodename());
+        }
+
+        AnsibleRunnerContextBuilder contextBuilder = new AnsibleRunnerContextBuilder(context.getExecutionContext(),
+                context.getFramework(),
+                context.getNodes(),
+                configuration,
+                pluginGroup);
+
+        try {
+            AnsibleRunner runner = AnsibleRunner.buildAnsibleRunner(contextBuilder);
+            runner.setCustomTmpDirPath(AnsibleUtil.getCustomTmpPathDir(contextBuilder.getFramework()));
+            if (runner.getLimits() != null) {
+                // limit is only unset when ansible-disable-limit is configured
+                runner.setLimits(limits);
+            }
+            // per-host failures are reported through the play recap, not the exit code
+            runner.setIgnoreErrors(true);
+            AnsiblePlaybookHostResults results = new AnsiblePlaybookHostResults();
+            runner.setEventHandler(results);
+
+            int result = runner.run();
+            if (result != 0 && results.getResults().isEmpty()) {
+                // failed before any host was run, e.g. a syntax error in the playbook
+                throw new AnsibleException("ERROR: Ansible execution returned with non zero code.",
+                        AnsibleException.AnsibleFailureReason.AnsibleNonZero);
+            }
+            return results.getResults();
+        } finally {
+            contextBuilder.cleanupTempFiles();
+        }
+    }
+
     @Override
     public List<String> listSecretsPathWorkflowNodeStep(ExecutionContext context, INodeEntry node, Map<String, Object> configuration) {
         AnsibleRunnerContextBuilder builder = new AnsibleRunnerContextBuilder(node, context, context.getFramework(), configuration);
@@ -21,10 +21,16 @@ import com.google.gson.JsonPrimitive;
 import com.rundeck.plugins.ansible.ansible.AnsibleDescribable;
 import com.rundeck.plugins.ansible.ansible.AnsibleDescribable.AuthenticationType;
 import com.rundeck.plugins.ansible.ansible.AnsibleException;
+import com.rundeck.plugins.ansible.ansible.AnsibleFactStore;
+import com.rundeck.plugins.ansible.ansible.AnsibleInventoryCache;
 import com.rundeck.plugins.ansible.ansible.AnsibleInventoryList;
 import com.rundeck.plugins.ansible.ansible.AnsibleRunner;
 import com.rundeck.plugins.ansible.ansible.InventoryList;
+import com.rundeck.plugins.ansible.ansible.InventoryListJsonParser;
+import com.rundeck.plugins.ansible.ansible.InventoryListStreamParser;
 import com.rundeck.plugins.ansible.util.AnsibleUtil;
+import com.rundeck.plugins.ansible.util.Listener;
+import com.rundeck.plugins.ansible.util.ListenerFactory;
 import com.rundeck.plugins.ansible.util.VaultPrompt;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
@@ -41,9 +47,8 @@ import org.yaml.snakeyaml.error.YAMLException;
 
 import java.io.BufferedReader;
 import java.io.ByteArrayOutputStream;
-import java.io.File;
 import java.io.IOException;
-import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.DirectoryStream;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
@@ -51,17 +56,34 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
 import java.util.Set;
-
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static com.rundeck.plugins.ansible.ansible.AnsibleDescribable.ANSIBLE_FACTS_PROJECTION;
+import static com.rundeck.plugins.ansible.ansible.AnsibleDescribable.ANSIBLE_GATHER_FACTS_STREAMING;
+import static com.rundeck.plugins.ansible.ansible.AnsibleDescribable.ANSIBLE_GATHER_SUBSET;
+import static com.rundeck.plugins.ansible.ansible.AnsibleDescribable.ANSIBLE_GATHER_FACTS_TTL;
+import static com.rundeck.plugins.ansible.ansible.AnsibleDescribable.ANSIBLE_INVENTORY_CACHE_TTL;
+import static com.rundeck.plugins.ansible.ansible.AnsibleDescribable.ANSIBLE_INVENTORY_JSON;
 import static com.rundeck.plugins.ansible.ansible.AnsibleDescribable.ANSIBLE_YAML_DATA_SIZE;
 import static com.rundeck.plugins.ansible.ansible.AnsibleDescribable.ANSIBLE_YAML_MAX_ALIASES;
+import static com.rundeck.plugins.ansible.ansible.AnsibleDescribable.ANSIBLE_YAML_STREAMING;
 import static com.rundeck.plugins.ansible.ansible.InventoryList.ALL;
 import static com.rundeck.plugins.ansible.ansible.InventoryList.CHILDREN;
 import static com.rundeck.plugins.ansible.ansible.InventoryList.HOSTS;
@@ -73,6 +95,9 @@ public class AnsibleResourceModelSource implements ResourceModelSource, ProxyRun
   private static final Logger logger = LoggerFactory.getLogger(AnsibleResourceModelSource.class);
   public static final String HOST_TPL_J2 = "host-tpl.j2";
   public static final String GATHER_HOSTS_YML = "gather-hosts.yml";
+  public static final String FACTS_CALLBACK_PY = "rundeck_facts.py";
+  // written by the rundeck_facts callback in front of each host facts line
+  public static final String FACTS_MARKER = "RUNDECK_FACTS ";
 
   // Ansible Special variables as of Ansible 2.9
   // https://docs.ansible.com/ansible/latest/reference_appendices/special_variables.html
@@ -98,6 +123,104 @@ public class AnsibleResourceModelSource implements ResourceModelSource, ProxyRun
     "tmpdir"  // rundeck used to gather host_vars
   );
 
+  /**
+   * A fact imported as node attribute, with its path in the facts json split in advance
+   */
+  private static class FactItem {
+    private final String[] path;
+    private final String attribute;
+
+    private FactItem(String path, String attribute) {
+      this.path = path.split("\\.");
+      this.attribute = attribute;
+    }
+
+    private JsonElement find(JsonObject root) {
+      JsonElement ele = root;
+      for (String itemPart : path) {
+        if (ele.isJsonArray() && itemPart.matches("^\\d+$") && ele.getAsJsonArray().size() > Integer.parseInt(itemPart)) {
+          ele = ele.getAsJsonArray().get(Integer.parseInt(itemPart));
+        } else if (ele.isJsonObject() && ele.getAsJsonObject().has(itemPart)) {
+          ele = ele.getAsJsonObject().get(itemPart);
+        } else {
+          return null;
+        }
+      }
+      return ele;
+    }
+  }
+
+  // Ansible interesting vars added as node attributes
+  // JSON-Path -> Attribute-Name
+  private static final List<FactItem> INTERESTING_ITEMS = List.of(
+    new FactItem("ansible_form_factor", "form_factor"),
+
+    new FactItem("ansible_system_vendor", "system_vendor"),
+
+    new FactItem("ansible_product_name", "product_name"),
+    new FactItem("ansible_product_version", "product_version"),
+    new FactItem("ansible_product_serial", "product_serial"),
+
+    new FactItem("ansible_bios_version", "bios_version"),
+    new FactItem("ansible_bios_date", "bios_date"),
+
+    new FactItem("ansible_machine_id", "machine_id"),
+
+    new FactItem("ansible_virtualization_type", "virtualization_type"),
+    new FactItem("ansible_virtualization_role", "virtualization_role"),
+
+    new FactItem("ansible_selinux", "selinux"),
+    new FactItem("ansible_fips", "fips"),
+
+    new FactItem("ansible_service_mgr", "service_mgr"),
+    new FactItem("ansible_pkg_mgr", "pkg_mgr"),
+
+    new FactItem("ansible_distribution", "distribution"),
+    new FactItem("ansible_distribution_version", "distribution_version"),
+    new FactItem("ansible_distribution_major_version", "distribution_major_version"),
+    new FactItem("ansible_distribution_release", "distribution_release"),
+    new FactItem("ansible_lsb.codename", "lsb_codename"),
+
+    new FactItem("ansible_domain", "domain"),
+
+    new FactItem("ansible_date_time.tz", "tz"),
+    new FactItem("ansible_date_time.tz_offset", "tz_offset"),
+
+    new FactItem("ansible_processor_count", "processor_count"),
+    new FactItem("ansible_processor_cores", "processor_cores"),
+    new FactItem("ansible_processor_vcpus", "processor_vcpus"),
+    new FactItem("ansible_processor_threads_per_core", "processor_threads_per_core"),
+
+    new FactItem("ansible_userspace_architecture", "userspace_architecture"),
+    new FactItem("ansible_userspace_bits", "userspace_bits"),
+
+    new FactItem("ansible_memtotal_mb", "memtotal_mb"),
+    new FactItem("ansible_swaptotal_mb", "swaptotal_mb"),
+    new FactItem("ansible_processor.0", "processor0"),
+    new FactItem("ansible_processor.1", "processor1")
+  );
+
+  // host vars read by createNodeFromFacts besides the interesting items
+  private static final List<String> NODE_VARS = List.of(
+    "inventory_hostname",
+    "group_names",
+    "ansible_host",
+    "ansible_ssh_host",
+    "ansible_user",
+    "ansible_ssh_user",
+    "ansible_user_id",
+    "ansible_lsb",
+    "ansible_distribution",
+    "ansible_distribution_version",
+    "ansible_os_family",
+    "ansible_os_name",
+    "ansible_architecture",
+    "ansible_kernel"
+  );
+
+  // shared by all sources, Rundeck creates a new source instance each time the configuration is reloaded
+  private static final AnsibleInventoryCache INVENTORY_CACHE = new AnsibleInventoryCache();
+
   private final Gson gson = new Gson();
 
   @Setter
@@ -166,6 +289,22 @@ public class AnsibleResourceModelSource implements ResourceModelSource, ProxyRun
   private Integer yamlDataSize;
   @Setter
   private Integer yamlMaxAliases;
+  @Setter
+  private boolean yamlStreaming;
+  @Setter
+  private boolean inventoryJson;
+
+  @Setter
+  private Integer inventoryCacheTtl;
+  private String inventoryCacheKey;
+  @Setter
+  private Integer gatherFactsTtl;
+  @Setter
+  private boolean gatherFactsStreaming;
+  @Setter
+  private String gatherSubset;
+  @Setter
+  private boolean factsProjection;
 
   @Setter
   private AnsibleInventoryList.AnsibleInventoryListBuilder ansibleInventoryListBuilder = null;
@@ -287,6 +426,17 @@ public class AnsibleResourceModelSource implements ResourceModelSource, ProxyRun
     // Inventory Yaml
     yamlDataSize = resolveIntProperty(ANSIBLE_YAML_DATA_SIZE,10, configuration, executionDataContext);
     yamlMaxAliases = resolveIntProperty(ANSIBLE_YAML_MAX_ALIASES,1000, configuration, executionDataContext);
+    yamlStreaming = "true".equals(resolveProperty(ANSIBLE_YAML_STREAMING,"false",configuration,executionDataContext));
+    inventoryJson = "true".equals(resolveProperty(ANSIBLE_INVENTORY_JSON,"false",configuration,executionDataContext));
+
+    inventoryCacheTtl = resolveIntProperty(ANSIBLE_INVENTORY_CACHE_TTL,0, configuration, executionDataContext);
+    // the imported nodes depend on the whole configuration, so sources only share an entry when it is identical
+    // (hashed, it includes passwords)
+    inventoryCacheKey = project + ":" + AnsibleInventoryCache.hash(new TreeMap<>(configuration).toString());
+    gatherFactsTtl = resolveIntProperty(ANSIBLE_GATHER_FACTS_TTL,0, configuration, executionDataContext);
+    gatherFactsStreaming = "true".equals(resolveProperty(ANSIBLE_GATHER_FACTS_STREAMING,"false",configuration,executionDataContext));
+    gatherSubset = resolveProperty(ANSIBLE_GATHER_SUBSET,null,configuration,executionDataContext);
+    factsProjection = "true".equals(resolveProperty(ANSIBLE_FACTS_PROJECTION,"false",configuration,executionDataContext));
 
   }
 
@@ -441,6 +591,25 @@ public class AnsibleResourceModelSource implements ResourceModelSource, ProxyRun
 
   @Override
   public INodeSet getNodes() throws ResourceModelSourceException {
+    if (inventoryCacheTtl == null || inventoryCacheTtl <= 0) {
+      return loadNodes();
+    }
+
+    try {
+      return INVENTORY_CACHE.get(
+              inventoryCacheKey,
+              inventoryCacheTtl * 1000L,
+              INVENTORY_CACHE.fingerprint(inventory, configFile),
+              this::loadNodes
+      );
+    } catch (ResourceModelSourceException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new ResourceModelSourceException("Failed to load nodes from ansible: " + e.getMessage(), e);
+    }
+  }
+
+  private INodeSet loadNodes() throws ResourceModelSourceException {
     NodeSetImpl nodes = new NodeSetImpl();
     AnsibleRunner.AnsibleRunnerBuilder runnerBuilder = buildAnsibleRunner();
 
@@ -455,7 +624,6 @@ public class AnsibleResourceModelSource implements ResourceModelSource, ProxyRun
 
   public void processWithGatherFacts(NodeSetImpl nodes, AnsibleRunner.AnsibleRunnerBuilder runnerBuilder) throws ResourceModelSourceException {
 
-    final Gson gson = new Gson();
     Path tempDirectory;
     try {
       tempDirectory = Files.createTempDirectory(Path.of(customTmpDirPath),"ansible-hosts");
@@ -466,9 +634,35 @@ public class AnsibleResourceModelSource implements ResourceModelSource, ProxyRun
     try {
       Files.copy(this.getClass().getClassLoader().getResourceAsStream(HOST_TPL_J2), tempDirectory.resolve(HOST_TPL_J2));
       Files.copy(this.getClass().getClassLoader().getResourceAsStream(GATHER_HOSTS_YML), tempDirectory.resolve(GATHER_HOSTS_YML));
+      if (gatherFactsStreaming) {
+        Path callbackDirectory = Files.createDirectory(tempDirectory.resolve("callback_plugins"));
+        Files.copy(this.getClass().getClassLoader().getResourceAsStream(FACTS_CALLBACK_PY), callbackDirectory.resolve(FACTS_CALLBACK_PY));
+      }
     } catch (IOException e) {
       throw new ResourceModelSourceException("Error copying files: " + e.getMessage(), e);
     }
+    // hosts with fresh stored facts are left out of the gather run
+    AnsibleFactStore factStore = null;
+    String inventoryFingerprint = null;
+    boolean gather = true;
+    if (gatherFactsTtl != null && gatherFactsTtl > 0) {
+      factStore = new AnsibleFactStore(
+              Path.of(customTmpDirPath, "ansible-facts", AnsibleInventoryCache.hash(inventoryCacheKey)),
+              gatherFactsTtl * 1000L);
+      inventoryFingerprint = AnsibleInventoryCache.hash(INVENTORY_CACHE.fingerprint(inventory, configFile));
+      try {
+        Set<String> cachedHosts = factStore.freshFacts().keySet();
+        if (factStore.coversTargets(inventoryFingerprint)) {
+          // ansible fails when the limit leaves no host to target
+          gather = false;
+        } else if (!cachedHosts.isEmpty()) {
+          runnerBuilder.limits(excludeHostsLimit(limit, cachedHosts));
+        }
+      } catch (IOException e) {
+        throw new ResourceModelSourceException("Error reading stored facts: " + e.getMessage(), e);
+      }
+    }
+
     runnerBuilder.customTmpDirPath(customTmpDirPath);
     runnerBuilder.tempDirectory(tempDirectory);
     runnerBuilder.retainTempDirectory(true);
@@ -481,220 +675,105 @@ public class AnsibleResourceModelSource implements ResourceModelSource, ProxyRun
             .append(tempDirectory.toFile().getAbsolutePath())
             .append("'");
 
-    runnerBuilder.extraVars(args.toString());
-
-    AnsibleRunner runner = runnerBuilder.build();
-
-    try {
-      runner.run();
-    } catch (Exception e) {
-      throw new ResourceModelSourceException("Failed Ansible Runner execution: " + e.getMessage(),e);
+    if (gatherSubset != null && !gatherSubset.trim().isEmpty()) {
+      List<String> subsets = new ArrayList<>(Arrays.asList(gatherSubset.split(",")));
+      subsets.replaceAll(String::trim);
+      subsets.removeIf(String::isEmpty);
+      args.append("\n").append("facts_subset: ").append(gson.toJson(subsets));
+    }
+    if (factsProjection) {
+      args.append("\n").append("facts_filter: ").append(gson.toJson(projectedFacts()));
+      // the inventory vars are only known by ansible, so the whole hostvars are kept to import them
+      if (!importInventoryVars) {
+        args.append("\n").append("facts_keys: ").append(gson.toJson(projectedKeys()));
+      }
     }
 
-    try {
-      if (new File(tempDirectory.toFile(), "data").exists()) {
-        DirectoryStream<Path> directoryStream = Files.newDirectoryStream(tempDirectory.resolve("data"));
-        for (Path factFile : directoryStream) {
-          NodeEntryImpl node = new NodeEntryImpl();
-
-          BufferedReader bufferedReader = Files.newBufferedReader(factFile, Charset.forName("utf-8"));
-          JsonElement json = new JsonParser().parse(bufferedReader);
-          bufferedReader.close();
-          JsonObject root = json.getAsJsonObject();
-
-          String hostname = root.get("inventory_hostname").getAsString();
-          try {
-            if (root.has("ansible_host")) {
-              hostname = root.get("ansible_host").getAsString();
-            } else if (root.has("ansible_ssh_host")) { // deprecated variable
-              hostname = root.get("ansible_ssh_host").getAsString();
-            }
-          }catch(Exception ex){
-            System.out.println("[warn] Problem getting the ansible_host attribute from node " + hostname);
-          }
-          node.setHostname(hostname);
-
-          String nodename = root.get("inventory_hostname").getAsString();
-          node.setNodename(nodename);
-
-          String username = sshUser; // Use sshUser as default username
-          if (root.has("ansible_user")) {
-            username = root.get("ansible_user").getAsString();
-          } else if (root.has("ansible_ssh_user")) { // deprecated variable
-            username = root.get("ansible_ssh_user").getAsString();
-          } else if (root.has("ansible_user_id")) { // fact
-            username = root.get("ansible_user_id").getAsString();
-          }
-          node.setUsername(username);
-
-          // Add groups as tags, except ignored tag prefix
-          HashSet<String> tags = new HashSet<>();
-          for (JsonElement ele : root.getAsJsonArray("group_names")) {
-            if (ignoreTagPrefix != null && ignoreTagPrefix.length() > 0 && ele.getAsString().startsWith(ignoreTagPrefix)) continue;
-            tags.add(ele.getAsString());
-          }
-          // Add extraTag to node
-          if (extraTag != null && extraTag.length() > 0) {
-            tags.add(extraTag);
-          }
-          node.setTags(tags);
-
-          if (root.has("ansible_lsb") && root.getAsJsonObject("ansible_lsb").has("description")) {
-            node.setDescription(root.getAsJsonObject("ansible_lsb").get("description").getAsString());
-          } else {
-            StringBuilder sb = new StringBuilder();
-
-            if (root.has("ansible_distribution") && !root.get("ansible_distribution").isJsonNull()) {
-              sb.append(root.get("ansible_distribution").getAsString()).append(" ");
-            }
-            if (root.has("ansible_distribution_version")) {
-              sb.append(root.get("ansible_distribution_version").getAsString()).append(" ");
-            }
-
-            if (sb.length() > 0) {
-              node.setDescription(sb.toString().trim());
-            }
-          }
-
-          // ansible_system     = Linux   = osFamily in Rundeck
-          // ansible_os_family  = Debian  = osName in Rundeck
+    FactsListener factsListener = null;
+    if (gatherFactsStreaming) {
+      args.append("\n").append("facts_stream: True");
 
-          if (root.has("ansible_os_family")) {
-            node.setOsFamily(root.get("ansible_os_family").getAsString());
-          }
+      Map<String, String> options = new HashMap<>();
+      options.put("ANSIBLE_CALLBACK_PLUGINS", tempDirectory.resolve("callback_plugins").toFile().getAbsolutePath());
+      options.put("ANSIBLE_STDOUT_CALLBACK", "rundeck_facts");
+      runnerBuilder.options(options);
 
-          if (root.has("ansible_os_name") && !root.get("ansible_os_name").isJsonNull()) {
-            node.setOsName(root.get("ansible_os_name").getAsString());
-          }
+      factsListener = new FactsListener(nodes, factStore);
+      runnerBuilder.listener(factsListener);
+    }
 
-          if (root.has("ansible_architecture") && !root.get("ansible_architecture").isJsonNull()) {
-            node.setOsArch(root.get("ansible_architecture").getAsString());
-          }
+    runnerBuilder.extraVars(args.toString());
 
-          if (root.has("ansible_kernel")) {
-            node.setOsVersion(root.get("ansible_kernel").getAsString());
-          }
+    if (gather) {
+      AnsibleRunner runner = runnerBuilder.build();
 
-          // Add Ansible interesting vars as node attributes
-          // JSON-Path -> Attribute-Name
-          Map<String, String> interestingItems = new HashMap<>();
-
-          interestingItems.put("ansible_form_factor", "form_factor");
-
-          interestingItems.put("ansible_system_vendor", "system_vendor");
-
-          interestingItems.put("ansible_product_name", "product_name");
-          interestingItems.put("ansible_product_version", "product_version");
-          interestingItems.put("ansible_product_serial", "product_serial");
-
-          interestingItems.put("ansible_bios_version", "bios_version");
-          interestingItems.put("ansible_bios_date", "bios_date");
-
-          interestingItems.put("ansible_machine_id", "machine_id");
-
-          interestingItems.put("ansible_virtualization_type", "virtualization_type");
-          interestingItems.put("ansible_virtualization_role", "virtualization_role");
-
-          interestingItems.put("ansible_selinux", "selinux");
-          interestingItems.put("ansible_fips", "fips");
-
-          interestingItems.put("ansible_service_mgr", "service_mgr");
-          interestingItems.put("ansible_pkg_mgr", "pkg_mgr");
-
-          interestingItems.put("ansible_distribution", "distribution");
-          interestingItems.put("ansible_distribution_version", "distribution_version");
-          interestingItems.put("ansible_distribution_major_version", "distribution_major_version");
-          interestingItems.put("ansible_distribution_release", "distribution_release");
-          interestingItems.put("ansible_lsb.codename", "lsb_codename");
-
-          interestingItems.put("ansible_domain", "domain");
-
-          interestingItems.put("ansible_date_time.tz", "tz");
-          interestingItems.put("ansible_date_time.tz_offset", "tz_offset");
-
-          interestingItems.put("ansible_processor_count", "processor_count");
-          interestingItems.put("ansible_processor_cores", "processor_cores");
-          interestingItems.put("ansible_processor_vcpus", "processor_vcpus");
-          interestingItems.put("ansible_processor_threads_per_core", "processor_threads_per_core");
-
-          interestingItems.put("ansible_userspace_architecture", "userspace_architecture");
-          interestingItems.put("ansible_userspace_bits", "userspace_bits");
-
-          interestingItems.put("ansible_memtotal_mb", "memtotal_mb");
-          interestingItems.put("ansible_swaptotal_mb", "swaptotal_mb");
-          interestingItems.put("ansible_processor.0", "processor0");
-          interestingItems.put("ansible_processor.1", "processor1");
-
-          for (Map.Entry<String, String> item : interestingItems.entrySet()) {
-            String[] itemParts = item.getKey().split("\\.");
-
-            if (itemParts.length > 1) {
-              JsonElement ele = root;
-              for (String itemPart : itemParts) {
-                if (ele.isJsonArray() && itemPart.matches("^\\d+$") && ele.getAsJsonArray().size() > Integer.parseInt(itemPart)) {
-                  ele = ele.getAsJsonArray().get(Integer.parseInt(itemPart));
-                } else if (ele.isJsonObject() && ele.getAsJsonObject().has(itemPart)) {
-                  ele = ele.getAsJsonObject().get(itemPart);
-                } else {
-                  ele = null;
-                  break;
-                }
-              }
-
-              if (ele != null && ele.isJsonPrimitive() && ele.getAsString().length() > 0) {
-                node.setAttribute(item.getValue(), ele.getAsString());
-              }
-            } else {
-              if (root.has(item.getKey())
-                      && root.get(item.getKey()).isJsonPrimitive()
-                      && root.get(item.getKey()).getAsString().length() > 0) {
-                node.setAttribute(item.getValue(), root.get(item.getKey()).getAsString());
-              }
-            }
-          }
+      try {
+        runner.run();
+      } catch (Exception e) {
+        throw new ResourceModelSourceException("Failed Ansible Runner execution: " + e.getMessage(),e);
+      }
+    } else {
+      log.debug("All the hosts have fresh stored facts, skipping the gather run");
+    }
 
+    if (factsListener != null && factsListener.failure != null) {
+      throw new ResourceModelSourceException("Error reading facts: " + factsListener.failure.getMessage(), factsListener.failure);
+    }
 
-          if (importInventoryVars == true) {
-            // Add ALL vars as node attributes, except Ansible Special variables
-            List<String> specialVarsList = new ArrayList<>(ANSIBLE_SPECIAL_VARS);
-
-            if (ignoreInventoryVars != null && ignoreInventoryVars.length() > 0) {
-              String[] ignoreInventoryVarsStrings = ignoreInventoryVars.split(",");
-              for (String ignoreInventoryVarsString: ignoreInventoryVarsStrings) {
-                String trimmed = ignoreInventoryVarsString.trim();
-                // Only add non-empty strings to avoid matching everything
-                if (!trimmed.isEmpty()) {
-                  specialVarsList.add(trimmed);
-                }
-              }
-            }
-
-            // for (String hostVar : root.keySet()) {
-            for (Entry<String, JsonElement> hostVar : root.entrySet()) {
-
-              // skip Ansible special vars
-              if (skipVar(hostVar.getKey(), specialVarsList)) {
-                continue;
-              }
-
-              if (hostVar.getValue() instanceof JsonPrimitive && ((JsonPrimitive) hostVar.getValue()).isString()) {
-                // Keep attribute as String, don't serialize as Json
-                node.setAttribute(hostVar.getKey(), hostVar.getValue().getAsString());
-              } else {
-                // Serialize attribute as Json (JsonArray or JsonObject)
-                node.setAttribute(hostVar.getKey(), gson.toJson(hostVar.getValue()));
-              }
-            }
+    Path dataDirectory = tempDirectory.resolve("data");
+    List<Path> factFiles = new ArrayList<>();
+    try {
+      if (factStore != null) {
+        factStore.store(dataDirectory);
+        Map<String, Path> freshFacts = factStore.freshFacts();
+        if (gather) {
+          factStore.storeTargets(inventoryFingerprint, freshFacts.keySet());
+        }
+        for (Map.Entry<String, Path> stored : freshFacts.entrySet()) {
+          // streamed hosts are already in the node set
+          if (factsListener == null || !factsListener.hosts.contains(stored.getKey())) {
+            factFiles.add(stored.getValue());
           }
-
-          nodes.putNode(node);
         }
-        directoryStream.close();
+      } else if (Files.isDirectory(dataDirectory)) {
+        try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(dataDirectory)) {
+          directoryStream.forEach(factFiles::add);
+        }
       }
     } catch (IOException e) {
       throw new ResourceModelSourceException("Error reading facts: " + e.getMessage(), e);
     }
 
+    if (!factFiles.isEmpty()) {
+      List<String> specialVarsList = getSpecialVarsList();
+
+      // fact files are parsed concurrently, the nodes are merged in this thread
+      int threads = Math.max(1, Math.min(factFiles.size(), Runtime.getRuntime().availableProcessors()));
+      ExecutorService executor = Executors.newFixedThreadPool(threads);
+      try {
+        List<Future<NodeEntryImpl>> results = new ArrayList<>(factFiles.size());
+        for (Path factFile : factFiles) {
+          results.add(executor.submit(() -> createNodeFromFactFile(factFile, specialVarsList)));
+        }
+        for (Future<NodeEntryImpl> result : results) {
+          nodes.putNode(result.get());
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new ResourceModelSourceException("Interrupted while reading facts: " + e.getMessage(), e);
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof IOException) {
+          throw new ResourceModelSourceException("Error reading facts: " + e.getCause().getMessage(), e.getCause());
+        }
+        if (e.getCause() instanceof RuntimeException) {
+          throw (RuntimeException) e.getCause();
+        }
+        throw new ResourceModelSourceException("Error reading facts: " + e.getCause().getMessage(), e.getCause());
+      } finally {
+        executor.shutdownNow();
+      }
+    }
+
     try {
       Files.walkFileTree(tempDirectory, new SimpleFileVisitor<Path>() {
         @Override
@@ -714,6 +793,250 @@ public class AnsibleResourceModelSource implements ResourceModelSource, ProxyRun
     }
   }
 
+  /**
+   * Builds the nodes from the facts lines written by the rundeck_facts callback while the gather playbook runs,
+   * passing the other output lines through. Called from the runner stdout and stderr threads.
+   */
+  private class FactsListener implements Listener {
+    private final Listener output = ListenerFactory.getListener(System.out);
+    private final NodeSetImpl nodes;
+    private final AnsibleFactStore factStore;
+    private final List<String> specialVarsList = getSpecialVarsList();
+    private final Set<String> hosts = ConcurrentHashMap.newKeySet();
+    private volatile Exception failure;
+
+    private FactsListener(NodeSetImpl nodes, AnsibleFactStore factStore) {
+      this.nodes = nodes;
+      this.factStore = factStore;
+    }
+
+    @Override
+    public void output(String line) {
+      if (!line.startsWith(FACTS_MARKER)) {
+        output.output(line);
+        return;
+      }
+      if (failure != null) {
+        return;
+      }
+
+      try {
+        String facts = line.substring(FACTS_MARKER.length());
+        NodeEntryImpl node = createNodeFromFacts(JsonParser.parseString(facts).getAsJsonObject(), specialVarsList);
+        String host = node.getNodename();
+        if (factStore != null) {
+          factStore.put(host, facts);
+        }
+        hosts.add(host);
+        synchronized (nodes) {
+          nodes.putNode(node);
+        }
+      } catch (Exception e) {
+        // the play keeps running, the failure is reported once it is over
+        failure = e;
+      }
+    }
+  }
+
+  /**
+   * @return top level host vars the nodes are built from, the only ones kept in the facts with the projection
+   */
+  static List<String> projectedKeys() {
+    Set<String> keys = new LinkedHashSet<>(NODE_VARS);
+    for (FactItem item : INTERESTING_ITEMS) {
+      keys.add(item.path[0]);
+    }
+    return new ArrayList<>(keys);
+  }
+
+  /**
+   * @return facts the setup module returns with the projection
+   */
+  static List<String> projectedFacts() {
+    List<String> facts = projectedKeys();
+    facts.removeIf(key -> !key.startsWith("ansible_"));
+    return facts;
+  }
+
+  /**
+   * Builds the limit of a gather run skipping some hosts: the configured limit (or all hosts) minus the given ones.
+   * The runner writes it to a limit file, where ansible reads each line as a single pattern.
+   *
+   * @param limit configured limit, may be null
+   * @param hosts hosts to skip
+   * @return limit patterns
+   */
+  static List<String> excludeHostsLimit(String limit, Collection<String> hosts) {
+    List<String> limits = new ArrayList<>();
+    if (limit == null || limit.trim().isEmpty()) {
+      limits.add(ALL);
+    } else if (limit.contains(",")) {
+      limits.addAll(Arrays.asList(limit.split(",")));
+    } else if (!limit.contains("[") && !limit.contains("::")) {
+      // colon separated patterns; ranges and IPv6 addresses are left as they are
+      limits.addAll(Arrays.asList(limit.split(":")));
+    } else {
+      limits.add(limit);
+    }
+    limits.replaceAll(String::trim);
+    limits.removeIf(String::isEmpty);
+
+    for (String host : hosts) {
+      limits.add("!" + host);
+    }
+    return limits;
+  }
+
+  /**
+   * Builds a Rundeck node from the facts file written by the gather hosts playbook for one host.
+   * Safe to call concurrently.
+   *
+   * @param factFile        host facts, in json
+   * @param specialVarsList prefixes of the vars not imported as attributes
+   * @return the node
+   * @throws IOException if the file cannot be read
+   */
+  NodeEntryImpl createNodeFromFactFile(Path factFile, List<String> specialVarsList) throws IOException {
+    JsonObject root;
+    try (BufferedReader bufferedReader = Files.newBufferedReader(factFile, StandardCharsets.UTF_8)) {
+      root = JsonParser.parseReader(bufferedReader).getAsJsonObject();
+    }
+    return createNodeFromFacts(root, specialVarsList);
+  }
+
+  /**
+   * Builds a Rundeck node from the facts of one host. Safe to call concurrently.
+   *
+   * @param root            host facts, as templated by host-tpl.j2
+   * @param specialVarsList prefixes of the vars not imported as attributes
+   * @return the node
+   */
+  NodeEntryImpl createNodeFromFacts(JsonObject root, List<String> specialVarsList) {
+    NodeEntryImpl node = new NodeEntryImpl();
+
+    String hostname = root.get("inventory_hostname").getAsString();
+    try {
+      if (root.has("ansible_host")) {
+        hostname = root.get("ansible_host").getAsString();
+      } else if (root.has("ansible_ssh_host")) { // deprecated variable
+        hostname = root.get("ansible_ssh_host").getAsString();
+      }
+    }catch(Exception ex){
+      System.out.println("[warn] Problem getting the ansible_host attribute from node " + hostname);
+    }
+    node.setHostname(hostname);
+
+    String nodename = root.get("inventory_hostname").getAsString();
+    node.setNodename(nodename);
+
+    String username = sshUser; // Use sshUser as default username
+    if (root.has("ansible_user")) {
+      username = root.get("ansible_user").getAsString();
+    } else if (root.has("ansible_ssh_user")) { // deprecated variable
+      username = root.get("ansible_ssh_user").getAsString();
+    } else if (root.has("ansible_user_id")) { // fact
+      username = root.get("ansible_user_id").getAsString();
+    }
+    node.setUsername(username);
+
+    // Add groups as tags, except ignored tag prefix
+    HashSet<String> tags = new HashSet<>();
+    for (JsonElement ele : root.getAsJsonArray("group_names")) {
+      if (ignoreTagPrefix != null && ignoreTagPrefix.length() > 0 && ele.getAsString().startsWith(ignoreTagPrefix)) continue;
+      tags.add(ele.getAsString());
+    }
+    // Add extraTag to node
+    if (extraTag != null && extraTag.length() > 0) {
+      tags.add(extraTag);
+    }
+    node.setTags(tags);
+
+    if (root.has("ansible_lsb") && root.getAsJsonObject("ansible_lsb").has("description")) {
+      node.setDescription(root.getAsJsonObject("ansible_lsb").get("description").getAsString());
+    } else {
+      StringBuilder sb = new StringBuilder();
+
+      if (root.has("ansible_distribution") && !root.get("ansible_distribution").isJsonNull()) {
+        sb.append(root.get("ansible_distribution").getAsString()).append(" ");
+      }
+      if (root.has("ansible_distribution_version")) {
+        sb.append(root.get("ansible_distribution_version").getAsString()).append(" ");
+      }
+
+      if (sb.length() > 0) {
+        node.setDescription(sb.toString().trim());
+      }
+    }
+
+    // ansible_system     = Linux   = osFamily in Rundeck
+    // ansible_os_family  = Debian  = osName in Rundeck
+
+    if (root.has("ansible_os_family")) {
+      node.setOsFamily(root.get("ansible_os_family").getAsString());
+    }
+
+    if (root.has("ansible_os_name") && !root.get("ansible_os_name").isJsonNull()) {
+      node.setOsName(root.get("ansible_os_name").getAsString());
+    }
+
+    if (root.has("ansible_architecture") && !root.get("ansible_architecture").isJsonNull()) {
+      node.setOsArch(root.get("ansible_architecture").getAsString());
+    }
+
+    if (root.has("ansible_kernel")) {
+      node.setOsVersion(root.get("ansible_kernel").getAsString());
+    }
+
+    // Add Ansible interesting vars as node attributes
+    for (FactItem item : INTERESTING_ITEMS) {
+      JsonElement ele = item.find(root);
+      if (ele != null && ele.isJsonPrimitive() && ele.getAsString().length() > 0) {
+        node.setAttribute(item.attribute, ele.getAsString());
+      }
+    }
+
+    if (importInventoryVars == true) {
+      // Add ALL vars as node attributes, except Ansible Special variables
+      // for (String hostVar : root.keySet()) {
+      for (Entry<String, JsonElement> hostVar : root.entrySet()) {
+
+        // skip Ansible special vars
+        if (skipVar(hostVar.getKey(), specialVarsList)) {
+          continue;
+        }
+
+        if (hostVar.getValue() instanceof JsonPrimitive && ((JsonPrimitive) hostVar.getValue()).isString()) {
+          // Keep attribute as String, don't serialize as Json
+          node.setAttribute(hostVar.getKey(), hostVar.getValue().getAsString());
+        } else {
+          // Serialize attribute as Json (JsonArray or JsonObject)
+          node.setAttribute(hostVar.getKey(), gson.toJson(hostVar.getValue()));
+        }
+      }
+    }
+
+    return node;
+  }
+
+  /**
+   * @return prefixes of the vars that are not imported as node attributes
+   */
+  private List<String> getSpecialVarsList() {
+    List<String> specialVarsList = new ArrayList<>(ANSIBLE_SPECIAL_VARS);
+
+    if (ignoreInventoryVars != null && ignoreInventoryVars.length() > 0) {
+      String[] ignoreInventoryVarsStrings = ignoreInventoryVars.split(",");
+      for (String ignoreInventoryVarsString: ignoreInventoryVarsStrings) {
+        String trimmed = ignoreInventoryVarsString.trim();
+        // Only add non-empty strings to avoid matching everything
+        if (!trimmed.isEmpty()) {
+          specialVarsList.add(trimmed);
+        }
+      }
+    }
+    return specialVarsList;
+  }
+
   /**
    * Process nodes coming from Ansible to convert them to Rundeck node
    * @param nodes Rundeck nodes
@@ -721,6 +1044,16 @@ public class AnsibleResourceModelSource implements ResourceModelSource, ProxyRun
    */
   public void ansibleInventoryList(NodeSetImpl nodes, AnsibleRunner.AnsibleRunnerBuilder runnerBuilder) throws ResourceModelSourceException {
 
+    if (inventoryJson) {
+      ansibleInventoryListJson(nodes, runnerBuilder);
+      return;
+    }
+
+    if (yamlStreaming) {
+      ansibleInventoryListStreaming(nodes, runnerBuilder);
+      return;
+    }
+
     int codePointLimit = yamlDataSize * 1024 * 1024;
 
     LoaderOptions snakeOptions = new LoaderOptions();
@@ -752,6 +1085,90 @@ public class AnsibleResourceModelSource implements ResourceModelSource, ProxyRun
     ansibleNodes.clear();
   }
 
+  /**
+   * Process nodes coming from Ansible to convert them to Rundeck node, parsing the inventory
+   * while ansible-inventory writes it, so only one host is held in memory at a time
+   * @param nodes Rundeck nodes
+   * @throws ResourceModelSourceException
+   */
+  public void ansibleInventoryListStreaming(NodeSetImpl nodes, AnsibleRunner.AnsibleRunnerBuilder runnerBuilder) throws ResourceModelSourceException {
+
+    LoaderOptions snakeOptions = new LoaderOptions();
+    // the whole output is never held in memory, so it is not limited in size
+    snakeOptions.setCodePointLimit(Integer.MAX_VALUE);
+    // max aliases. Default value is 1000
+    snakeOptions.setMaxAliasesForCollections(yamlMaxAliases);
+    InventoryListStreamParser parser = new InventoryListStreamParser(snakeOptions);
+
+    readInventoryList(nodes, runnerBuilder, output -> parser.parse(output, this::processHost));
+  }
+
+  /**
+   * Process nodes coming from the JSON output of ansible-inventory to convert them to Rundeck node
+   * @param nodes Rundeck nodes
+   * @throws ResourceModelSourceException
+   */
+  public void ansibleInventoryListJson(NodeSetImpl nodes, AnsibleRunner.AnsibleRunnerBuilder runnerBuilder) throws ResourceModelSourceException {
+
+    InventoryListJsonParser parser = new InventoryListJsonParser();
+    // nodes are built as soon as their vars are read, the groups giving their tags come later
+    Map<String, NodeEntryImpl> hostNodes = new HashMap<>();
+
+    InventoryListJsonParser.InventoryHandler handler = new InventoryListJsonParser.InventoryHandler() {
+      @Override
+      public void hostVars(String host, Map<String, Object> vars) throws ResourceModelSourceException {
+        if (isValidHostKey(host)) {
+          hostNodes.put(host, createNodeEntry(new AbstractMap.SimpleEntry<>(host, vars)));
+        }
+      }
+
+      @Override
+      public void host(String host, Set<String> tags) throws ResourceModelSourceException {
+        NodeEntryImpl node = hostNodes.get(host);
+        if (node == null) {
+          if (!isValidHostKey(host)) {
+            return;
+          }
+          node = createNodeEntry(new AbstractMap.SimpleEntry<>(host, new HashMap<>()));
+          hostNodes.put(host, node);
+        }
+        addNode(node, tags);
+      }
+    };
+
+    readInventoryList(nodes, runnerBuilder, output -> parser.parse(output, handler));
+  }
+
+  private void readInventoryList(NodeSetImpl nodes, AnsibleRunner.AnsibleRunnerBuilder runnerBuilder,
+                                 AnsibleInventoryList.NodeListReader nodeListReader) throws ResourceModelSourceException {
+
+    AnsibleInventoryList inventoryList = buildInventoryList(runnerBuilder);
+    boolean success;
+    try {
+      success = inventoryList.readNodeList(nodeListReader);
+    } catch (AnsibleException e) {
+      ansibleNodes.clear();
+      if (e.getCause() instanceof ResourceModelSourceException) {
+        throw (ResourceModelSourceException) e.getCause();
+      }
+      if (e.getCause() instanceof YAMLException) {
+        throw new ResourceModelSourceException("Cannot load yaml data coming from Ansible: " + e.getCause().getMessage(), e.getCause());
+      }
+      throw new ResourceModelSourceException("Failed to get node list from ansible: " + e.getMessage(), e);
+    } catch (IOException e) {
+      ansibleNodes.clear();
+      throw new ResourceModelSourceException("Failed to get node list from ansible: " + e.getMessage(), e);
+    }
+
+    if (!success) {
+      ansibleNodes.clear();
+      throw new ResourceModelSourceException("Failed to get node list from ansible: ansible-inventory returned with non zero code");
+    }
+
+    ansibleNodes.forEach((k, node) -> nodes.putNode(node));
+    ansibleNodes.clear();
+  }
+
   /**
    * Processes the given set of nodes and populates the children map with the results.
    *
@@ -795,33 +1212,51 @@ public class AnsibleResourceModelSource implements ResourceModelSource, ProxyRun
     }
 
     for (Map.Entry<String, Object> hostNode : hosts.entrySet()) {
-      // Filter out invalid host keys that aren't Strings (can occur with YAML anchors/aliases)
-      Object hostKeyObj = hostNode.getKey();
-      if (hostKeyObj == null) {
-        log.warn("Skipping host entry with null key");
-        continue;
-      }
-      if (!(hostKeyObj instanceof String)) {
-        log.warn("Skipping invalid host entry with non-String key: {}", hostKeyObj.getClass().getName());
-        continue;
-      }
+      processHost(hostNode.getKey(), hostNode.getValue(), tags);
+    }
+  }
 
-      // Additional validation: skip keys that are JSON objects (likely serialized data structures)
-      String hostKey = (String) hostKeyObj;
-      try {
-        JsonElement jsonElement = JsonParser.parseString(hostKey);
-        if (jsonElement.isJsonObject()) {
-          log.warn("Skipping host entry with key that is a JSON object (likely serialized data): {}",
-                   hostKey.length() > 100 ? hostKey.substring(0, 100) + "..." : hostKey);
-          continue;
-        }
-      } catch (Exception e) {
-        // Not valid JSON - treat as a legitimate host key and continue processing
-      }
+  /**
+   * Validates a host entry of the inventory and adds it to the nodes set.
+   *
+   * @param hostKeyObj the host name
+   * @param hostValue  the host attributes
+   * @param tags       the set of tags to apply to the node
+   * @throws ResourceModelSourceException if an error occurs while processing the node
+   */
+  public void processHost(Object hostKeyObj, Object hostValue, Set<String> tags) throws ResourceModelSourceException {
+    if (!isValidHostKey(hostKeyObj)) {
+      return;
+    }
+
+    NodeEntryImpl node = createNodeEntry(new AbstractMap.SimpleEntry<>((String) hostKeyObj, hostValue));
+    addNode(node, tags);
+  }
 
-      NodeEntryImpl node = createNodeEntry(hostNode);
-      addNode(node, tags);
+  private boolean isValidHostKey(Object hostKeyObj) {
+    // Filter out invalid host keys that aren't Strings (can occur with YAML anchors/aliases)
+    if (hostKeyObj == null) {
+      log.warn("Skipping host entry with null key");
+      return false;
+    }
+    if (!(hostKeyObj instanceof String)) {
+      log.warn("Skipping invalid host entry with non-String key: {}", hostKeyObj.getClass().getName());
+      return false;
+    }
+
+    // Additional validation: skip keys that are JSON objects (likely serialized data structures)
+    String hostKey = (String) hostKeyObj;
+    try {
+      JsonElement jsonElement = JsonParser.parseString(hostKey);
+      if (jsonElement.isJsonObject()) {
+        log.warn("Skipping host entry with key that is a JSON object (likely serialized data): {}",
+                 hostKey.length() > 100 ? hostKey.substring(0, 100) + "..." : hostKey);
+        return false;
+      }
+    } catch (Exception e) {
+      // Not valid JSON - treat as a legitimate host key and continue processing
     }
+    return true;
   }
 
   /**
@@ -841,18 +1276,7 @@ public class AnsibleResourceModelSource implements ResourceModelSource, ProxyRun
 
     if (importInventoryVars) {
       // Build list of variables to ignore, matching processWithGatherFacts behavior
-      List<String> ignoreVarsList = new ArrayList<>(ANSIBLE_SPECIAL_VARS);
-
-      if (ignoreInventoryVars != null && ignoreInventoryVars.length() > 0) {
-        String[] ignoreInventoryVarsStrings = ignoreInventoryVars.split(",");
-        for (String ignoreInventoryVarsString: ignoreInventoryVarsStrings) {
-          String trimmed = ignoreInventoryVarsString.trim();
-          // Only add non-empty strings to avoid matching everything
-          if (!trimmed.isEmpty()) {
-            ignoreVarsList.add(trimmed);
-          }
-        }
-      }
+      List<String> ignoreVarsList = getSpecialVarsList();
 
       nodeValues.forEach((key, value) -> {
         // Skip variables that match ignored prefixes
@@ -929,6 +1353,16 @@ public class AnsibleResourceModelSource implements ResourceModelSource, ProxyRun
    */
   public String getNodesFromInventory(AnsibleRunner.AnsibleRunnerBuilder runnerBuilder) throws ResourceModelSourceException {
 
+    AnsibleInventoryList inventoryList = buildInventoryList(runnerBuilder);
+    try {
+        return inventoryList.getNodeList();
+    } catch (IOException | AnsibleException e) {
+      throw new ResourceModelSourceException("Failed to get node list from ansible: " + e.getMessage(), e);
+    }
+  }
+
+  private AnsibleInventoryList buildInventoryList(AnsibleRunner.AnsibleRunnerBuilder runnerBuilder) {
+
     AnsibleRunner runner = runnerBuilder.build();
 
     if (this.ansibleInventoryListBuilder == null) {
@@ -941,6 +1375,7 @@ public class AnsibleResourceModelSource implements ResourceModelSource, ProxyRun
               .inventory(inventory)
               .ansibleBinariesDirectory(ansibleBinPath)
               .configFile(configFile)
+              .json(inventoryJson)
               .debug(debug);
     }
 
@@ -958,11 +1393,7 @@ public class AnsibleResourceModelSource implements ResourceModelSource, ProxyRun
 
     AnsibleInventoryList inventoryList = this.ansibleInventoryListBuilder.build();
     inventoryList.setCustomTmpDirPath(customTmpDirPath);
-    try {
-        return inventoryList.getNodeList();
-    } catch (IOException | AnsibleException e) {
-      throw new ResourceModelSourceException("Failed to get node list from ansible: " + e.getMessage(), e);
-    }
+    return inventoryList;
   }
 
   private String getStorageContentString(String storagePath, StorageTree storageTree) throws ConfigurationException {
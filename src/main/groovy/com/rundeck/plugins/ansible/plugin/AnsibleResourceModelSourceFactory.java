@@ -35,6 +35,10 @@ public class AnsibleResourceModelSourceFactory implements ResourceModelSourceFac
         builder.property(INVENTORY_PROP);
         builder.property(CONFIG_FILE_PATH);
         builder.property(GATHER_FACTS_PROP);
+        builder.property(GATHER_FACTS_TTL_PROP);
+        builder.property(GATHER_FACTS_STREAMING_PROP);
+        builder.property(GATHER_SUBSET_PROP);
+        builder.property(FACTS_PROJECTION_PROP);
         builder.property(IGNORE_ERRORS_PROP);
         builder.property(LIMIT_PROP);
         builder.property(DISABLE_LIMIT_PROP);
@@ -65,6 +69,9 @@ public class AnsibleResourceModelSourceFactory implements ResourceModelSourceFac
 
         builder.property(YAML_DATA_SIZE_PROP);
         builder.property(YAML_MAX_ALIASES_PROP);
+        builder.property(YAML_STREAMING_PROP);
+        builder.property(INVENTORY_JSON_PROP);
+        builder.property(INVENTORY_CACHE_TTL_PROP);
 
         builder.mapping(ANSIBLE_INVENTORY,PROJ_PROP_PREFIX + ANSIBLE_INVENTORY);
         builder.frameworkMapping(ANSIBLE_INVENTORY,FWK_PROP_PREFIX + ANSIBLE_INVENTORY);
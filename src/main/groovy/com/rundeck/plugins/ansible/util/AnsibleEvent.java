@@ -0,0 +1,89 @@
+package com.rundeck.plugins.ansible.util;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * Event of an ansible run, as written by the {@code rundeck_events} stdout callback.
+ */
+@Builder
+@Data
+public class AnsibleEvent {
+
+    public enum Type {
+        PLAY_START,
+        TASK_START,
+        HOST_OK,
+        HOST_CHANGED,
+        HOST_FAILED,
+        HOST_UNREACHABLE,
+        HOST_SKIPPED,
+        RECAP;
+
+        /**
+         * @param name event name written by the callback, e.g. {@code host_ok}
+         * @return the event type, null if unknown
+         */
+        public static Type fromName(String name) {
+            for (Type type : values()) {
+                if (type.name().equalsIgnoreCase(name)) {
+                    return type;
+                }
+            }
+            return null;
+        }
+    }
+
+    private Type type;
+    private String play;
+    private String task;
+    // host events and recap only
+    private String host;
+    // module result of the host events
+    private JsonObject result;
+    // failed host events only
+    private boolean ignoreErrors;
+    // recap only: ok, changed, unreachable, failures, skipped, rescued and ignored counts
+    private JsonObject stats;
+
+    /**
+     * @return true for the host result events
+     */
+    public boolean isHostResult() {
+        return type == Type.HOST_OK || type == Type.HOST_CHANGED || type == Type.HOST_FAILED
+                || type == Type.HOST_UNREACHABLE || type == Type.HOST_SKIPPED;
+    }
+
+    /**
+     * @param root event written by the callback
+     * @return the event, null if its type is unknown
+     */
+    public static AnsibleEvent fromJson(JsonObject root) {
+        Type type = Type.fromName(getString(root, "event"));
+        if (type == null) {
+            return null;
+        }
+        return AnsibleEvent.builder()
+                .type(type)
+                .play(getString(root, "play"))
+                .task(getString(root, "task"))
+                .host(getString(root, "host"))
+                .result(getObject(root, "result"))
+                .ignoreErrors(root.has("ignore_errors") && root.get("ignore_errors").isJsonPrimitive()
+                        && root.get("ignore_errors").getAsBoolean())
+                .stats(getObject(root, "stats"))
+                .build();
+    }
+
+    private static String getString(JsonObject root, String name) {
+        JsonElement element = root.get(name);
+        return element != null && element.isJsonPrimitive() ? element.getAsString() : null;
+    }
+
+    private static JsonObject getObject(JsonObject root, String name) {
+        JsonElement element = root.get(name);
+        return element != null && element.isJsonObject() ? element.getAsJsonObject() : null;
+    }
+}
@@ -0,0 +1,86 @@
+package com.rundeck.plugins.ansible.util;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Turns the output of the {@code rundeck_events} stdout callback into {@link AnsibleEvent}s, one line at a time.
+ * <p>
+ * Event lines are handed to the handler as soon as they are read, the other lines (the default human readable
+ * output) are passed on unchanged to the output listener, in order.
+ * </p>
+ */
+public class AnsibleEventParser implements Listener {
+
+    // written by the rundeck_events callback in front of each event line
+    public static final String EVENT_MARKER = "RUNDECK_EVENT ";
+    public static final String EVENTS_CALLBACK = "rundeck_events";
+    public static final String EVENTS_CALLBACK_PY = EVENTS_CALLBACK + ".py";
+
+    /**
+     * Receives the events of a run.
+     */
+    public interface EventHandler {
+        void event(AnsibleEvent event);
+    }
+
+    private final Listener output;
+    private final EventHandler handler;
+
+    public AnsibleEventParser(Listener output, EventHandler handler) {
+        this.output = output;
+        this.handler = handler;
+    }
+
+    @Override
+    public void output(String line) {
+        AnsibleEvent event = parse(line);
+        if (event != null) {
+            handler.event(event);
+        } else {
+            output.output(line);
+        }
+    }
+
+    @Override
+    public void output(List<String> lines) {
+        List<String> text = new ArrayList<>(lines.size());
+        for (String line : lines) {
+            AnsibleEvent event = parse(line);
+            if (event == null) {
+                text.add(line);
+                continue;
+            }
+            // keep the output and the events in order
+            if (!text.isEmpty()) {
+                output.output(text);
+                text.clear();
+            }
+            handler.event(event);
+        }
+        if (!text.isEmpty()) {
+            output.output(text);
+        }
+    }
+
+    /**
+     * @param line output line
+     * @return the event of an event line, null for any other line
+     */
+    public static AnsibleEvent parse(String line) {
+        if (!line.startsWith(EVENT_MARKER)) {
+            return null;
+        }
+        try {
+            JsonElement json = JsonParser.parseString(line.substring(EVENT_MARKER.length()));
+            return json.isJsonObject() ? AnsibleEvent.fromJson(json.getAsJsonObject()) : null;
+        } catch (JsonParseException e) {
+            // not written by the callback
+            return null;
+        }
+    }
+}
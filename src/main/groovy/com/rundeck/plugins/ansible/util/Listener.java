@@ -1,7 +1,18 @@
 package com.rundeck.plugins.ansible.util;
 
+import java.util.List;
+
 public interface Listener {
 
       void output(String line);
 
+      /**
+       * Receives several lines at once, the lines are only valid during the call.
+       */
+      default void output(List<String> lines) {
+            for (String line : lines) {
+                  output(line);
+            }
+      }
+
 }
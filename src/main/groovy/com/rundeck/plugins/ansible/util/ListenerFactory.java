@@ -1,6 +1,7 @@
 package com.rundeck.plugins.ansible.util;
 
 import java.io.*;
+import java.util.List;
 
 public abstract class ListenerFactory {
 
@@ -10,6 +11,16 @@ public abstract class ListenerFactory {
                 public void output(String line) {
                     stream.println(line);
                 }
+
+                @Override
+                public void output(List<String> lines) {
+                    // a single write per batch instead of one per line
+                    StringBuilder text = new StringBuilder();
+                    for (String line : lines) {
+                        text.append(line).append(System.lineSeparator());
+                    }
+                    stream.print(text);
+                }
               };
       }
 }
@@ -6,9 +6,37 @@
 package com.rundeck.plugins.ansible.util;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Logging {
 
+    // lines read ahead of the listener before the readers stop reading the process output
+    public static final int PUMP_CAPACITY = 1024;
+    // most lines handed to the listener in one call
+    public static final int PUMP_BATCH_SIZE = 256;
+
+    private static final long PUMP_OFFER_MILLIS = 100;
+
+    private static final AtomicInteger PUMP_THREADS = new AtomicInteger();
+
+    // readers are reused across runs, idle ones exit after a minute
+    private static final ExecutorService PUMP_READERS = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "ansible-output-" + PUMP_THREADS.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // queued by a reader once its stream is read, compared by identity
+    private static final String END_OF_STREAM = new String("END_OF_STREAM");
+
    /**
     * A simple Thread subclass that perform realtime ansible logging.
     */ 
@@ -45,7 +73,7 @@ public class Logging {
     * @throws java.io.IOException if thrown by underlying io operations 
     */
     public static void ansibleStreamLogger(final InputStream in, final Listener out) throws IOException { 
-       InputStreamReader isr = new InputStreamReader(in);
+       InputStreamReader isr = new InputStreamReader(in, StandardCharsets.UTF_8);
        LineNumberReader lines = new LineNumberReader(isr);
        String line;
        while ((line = lines.readLine()) != null) {
@@ -64,4 +92,106 @@ public class Logging {
     public static AnsibleLoggerThread copyStreamThread(final InputStream in, final Listener out) { 
         return new AnsibleLoggerThread(in, out); 
     }
+
+    /**
+     * Copies the lines of the process output streams to the listener until all the streams are read.
+     * <p>
+     * The streams are read and decoded as UTF-8 by pooled reader threads into a bounded queue: when the listener
+     * falls behind, the readers stop reading and the process blocks on its full pipe. The lines are handed to the
+     * listener in batches on the calling thread, which is the thread Rundeck binds the execution log to.
+     * </p>
+     *
+     * @param out     listener
+     * @param streams process output streams
+     *
+     * @throws IOException          if a stream cannot be read, once all the streams are done
+     * @throws InterruptedException if the calling thread is interrupted, the readers stop once the streams are closed
+     */
+    public static void pump(final Listener out, final InputStream... streams) throws IOException, InterruptedException {
+        pump(out, PUMP_CAPACITY, PUMP_BATCH_SIZE, streams);
+    }
+
+    static void pump(final Listener out, int capacity, int batchSize, final InputStream... streams)
+            throws IOException, InterruptedException {
+        BlockingQueue<String> queue = new ArrayBlockingQueue<>(capacity);
+        PumpReader[] readers = new PumpReader[streams.length];
+        for (int i = 0; i < streams.length; i++) {
+            readers[i] = new PumpReader(streams[i], queue);
+            PUMP_READERS.execute(readers[i]);
+        }
+
+        List<String> batch = new ArrayList<>(batchSize);
+        int running = streams.length;
+        try {
+            while (running > 0) {
+                String line = queue.take();
+                // drain whatever is already queued, stopping at the end of a stream
+                while (line != null) {
+                    if (line == END_OF_STREAM) {
+                        running--;
+                    } else {
+                        batch.add(line);
+                    }
+                    line = batch.size() < batchSize ? queue.poll() : null;
+                }
+                if (!batch.isEmpty()) {
+                    out.output(batch);
+                    batch.clear();
+                }
+            }
+        } finally {
+            for (PumpReader reader : readers) {
+                reader.closed = true;
+            }
+        }
+
+        for (PumpReader reader : readers) {
+            if (reader.exception != null) {
+                throw reader.exception;
+            }
+        }
+    }
+
+    private static class PumpReader implements Runnable {
+        private final InputStream in;
+        private final BlockingQueue<String> queue;
+        private volatile boolean closed;
+        private volatile IOException exception;
+
+        private PumpReader(InputStream in, BlockingQueue<String> queue) {
+            this.in = in;
+            this.queue = queue;
+        }
+
+        @Override
+        public void run() {
+            try {
+                BufferedReader lines = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+                String line;
+                while ((line = lines.readLine()) != null && offer(line)) {
+                    // queued
+                }
+            } catch (IOException e) {
+                exception = e;
+            } catch (InterruptedException e) {
+                // still report the end of the stream below
+            } finally {
+                try {
+                    offer(END_OF_STREAM);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        // blocks while the queue is full, until the listener side is gone
+        private boolean offer(String line) throws InterruptedException {
+            while (!closed) {
+                if (queue.offer(line, PUMP_OFFER_MILLIS, TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
 }
@@ -3,8 +3,14 @@ package com.rundeck.plugins.ansible.util;
 import lombok.Builder;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 @Builder
 public class ProcessExecutor {
@@ -28,6 +34,10 @@ public class ProcessExecutor {
     // as the delimiter.
     private static final int END_OF_TEXT = 3;
 
+    private static final long PROMPT_TIMEOUT_MILLIS = 60 * 1000;
+    // upper bound of the prompt detection delay when no file system event is received
+    private static final long PROMPT_POLL_MILLIS = 50;
+
     public Process run() throws IOException {
 
         ProcessBuilder processBuilder = new ProcessBuilder()
@@ -70,33 +80,22 @@ public class ProcessExecutor {
 
     private void processPrompt(OutputStreamWriter stdinw, final VaultPrompt vaultPrompt) throws Exception {
         if(promptStdinLogFile!=null){
-            //wait for prompt
-            boolean promptFound = false;
-            long start = System.currentTimeMillis();
-            long end = start + 60 * 1000;
-            BufferedReader reader = new BufferedReader(new FileReader(promptStdinLogFile));
-
-            while (!promptFound && System.currentTimeMillis() < end){
-                String currentLine = reader.readLine();
-                if(debug){
-                    System.out.println("waiting for vault password prompt ("+vaultPrompt.getVaultId()+")...");
-                }
-                if(currentLine!=null && currentLine.contains("Enter Password ("+vaultPrompt.getVaultId()+"):")){
-                    if(debug) {
-                        System.out.println(currentLine);
-                    }
-                    promptFound = true;
-                    // Send password/content synchronously -- run() closes stdinw right
-                    // after processPrompt() returns, so writing from a background
-                    // thread here (as before) raced that close and could truncate
-                    // the write.
-                    stdinw.write(vaultPrompt.getVaultPassword());
-                    stdinw.write(END_OF_TEXT);
-                    stdinw.flush();
+            String prompt = "Enter Password ("+vaultPrompt.getVaultId()+"):";
+            if(debug){
+                System.out.println("waiting for vault password prompt ("+vaultPrompt.getVaultId()+")...");
+            }
+            if(waitForPrompt(prompt, PROMPT_TIMEOUT_MILLIS)){
+                if(debug) {
+                    System.out.println(prompt);
                 }
-                Thread.sleep(2000);
+                // Send password/content synchronously -- run() closes stdinw right
+                // after processPrompt() returns, so writing from a background
+                // thread here (as before) raced that close and could truncate
+                // the write.
+                stdinw.write(vaultPrompt.getVaultPassword());
+                stdinw.write(END_OF_TEXT);
+                stdinw.flush();
             }
-            reader.close();
 
         }else{
             stdinw.write(vaultPrompt.getVaultPassword());
@@ -104,4 +103,43 @@ public class ProcessExecutor {
         }
     }
 
+    /**
+     * Waits until vault-client.py writes the prompt to the prompt log file. The wait is woken up by the
+     * file system events of the log directory, with a short poll for file systems that do not report them.
+     *
+     * @return true if the prompt was found before the timeout
+     */
+    private boolean waitForPrompt(String prompt, long timeoutMillis) throws IOException, InterruptedException {
+        Path logFile = promptStdinLogFile.toPath().toAbsolutePath();
+        long end = System.currentTimeMillis() + timeoutMillis;
+        StringBuilder log = new StringBuilder();
+        char[] buffer = new char[1024];
+
+        try (WatchService watchService = logFile.getFileSystem().newWatchService();
+             Reader reader = new InputStreamReader(new FileInputStream(promptStdinLogFile), StandardCharsets.UTF_8)) {
+            logFile.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+
+            while (true) {
+                // the prompt may be written in several chunks, so the whole log is searched
+                int read;
+                while ((read = reader.read(buffer)) > 0) {
+                    log.append(buffer, 0, read);
+                }
+                if (log.indexOf(prompt) >= 0) {
+                    return true;
+                }
+
+                long remaining = end - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                WatchKey key = watchService.poll(Math.min(remaining, PROMPT_POLL_MILLIS), TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    key.pollEvents();
+                    key.reset();
+                }
+            }
+        }
+    }
+
 }
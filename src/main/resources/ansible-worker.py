@@ -0,0 +1,226 @@
+#!/usr/bin/env python3
+# Warm ansible worker used by the Rundeck node executor and file copier.
+#
+# Imports ansible once, then runs the ansible and ansible-playbook command lines sent on a unix socket.
+# Each command runs in a child forked from the warm interpreter, so the ansible global state of a command
+# never leaks into the next one and a crashing command does not take the worker down.
+# The worker exits once it has been idle for the idle timeout, or when Rundeck is gone.
+#
+# Request, a single json line:
+#   {"argv": [...], "env": {...}, "cwd": "...", "prompts": [{"vault_id": "...", "password": "..."}], "prompt_log": "..."}
+# Response, json lines:
+#   {"out": ["...", ...]} for the output lines of each read, then {"rc": <exit code>}
+import argparse
+import importlib
+import json
+import os
+import signal
+import socket
+import sys
+import threading
+import time
+import traceback
+
+CLIS = {
+    'ansible': ('ansible.cli.adhoc', 'AdHocCLI'),
+    'ansible-playbook': ('ansible.cli.playbook', 'PlaybookCLI'),
+}
+
+# imported lazily by the command lines, loaded once here
+PRELOAD = [
+    'ansible.executor.task_queue_manager',
+    'ansible.executor.playbook_executor',
+    'ansible.inventory.manager',
+    'ansible.vars.manager',
+    'ansible.parsing.dataloader',
+    'ansible.playbook.play',
+    'ansible.plugins.loader',
+    'ansible.template',
+]
+
+END_OF_TEXT = chr(3)
+PROMPT_POLL_SECONDS = 0.05
+PROMPT_TIMEOUT_SECONDS = 60
+ACCEPT_TIMEOUT_SECONDS = 1.0
+# exit code of ansible on unexpected errors
+UNEXPECTED_ERROR = 250
+
+
+def preload():
+    for module, _ in CLIS.values():
+        importlib.import_module(module)
+    for module in PRELOAD:
+        try:
+            importlib.import_module(module)
+        except ImportError:
+            pass
+
+
+def run_command(argv):
+    module, name = CLIS[os.path.basename(argv[0])]
+    cli_class = getattr(importlib.import_module(module), name)
+    sys.argv = list(argv)
+    if hasattr(cli_class, 'cli_executor'):
+        # exits with the command exit code
+        cli_class.cli_executor(list(argv))
+    sys.exit(cli_class(list(argv)).run())
+
+
+def exit_code(status):
+    if os.WIFSIGNALED(status):
+        return 128 + os.WTERMSIG(status)
+    return os.WEXITSTATUS(status)
+
+
+def send_prompts(request, stdin):
+    # same exchange as the Rundeck ProcessExecutor: vault-client.py logs its prompt, then reads the password
+    try:
+        prompt_log = request.get('prompt_log')
+        for prompt in request.get('prompts') or []:
+            if prompt_log:
+                expected = 'Enter Password (%s):' % prompt.get('vault_id')
+                end = time.time() + PROMPT_TIMEOUT_SECONDS
+                found = False
+                while time.time() < end:
+                    try:
+                        with open(prompt_log, encoding='utf-8', errors='replace') as log:
+                            found = expected in log.read()
+                    except IOError:
+                        found = False
+                    if found:
+                        break
+                    time.sleep(PROMPT_POLL_SECONDS)
+                if found:
+                    os.write(stdin, (prompt.get('password') + END_OF_TEXT).encode('utf-8'))
+            else:
+                os.write(stdin, prompt.get('password').encode('utf-8'))
+    except OSError:
+        pass
+    finally:
+        os.close(stdin)
+
+
+def handle(conn):
+    request = json.loads(conn.makefile('rb').readline().decode('utf-8'))
+
+    stdin_read, stdin_write = os.pipe()
+    out_read, out_write = os.pipe()
+    pid = os.fork()
+    if pid == 0:
+        conn.close()
+        os.dup2(stdin_read, 0)
+        os.dup2(out_write, 1)
+        os.dup2(out_write, 2)
+        for fd in (stdin_read, stdin_write, out_read, out_write):
+            os.close(fd)
+        code = UNEXPECTED_ERROR
+        try:
+            # the environment of the command only, not the one of the command that started the worker
+            os.environ.clear()
+            os.environ.update(request.get('env') or {})
+            if request.get('cwd'):
+                os.chdir(request['cwd'])
+            run_command(request['argv'])
+        except SystemExit as e:
+            if e.code is None:
+                code = 0
+            elif isinstance(e.code, int):
+                code = e.code
+            else:
+                sys.stderr.write('%s\n' % e.code)
+                code = 1
+        except BaseException:
+            traceback.print_exc()
+        finally:
+            sys.stdout.flush()
+            sys.stderr.flush()
+            os._exit(code)
+
+    os.close(stdin_read)
+    os.close(out_write)
+    threading.Thread(target=send_prompts, args=(request, stdin_write), daemon=True).start()
+
+    def send(message):
+        conn.sendall((json.dumps(message) + '\n').encode('utf-8'))
+
+    pending = b''
+    try:
+        while True:
+            data = os.read(out_read, 65536)
+            if not data:
+                break
+            lines = (pending + data).split(b'\n')
+            pending = lines.pop()
+            if lines:
+                send({'out': [line.decode('utf-8', 'replace') for line in lines]})
+        if pending:
+            send({'out': [pending.decode('utf-8', 'replace')]})
+        _, status = os.waitpid(pid, 0)
+        send({'rc': exit_code(status)})
+    except OSError:
+        # Rundeck is gone, so is the command
+        os.kill(pid, signal.SIGTERM)
+        os.waitpid(pid, 0)
+
+
+def serve(path, idle_timeout):
+    parent = os.getppid()
+    if os.path.exists(path):
+        os.unlink(path)
+    server = socket.socket(socket.AF_UNIX, socket.SOCK_STREAM)
+    umask = os.umask(0o177)
+    try:
+        server.bind(path)
+    finally:
+        os.umask(umask)
+    server.listen(64)
+    server.settimeout(ACCEPT_TIMEOUT_SECONDS)
+
+    preload()
+    sys.stdout.write('READY\n')
+    sys.stdout.flush()
+
+    children = set()
+    last_active = time.time()
+    try:
+        while os.getppid() == parent:
+            for pid in list(children):
+                if os.waitpid(pid, os.WNOHANG)[0] != 0:
+                    children.discard(pid)
+            if children:
+                last_active = time.time()
+
+            try:
+                conn, _ = server.accept()
+            except socket.timeout:
+                if time.time() - last_active > idle_timeout:
+                    break
+                continue
+
+            last_active = time.time()
+            pid = os.fork()
+            if pid == 0:
+                server.close()
+                code = 0
+                try:
+                    conn.settimeout(None)
+                    handle(conn)
+                except BaseException:
+                    traceback.print_exc()
+                    code = 1
+                finally:
+                    os._exit(code)
+            conn.close()
+            children.add(pid)
+    finally:
+        server.close()
+        if os.path.exists(path):
+            os.unlink(path)
+
+
+if __name__ == '__main__':
+    parser = argparse.ArgumentParser(description='Warm ansible worker')
+    parser.add_argument('--socket', required=True, help='unix socket path')
+    parser.add_argument('--idle-timeout', type=int, default=300, help='seconds before an idle worker exits')
+    args = parser.parse_args()
+    serve(args.socket, args.idle_timeout)
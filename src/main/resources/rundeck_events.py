@@ -0,0 +1,89 @@
+#!/usr/bin/env python3
+# Stdout callback used by the Rundeck ansible runner to report structured events.
+#
+# Behaves like the default callback, and in addition writes each play start, task start,
+# host result and the play recap to stdout as a single line: the marker followed by the
+# event in json, so Rundeck can follow the run without parsing the human readable output.
+import json
+import sys
+
+from ansible.plugins.callback.default import CallbackModule as DefaultCallbackModule
+
+try:
+    from ansible.module_utils.common.json import AnsibleJSONEncoder
+except ImportError:
+    from ansible.parsing.ajson import AnsibleJSONEncoder
+
+DOCUMENTATION = '''
+    name: rundeck_events
+    type: stdout
+    short_description: default output, with json lines events
+    description:
+      - Default ansible output, with one json line per play, task, host result and host recap.
+    extends_documentation_fragment:
+      - default_callback
+    requirements:
+      - set as stdout callback
+'''
+
+EVENT_MARKER = 'RUNDECK_EVENT '
+
+
+class CallbackModule(DefaultCallbackModule):
+    CALLBACK_VERSION = 2.0
+    CALLBACK_TYPE = 'stdout'
+    CALLBACK_NAME = 'rundeck_events'
+
+    def __init__(self):
+        super(CallbackModule, self).__init__()
+        self._event_play = None
+        self._event_task = None
+
+    def _event(self, event, **fields):
+        fields['event'] = event
+        if 'play' not in fields:
+            fields['play'] = self._event_play
+        if 'task' not in fields:
+            fields['task'] = self._event_task
+        line = json.dumps(fields, cls=AnsibleJSONEncoder, sort_keys=True)
+        sys.stdout.write(EVENT_MARKER + line + '\n')
+        sys.stdout.flush()
+
+    def _host_event(self, event, result, **fields):
+        # the module result, without the internal keys of the callbacks
+        host_result = dict(result._result)
+        self._clean_results(host_result, result._task.action)
+        self._event(event, host=result._host.get_name(), task=result._task.get_name(),
+                    result=host_result, **fields)
+
+    def v2_playbook_on_play_start(self, play):
+        self._event_play = play.get_name().strip()
+        self._event_task = None
+        super(CallbackModule, self).v2_playbook_on_play_start(play)
+        self._event('play_start')
+
+    def v2_playbook_on_task_start(self, task, is_conditional):
+        self._event_task = task.get_name().strip()
+        super(CallbackModule, self).v2_playbook_on_task_start(task, is_conditional)
+        self._event('task_start')
+
+    def v2_runner_on_ok(self, result):
+        super(CallbackModule, self).v2_runner_on_ok(result)
+        self._host_event('host_changed' if result._result.get('changed', False) else 'host_ok', result)
+
+    def v2_runner_on_failed(self, result, ignore_errors=False):
+        super(CallbackModule, self).v2_runner_on_failed(result, ignore_errors)
+        self._host_event('host_failed', result, ignore_errors=ignore_errors)
+
+    def v2_runner_on_unreachable(self, result):
+        super(CallbackModule, self).v2_runner_on_unreachable(result)
+        self._host_event('host_unreachable', result)
+
+    def v2_runner_on_skipped(self, result):
+        super(CallbackModule, self).v2_runner_on_skipped(result)
+        self._host_event('host_skipped', result)
+
+    def v2_playbook_on_stats(self, stats):
+        super(CallbackModule, self).v2_playbook_on_stats(stats)
+        for host in sorted(stats.processed.keys()):
+            self._event('recap', host=host, task=None, stats=stats.summarize(host))
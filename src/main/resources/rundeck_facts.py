@@ -0,0 +1,64 @@
+#!/usr/bin/env python3
+# Stdout callback used by the Rundeck resource model source to stream gathered facts.
+#
+# Behaves like the default callback, except for the "Stream the gathered facts" task of
+# gather-hosts.yml: the host facts are written to stdout as a single line, the marker followed
+# by the facts in json, so Rundeck can build the node while the play is running.
+#
+# The facts are rendered here from the play variables rather than carried by the task result,
+# so the host vars (connection and become passwords included) are never part of the task
+# output, whatever callback displays it.
+import json
+import sys
+
+from ansible.plugins.callback.default import CallbackModule as DefaultCallbackModule
+from ansible.template import Templar
+
+try:
+    from ansible.module_utils.common.json import AnsibleJSONEncoder
+except ImportError:
+    from ansible.parsing.ajson import AnsibleJSONEncoder
+
+DOCUMENTATION = '''
+    name: rundeck_facts
+    type: stdout
+    short_description: default output, with the gathered facts as json lines
+    description:
+      - Default ansible output, with the facts streamed by gather-hosts.yml written as one json line per host.
+    extends_documentation_fragment:
+      - default_callback
+    requirements:
+      - set as stdout callback
+'''
+
+FACTS_TASK = 'Stream the gathered facts'
+FACTS_MARKER = 'RUNDECK_FACTS '
+FACTS_TEMPLATE = ("{{ ((hostvars[inventory_hostname] | dict2items | selectattr('key', 'in', facts_keys) | items2dict)"
+                  " if facts_keys else hostvars[inventory_hostname]) | to_json }}")
+
+
+class CallbackModule(DefaultCallbackModule):
+    CALLBACK_VERSION = 2.0
+    CALLBACK_TYPE = 'stdout'
+    CALLBACK_NAME = 'rundeck_facts'
+
+    def __init__(self):
+        super(CallbackModule, self).__init__()
+        self._play = None
+
+    def v2_playbook_on_play_start(self, play):
+        self._play = play
+        return super(CallbackModule, self).v2_playbook_on_play_start(play)
+
+    def v2_runner_on_ok(self, result):
+        if result._task.get_name() != FACTS_TASK:
+            return super(CallbackModule, self).v2_runner_on_ok(result)
+
+        variables = self._play.get_variable_manager().get_vars(play=self._play, host=result._host, task=result._task)
+        facts = Templar(loader=self._play.get_loader(), variables=variables).template(FACTS_TEMPLATE)
+        # depending on the ansible version, the to_json output may have been turned back into a dict
+        if not isinstance(facts, str):
+            facts = json.dumps(facts, cls=AnsibleJSONEncoder)
+
+        sys.stdout.write(FACTS_MARKER + facts.replace('\n', ' ') + '\n')
+        sys.stdout.flush()
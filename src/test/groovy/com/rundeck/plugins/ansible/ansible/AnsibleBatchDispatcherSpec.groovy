@@ -0,0 +1,140 @@
+package com.rundeck.plugins.ansible.ansible
+
+import com.dtolabs.rundeck.core.common.INodeEntry
+import spock.lang.Specification
+import spock.lang.TempDir
+
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * AnsibleBatchDispatcher test
+ */
+class AnsibleBatchDispatcherSpec extends Specification {
+
+    @TempDir
+    Path tempDir
+
+    void "concurrent callers with the same key share a single batch run"() {
+        given: "a dispatcher and three nodes"
+        def dispatcher = new AnsibleBatchDispatcher<String>()
+        def runs = new AtomicInteger()
+        def nodes = ["node1", "node2", "node3"].collect { name ->
+            Mock(INodeEntry) { getNodename() >> name }
+        }
+        def pool = Executors.newFixedThreadPool(3)
+
+        when: "every node dispatches at the same time"
+        List<Future<String>> futures = nodes.collect { node ->
+            pool.submit({
+                dispatcher.dispatch("key", node, 3, 5000L, { members ->
+                    runs.incrementAndGet()
+                    members.collectEntries { [(it.nodename): "result-" + it.nodename + "-" + members.size()] }
+                } as AnsibleBatchDispatcher.BatchAction<String>)
+            } as Callable<String>)
+        }
+        def results = futures.collect { it.get() }
+
+        then: "the action ran once and each node got its own result"
+        runs.get() == 1
+        results.sort() == ["result-node1-3", "result-node2-3", "result-node3-3"]
+
+        cleanup:
+        pool.shutdownNow()
+    }
+
+    void "leader runs alone once the window expires"() {
+        given:
+        def dispatcher = new AnsibleBatchDispatcher<String>()
+        def node = Mock(INodeEntry) { getNodename() >> "node1" }
+
+        when: "the batch never fills"
+        def result = dispatcher.dispatch("key", node, 2, 50L, { members ->
+            [(members[0].nodename): "size-" + members.size()]
+        } as AnsibleBatchDispatcher.BatchAction<String>)
+
+        then:
+        result == "size-1"
+    }
+
+    void "batch failure is rethrown to the callers"() {
+        given:
+        def dispatcher = new AnsibleBatchDispatcher<String>()
+        def node = Mock(INodeEntry) { getNodename() >> "node1" }
+
+        when:
+        dispatcher.dispatch("key", node, 1, 50L, { members ->
+            throw new AnsibleException("boom", AnsibleException.AnsibleFailureReason.AnsibleError)
+        } as AnsibleBatchDispatcher.BatchAction<String>)
+
+        then:
+        def e = thrown(AnsibleException)
+        e.message == "boom"
+    }
+
+    void "followers are released when the batch action throws an error"() {
+        given:
+        def dispatcher = new AnsibleBatchDispatcher<String>()
+        def nodes = ["node1", "node2"].collect { name ->
+            Mock(INodeEntry) { getNodename() >> name }
+        }
+        def pool = Executors.newFixedThreadPool(2)
+
+        when:
+        List<Future<String>> futures = nodes.collect { node ->
+            pool.submit({
+                dispatcher.dispatch("key", node, 2, 5000L, { members ->
+                    throw new StackOverflowError("deep")
+                } as AnsibleBatchDispatcher.BatchAction<String>)
+            } as Callable<String>)
+        }
+        List<Throwable> failures = futures.collect { future ->
+            try {
+                future.get(10, TimeUnit.SECONDS)
+                return null
+            } catch (ExecutionException e) {
+                return e.cause
+            }
+        }
+
+        then:
+        failures.every { it instanceof StackOverflowError && it.message == "deep" }
+
+        cleanup:
+        pool.shutdownNow()
+    }
+
+    void "readTreeDirectory parses the per host tree callback output"() {
+        given: "tree callback files for an ok and a failed host"
+        Files.writeString(tempDir.resolve("host1"), '{"changed": true, "rc": 0, "stdout": "hello", "stderr": ""}')
+        Files.writeString(tempDir.resolve("host2"), '{"failed": true, "rc": 2, "msg": "non-zero return code"}')
+        Files.writeString(tempDir.resolve("notes.txt"), 'not json {')
+
+        when:
+        def results = AnsibleHostResult.readTreeDirectory(tempDir)
+
+        then:
+        results.keySet() == ["host1", "host2"] as Set
+        results["host1"].success
+        results["host1"].stdout == "hello"
+        results["host1"].stdoutSize == 5
+        !results["host2"].success
+        results["host2"].rc == 2
+        results["host2"].msg == "non-zero return code"
+
+        when: "the output is not kept"
+        def sizes = AnsibleHostResult.readTreeDirectory(tempDir, false)
+
+        then:
+        sizes["host1"].stdout == null
+        sizes["host1"].stderr == null
+        sizes["host1"].stdoutSize == 5
+        sizes["host2"].stdoutSize == null
+    }
+}
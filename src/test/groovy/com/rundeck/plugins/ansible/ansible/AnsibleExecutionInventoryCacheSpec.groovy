@@ -0,0 +1,122 @@
+package com.rundeck.plugins.ansible.ansible
+
+import com.dtolabs.rundeck.core.common.INodeEntry
+import com.dtolabs.rundeck.core.plugins.configuration.ConfigurationException
+import spock.lang.Specification
+import spock.lang.TempDir
+
+class AnsibleExecutionInventoryCacheSpec extends Specification {
+
+    @TempDir
+    File baseTmpDir
+
+    private INodeEntry node(String name, Map<String, String> attributes = [:]) {
+        Mock(INodeEntry) {
+            getNodename() >> name
+            getHostname() >> name + ".example.com"
+            getAttributes() >> ([nodename: name, osFamily: "unix"] + attributes)
+        }
+    }
+
+    private boolean waitFor(Closure<Boolean> condition) {
+        long end = System.currentTimeMillis() + 10000
+        while (!condition() && System.currentTimeMillis() < end) {
+            Thread.sleep(20)
+        }
+        return condition()
+    }
+
+    def "the steps of an execution share the inventory of the same nodes"() {
+        given:
+        def cache = new AnsibleExecutionInventoryCache(60000)
+        def nodes = [node("web1"), node("web2")]
+
+        when:
+        def first = cache.acquire("42", baseTmpDir.absolutePath, nodes)
+        def second = cache.acquire("42", baseTmpDir.absolutePath, nodes.reverse())
+
+        then:
+        first.file == second.file
+        first.file.parentFile.parentFile == baseTmpDir
+        first.file.parentFile.name.startsWith("ansible-exec-42-inventory-")
+        first.file.text.contains("web1.example.com")
+        cache.size() == 1
+    }
+
+    def "other nodes or another execution get their own inventory"() {
+        given:
+        def cache = new AnsibleExecutionInventoryCache(60000)
+
+        when:
+        def inventory = cache.acquire("42", baseTmpDir.absolutePath, [node("web1", [tags: "a"])])
+        def otherAttributes = cache.acquire("42", baseTmpDir.absolutePath, [node("web1", [tags: "b"])])
+        def otherExecution = cache.acquire("43", baseTmpDir.absolutePath, [node("web1", [tags: "a"])])
+
+        then:
+        inventory.file != otherAttributes.file
+        inventory.file != otherExecution.file
+        otherExecution.file.parentFile.name.startsWith("ansible-exec-43-inventory-")
+        cache.size() == 3
+    }
+
+    def "the inventory is kept while used and deleted once released"() {
+        given:
+        def cache = new AnsibleExecutionInventoryCache(100)
+        def nodes = [node("web1")]
+
+        when: "a step releases it while another one still uses it"
+        def first = cache.acquire("42", baseTmpDir.absolutePath, nodes)
+        def second = cache.acquire("42", baseTmpDir.absolutePath, nodes)
+        File file = first.file
+        first.release()
+        first.release()
+        Thread.sleep(300)
+
+        then:
+        file.exists()
+
+        when: "the last step releases it"
+        second.release()
+
+        then:
+        waitFor { !file.exists() }
+        cache.size() == 0
+        baseTmpDir.list().length == 0
+    }
+
+    def "a step starting within the release delay reuses the inventory"() {
+        given:
+        def cache = new AnsibleExecutionInventoryCache(500)
+        def nodes = [node("web1")]
+
+        when:
+        def first = cache.acquire("42", baseTmpDir.absolutePath, nodes)
+        first.release()
+        def next = cache.acquire("42", baseTmpDir.absolutePath, nodes)
+        Thread.sleep(700)
+
+        then:
+        next.file == first.file
+        next.file.exists()
+
+        cleanup:
+        next?.release()
+    }
+
+    def "a failed generation is not cached"() {
+        given:
+        def cache = new AnsibleExecutionInventoryCache(60000)
+        INodeEntry noHostname = Mock(INodeEntry) {
+            getNodename() >> "web1"
+            getAttributes() >> [nodename: "web1"]
+        }
+
+        when:
+        cache.acquire("42", baseTmpDir.absolutePath, [noHostname])
+
+        then:
+        thrown(ConfigurationException)
+        cache.size() == 0
+        baseTmpDir.list().length == 0
+    }
+}
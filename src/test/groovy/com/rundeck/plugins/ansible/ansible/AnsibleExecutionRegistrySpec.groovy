@@ -0,0 +1,96 @@
+package com.rundeck.plugins.ansible.ansible
+
+import spock.lang.Specification
+
+import java.util.function.ToLongFunction
+
+class AnsibleExecutionRegistrySpec extends Specification {
+
+    List<String> closed = Collections.synchronizedList([])
+
+    AnsibleExecutionRegistry<String> registry(long ttlMillis) {
+        return new AnsibleExecutionRegistry<String>({ String resource -> ttlMillis } as ToLongFunction<String>,
+                { String key, String resource -> closed << key } as AnsibleExecutionRegistry.Closer<String>)
+    }
+
+    private boolean waitFor(Closure<Boolean> condition) {
+        long end = System.currentTimeMillis() + 10000
+        while (!condition() && System.currentTimeMillis() < end) {
+            Thread.sleep(20)
+        }
+        return condition()
+    }
+
+    def "a resource is created once and closed once the last run has released it for its time to live"() {
+        given:
+        def executions = registry(200)
+        int created = 0
+        def factory = { String key -> "resource of " + key + " " + (++created) } as AnsibleExecutionRegistry.Factory
+
+        when:
+        def first = executions.acquire("42", factory)
+        def second = executions.acquire("42", factory)
+        executions.release("42")
+        Thread.sleep(400)
+
+        then: "a run still uses it"
+        first == second
+        created == 1
+        closed.isEmpty()
+
+        when:
+        executions.release("42")
+
+        then:
+        waitFor { closed == ["42"] }
+        executions.size() == 0
+    }
+
+    def "a resource acquired again within its time to live is kept"() {
+        given:
+        def executions = registry(300)
+        def factory = { String key -> "resource" } as AnsibleExecutionRegistry.Factory
+
+        when:
+        executions.acquire("42", factory)
+        executions.release("42")
+        executions.acquire("42", factory)
+        Thread.sleep(500)
+
+        then:
+        executions.size() == 1
+        closed.isEmpty()
+    }
+
+    def "a resource used without being acquired is dropped once unused for its time to live"() {
+        given:
+        def executions = registry(300)
+        def factory = { String key -> "resource" } as AnsibleExecutionRegistry.Factory
+
+        when:
+        executions.get("42", factory)
+        Thread.sleep(200)
+        executions.get("42", factory)
+        Thread.sleep(200)
+
+        then:
+        executions.size() == 1
+
+        and:
+        waitFor { closed == ["42"] }
+        executions.size() == 0
+    }
+
+    def "a resource without a time to live is closed by the last release"() {
+        given:
+        def executions = registry(0)
+
+        when:
+        executions.acquire("42", { String key -> "resource" } as AnsibleExecutionRegistry.Factory)
+        executions.release("42")
+
+        then:
+        closed == ["42"]
+        executions.size() == 0
+    }
+}
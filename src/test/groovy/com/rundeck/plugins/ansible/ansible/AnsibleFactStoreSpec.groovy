@@ -0,0 +1,102 @@
+package com.rundeck.plugins.ansible.ansible
+
+import spock.lang.Specification
+import spock.lang.TempDir
+
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.attribute.FileTime
+
+/**
+ * AnsibleFactStore test
+ */
+class AnsibleFactStoreSpec extends Specification {
+
+    @TempDir
+    Path tempDir
+
+    void "gathered facts are stored and fresh until the ttl expires"() {
+        given:
+        long now = 1_000_000L
+        def store = new AnsibleFactStore(tempDir.resolve("store"), 10_000L, { now })
+        def data = Files.createDirectories(tempDir.resolve("data"))
+        Files.writeString(data.resolve("node1"), '{"inventory_hostname": "node1"}')
+        Files.writeString(data.resolve("node2"), '{"inventory_hostname": "node2"}')
+
+        when:
+        store.store(data)
+
+        then: "the files were moved into the store"
+        store.freshFacts().keySet() == ["node1", "node2"] as Set
+        !Files.exists(data.resolve("node1"))
+
+        when: "the ttl expires"
+        now += 10_000L
+
+        then:
+        store.freshFacts().isEmpty()
+    }
+
+    void "storing new facts replaces the host facts and drops the expired ones"() {
+        given:
+        long now = 1_000_000L
+        def storeDirectory = Files.createDirectories(tempDir.resolve("store"))
+        def store = new AnsibleFactStore(storeDirectory, 10_000L, { now })
+        Files.writeString(storeDirectory.resolve("node1"), 'old')
+        Files.setLastModifiedTime(storeDirectory.resolve("node1"), FileTime.fromMillis(now - 20_000L))
+        Files.writeString(storeDirectory.resolve("removed"), 'old')
+        Files.setLastModifiedTime(storeDirectory.resolve("removed"), FileTime.fromMillis(now - 20_000L))
+        Files.writeString(storeDirectory.resolve("node2"), 'cached')
+        Files.setLastModifiedTime(storeDirectory.resolve("node2"), FileTime.fromMillis(now - 5_000L))
+        def data = Files.createDirectories(tempDir.resolve("data"))
+        Files.writeString(data.resolve("node1"), 'new')
+
+        when:
+        store.store(data)
+        def fresh = store.freshFacts()
+
+        then:
+        fresh.keySet() == ["node1", "node2"] as Set
+        Files.readString(fresh["node1"]) == 'new'
+        Files.readString(fresh["node2"]) == 'cached'
+        !Files.exists(storeDirectory.resolve("removed"))
+    }
+
+    void "the hosts of the last run are covered while their facts are fresh and the inventory unchanged"() {
+        given:
+        long now = 1_000_000L
+        def store = new AnsibleFactStore(tempDir.resolve("store"), 10_000L, { now })
+        def data = Files.createDirectories(tempDir.resolve("data"))
+        Files.writeString(data.resolve("node1"), '{"inventory_hostname": "node1"}')
+        Files.writeString(data.resolve("node2"), '{"inventory_hostname": "node2"}')
+
+        expect: "no run recorded yet"
+        !store.coversTargets("inventory-1")
+
+        when:
+        store.store(data)
+        store.storeTargets("inventory-1", store.freshFacts().keySet())
+
+        then: "the record is not taken for the facts of a host"
+        store.freshFacts().keySet() == ["node1", "node2"] as Set
+        store.coversTargets("inventory-1")
+        !store.coversTargets("inventory-2")
+
+        when: "the facts of a host expire"
+        Files.setLastModifiedTime(tempDir.resolve("store/node2"), FileTime.fromMillis(now - 10_000L))
+
+        then:
+        !store.coversTargets("inventory-1")
+    }
+
+    void "a gather run without output keeps the fresh facts"() {
+        given:
+        def store = new AnsibleFactStore(tempDir.resolve("store"), 10_000L)
+
+        when:
+        store.store(tempDir.resolve("missing"))
+
+        then:
+        store.freshFacts().isEmpty()
+    }
+}
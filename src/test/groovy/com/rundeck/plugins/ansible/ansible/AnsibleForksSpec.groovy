@@ -0,0 +1,51 @@
+package com.rundeck.plugins.ansible.ansible
+
+import spock.lang.Specification
+
+class AnsibleForksSpec extends Specification {
+
+    def "a run gets one fork per target host within what is left of the budget"() {
+        expect:
+        AnsibleForks.forks(targets, budget, running) == forks
+
+        where:
+        targets | budget | running | forks
+        2000    | 64     | 0       | 64
+        3       | 64     | 0       | 3
+        0       | 64     | 0       | 64
+        2000    | 64     | 40      | 24
+        // never below the ansible default while the server is busy
+        2000    | 64     | 62      | 5
+        2000    | 64     | 200     | 5
+        2       | 64     | 200     | 2
+        // nor above a budget smaller than the default
+        2000    | 2      | 0       | 2
+        1       | 1      | 5       | 1
+    }
+
+    def "forks are released once the run is done"() {
+        given:
+        int before = AnsibleForks.running()
+
+        when:
+        int first = AnsibleForks.acquire(10, 1000)
+        int second = AnsibleForks.acquire(20, 1000)
+
+        then:
+        first == 10
+        second == 20
+        AnsibleForks.running() == before + 30
+
+        when:
+        AnsibleForks.release(first)
+        AnsibleForks.release(second)
+
+        then:
+        AnsibleForks.running() == before
+    }
+
+    def "the default budget follows the cores of the server"() {
+        expect:
+        AnsibleForks.defaultBudget() == Runtime.runtime.availableProcessors() * AnsibleForks.FORKS_PER_CORE
+    }
+}
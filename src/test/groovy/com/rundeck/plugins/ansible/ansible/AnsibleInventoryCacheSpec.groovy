@@ -0,0 +1,138 @@
+package com.rundeck.plugins.ansible.ansible
+
+import com.dtolabs.rundeck.core.common.INodeSet
+import com.dtolabs.rundeck.core.common.NodeSetImpl
+import spock.lang.Specification
+import spock.lang.TempDir
+
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.attribute.FileTime
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * AnsibleInventoryCache test
+ */
+class AnsibleInventoryCacheSpec extends Specification {
+
+    @TempDir
+    Path tempDir
+
+    void "cached nodes are reused while fresh"() {
+        given:
+        def now = new AtomicLong(1000)
+        def cache = new AnsibleInventoryCache({ now.get() })
+        def loads = new AtomicInteger()
+        AnsibleInventoryCache.Loader loader = { loads.incrementAndGet(); new NodeSetImpl() }
+
+        when:
+        INodeSet first = cache.get("key", 60000, "fp", loader)
+        now.addAndGet(1000)
+        INodeSet second = cache.get("key", 60000, "fp", loader)
+
+        then:
+        loads.get() == 1
+        first.is(second)
+    }
+
+    void "a changed fingerprint reloads synchronously"() {
+        given:
+        def cache = new AnsibleInventoryCache()
+        def loads = new AtomicInteger()
+        AnsibleInventoryCache.Loader loader = { loads.incrementAndGet(); new NodeSetImpl() }
+
+        when:
+        def first = cache.get("key", 60000, "fp1", loader)
+        def second = cache.get("key", 60000, "fp2", loader)
+
+        then:
+        loads.get() == 2
+        !first.is(second)
+    }
+
+    void "expired nodes are served while refreshed in the background"() {
+        given:
+        def now = new AtomicLong(1000)
+        def cache = new AnsibleInventoryCache({ now.get() })
+        def refreshed = new CountDownLatch(1)
+        def loads = new AtomicInteger()
+        def stale = new NodeSetImpl()
+        def fresh = new NodeSetImpl()
+        AnsibleInventoryCache.Loader loader = {
+            if (loads.incrementAndGet() == 1) {
+                return stale
+            }
+            refreshed.countDown()
+            return fresh
+        }
+
+        when:
+        cache.get("key", 1000, "fp", loader)
+        now.addAndGet(5000)
+        def served = cache.get("key", 1000, "fp", loader)
+
+        then:
+        served.is(stale)
+        refreshed.await(5, TimeUnit.SECONDS)
+
+        when:
+        def result = null
+        for (int i = 0; i < 50 && !(result = cache.get("key", 60000000, "fp", loader)).is(fresh); i++) {
+            Thread.sleep(100)
+        }
+
+        then:
+        result.is(fresh)
+    }
+
+    void "fingerprint changes with file content but not with mtime alone"() {
+        given:
+        def cache = new AnsibleInventoryCache()
+        def inventory = tempDir.resolve("hosts.ini")
+        Files.writeString(inventory, "[web]\nhost1\n")
+
+        when:
+        def original = cache.fingerprint(inventory.toString())
+        Files.setLastModifiedTime(inventory, FileTime.fromMillis(System.currentTimeMillis() + 60000))
+        def touched = cache.fingerprint(inventory.toString())
+        Files.writeString(inventory, "[web]\nhost1\nhost2\n")
+        def changed = cache.fingerprint(inventory.toString())
+
+        then:
+        original == touched
+        original != changed
+    }
+
+    void "entries of keys no longer used are dropped"() {
+        given:
+        def now = new AtomicLong(1000)
+        def cache = new AnsibleInventoryCache({ now.get() })
+        def loads = new AtomicInteger()
+        AnsibleInventoryCache.Loader loader = { loads.incrementAndGet(); new NodeSetImpl() }
+
+        when: "the configuration of the source changed, giving it a new key"
+        cache.get("project:config1", 60000, "fp", loader)
+        now.addAndGet(TimeUnit.MINUTES.toMillis(30))
+        cache.get("project:config2", 60000, "fp", loader)
+        now.addAndGet(TimeUnit.MINUTES.toMillis(31))
+        cache.get("project:config2", 60000, "fp", loader)
+
+        then:
+        cache.size() == 1
+        loads.get() == 2
+
+        when:
+        cache.get("project:config1", 60000, "fp", loader)
+
+        then:
+        loads.get() == 3
+    }
+
+    void "fingerprint keeps inline host lists as text"() {
+        expect:
+        new AnsibleInventoryCache().fingerprint("host1,host2", null) == "host1\nhost2\n"
+    }
+}
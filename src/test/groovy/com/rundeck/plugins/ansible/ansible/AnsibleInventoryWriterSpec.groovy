@@ -0,0 +1,99 @@
+package com.rundeck.plugins.ansible.ansible
+
+import com.dtolabs.rundeck.core.common.INodeEntry
+import com.dtolabs.rundeck.core.plugins.configuration.ConfigurationException
+import com.google.gson.Gson
+import com.google.gson.JsonObject
+import com.google.gson.JsonParser
+import spock.lang.Specification
+import spock.lang.TempDir
+
+class AnsibleInventoryWriterSpec extends Specification {
+
+    @TempDir
+    File tempDir
+
+    private static JsonObject write(Map<String, Map<String, String>> hosts) {
+        StringWriter out = new StringWriter()
+        AnsibleInventoryWriter writer = new AnsibleInventoryWriter(out)
+        hosts.each { name, attributes -> writer.addHost(name, name + ".example.com", attributes) }
+        writer.close()
+        return JsonParser.parseString(out.toString()).getAsJsonObject()
+    }
+
+    def "attribute values are written with their json type"() {
+        when:
+        JsonObject vars = write([web1: [value: value]]).getAsJsonObject("all").getAsJsonObject("hosts").getAsJsonObject("web1")
+
+        then:
+        vars.get("ansible_host").getAsString() == "web1.example.com"
+        vars.has("value") == (expected != null)
+        expected == null || vars.get("value").toString() == expected
+
+        where:
+        value            | expected
+        "plain"          | '"plain"'
+        "a b: c"         | '"a b: c"'
+        "10.0.0.1"       | '"10.0.0.1"'
+        "01"             | '"01"'
+        "42"             | '42'
+        "-1.5e3"         | '-1.5e3'
+        "true"           | 'true'
+        "False"          | 'false'
+        '{"a": [1, 2]}'  | '{"a":[1,2]}'
+        "[1, 2]"         | '[1,2]'
+        '"quoted"'       | '"quoted"'
+        "{not json"      | '"{not json"'
+        "null"           | null
+        ""               | null
+    }
+
+    def "the streamed inventory is the same as the serialized one"() {
+        given:
+        Map<String, Map<String, String>> hosts = [
+                web1: [osFamily: "unix", tags: "web,Prod:eu", port: "22", meta: '{"rack": 4}', groups: "x", ansible_host: "other"],
+                web2: [osFamily: "unix", tags: "web", description: "front end", hostvars: "x"],
+                win1: [osFamily: "windows", enabled: "true", empty: ""]
+        ]
+        AnsibleInventory inventory = new AnsibleInventory()
+        hosts.each { name, attributes -> inventory.addHost(name, name + ".example.com", new HashMap<>(attributes)) }
+
+        expect:
+        write(hosts) == JsonParser.parseString(new Gson().toJson(inventory))
+    }
+
+    def "the builder streams the nodes to the inventory file"() {
+        given:
+        List<INodeEntry> nodes = (1..3).collect { i ->
+            Mock(INodeEntry) {
+                getNodename() >> "node" + i
+                getHostname() >> "10.0.0." + i
+                getAttributes() >> [nodename: "node" + i, tags: "db", name: "\u00fcn\u00efcode"]
+            }
+        }
+
+        when:
+        File file = new AnsibleInventoryBuilder(nodes, tempDir.absolutePath).buildInventory()
+        JsonObject all = JsonParser.parseString(file.getText("UTF-8")).getAsJsonObject().getAsJsonObject("all")
+
+        then:
+        all.getAsJsonObject("hosts").keySet() == ["node1", "node2", "node3"] as Set
+        all.getAsJsonObject("hosts").getAsJsonObject("node2").get("name").getAsString() == "\u00fcn\u00efcode"
+        all.getAsJsonObject("children").getAsJsonObject("db").getAsJsonObject("hosts").keySet() == ["node1", "node2", "node3"] as Set
+    }
+
+    def "a node without hostname leaves no inventory behind"() {
+        given:
+        INodeEntry node = Mock(INodeEntry) {
+            getNodename() >> "node1"
+            getAttributes() >> [nodename: "node1"]
+        }
+
+        when:
+        new AnsibleInventoryBuilder([node], tempDir.absolutePath).buildInventory()
+
+        then:
+        thrown(ConfigurationException)
+        tempDir.list().length == 0
+    }
+}
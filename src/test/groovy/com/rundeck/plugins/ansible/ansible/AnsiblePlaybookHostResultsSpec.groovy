@@ -0,0 +1,85 @@
+package com.rundeck.plugins.ansible.ansible
+
+import com.rundeck.plugins.ansible.util.AnsibleEventParser
+import spock.lang.Specification
+
+class AnsiblePlaybookHostResultsSpec extends Specification {
+
+    private static Map<String, AnsibleHostResult> results(List<String> lines) {
+        AnsiblePlaybookHostResults results = new AnsiblePlaybookHostResults()
+        lines.each { results.event(AnsibleEventParser.parse(it)) }
+        return results.results
+    }
+
+    def "each host gets the outcome of its play recap"() {
+        when:
+        Map<String, AnsibleHostResult> results = results([
+                'RUNDECK_EVENT {"event": "play_start", "play": "deploy", "task": null}',
+                'RUNDECK_EVENT {"event": "task_start", "play": "deploy", "task": "copy"}',
+                'RUNDECK_EVENT {"event": "host_changed", "play": "deploy", "task": "copy", "host": "web1", "result": {}}',
+                'RUNDECK_EVENT {"event": "host_failed", "play": "deploy", "task": "copy", "host": "web2", "result": {"msg": "disk full"}}',
+                'RUNDECK_EVENT {"event": "host_unreachable", "play": "deploy", "task": "copy", "host": "web3", "result": {"msg": "timed out"}}',
+                'RUNDECK_EVENT {"event": "host_failed", "play": "deploy", "task": "copy", "host": "web4", "ignore_errors": true, "result": {"msg": "ignored"}}',
+                'RUNDECK_EVENT {"event": "recap", "play": "deploy", "task": null, "host": "web1", "stats": {"ok": 1, "changed": 1, "failures": 0, "unreachable": 0}}',
+                'RUNDECK_EVENT {"event": "recap", "play": "deploy", "task": null, "host": "web2", "stats": {"ok": 0, "changed": 0, "failures": 1, "unreachable": 0}}',
+                'RUNDECK_EVENT {"event": "recap", "play": "deploy", "task": null, "host": "web3", "stats": {"ok": 0, "changed": 0, "failures": 0, "unreachable": 1}}',
+                'RUNDECK_EVENT {"event": "recap", "play": "deploy", "task": null, "host": "web4", "stats": {"ok": 0, "changed": 0, "failures": 0, "unreachable": 0, "ignored": 1}}'
+        ])
+
+        then:
+        results.keySet() as List == ["web1", "web2", "web3", "web4"]
+
+        results.web1.success
+        results.web1.changed
+        results.web1.stdout == "changed: [web1] copy\nweb1 : ok=1 changed=1 unreachable=0 failed=0 skipped=0 rescued=0 ignored=0"
+
+        !results.web2.success
+        results.web2.failed
+        results.web2.msg == "Task 'copy' failed: disk full"
+
+        !results.web3.success
+        results.web3.unreachable
+        results.web3.msg == "host unreachable: timed out"
+
+        results.web4.success
+        results.web4.msg == null
+        results.web4.stdout.startsWith("failed: [web4] copy (ignored)")
+    }
+
+    def "a rescued failure does not fail the host"() {
+        when:
+        Map<String, AnsibleHostResult> results = results([
+                'RUNDECK_EVENT {"event": "host_failed", "play": "deploy", "task": "try", "host": "web1", "result": {"msg": "boom"}}',
+                'RUNDECK_EVENT {"event": "host_ok", "play": "deploy", "task": "rescue", "host": "web1", "result": {}}',
+                'RUNDECK_EVENT {"event": "recap", "play": "deploy", "task": null, "host": "web1", "stats": {"ok": 1, "failures": 0, "unreachable": 0, "rescued": 1}}'
+        ])
+
+        then:
+        results.web1.success
+        results.web1.msg == null
+    }
+
+    def "a host failing after a rescued failure reports the failure that failed it"() {
+        when:
+        Map<String, AnsibleHostResult> results = results([
+                'RUNDECK_EVENT {"event": "host_failed", "play": "deploy", "task": "try", "host": "web1", "result": {"msg": "boom"}}',
+                'RUNDECK_EVENT {"event": "host_ok", "play": "deploy", "task": "rescue", "host": "web1", "result": {}}',
+                'RUNDECK_EVENT {"event": "host_failed", "play": "deploy", "task": "restart", "host": "web1", "result": {"msg": "service not found"}}',
+                'RUNDECK_EVENT {"event": "recap", "play": "deploy", "task": null, "host": "web1", "stats": {"ok": 1, "failures": 1, "unreachable": 0, "rescued": 1}}'
+        ])
+
+        then:
+        results.web1.failed
+        results.web1.msg == "Task 'restart' failed: service not found"
+    }
+
+    def "hosts without a recap have no result"() {
+        when:
+        Map<String, AnsibleHostResult> results = results([
+                'RUNDECK_EVENT {"event": "host_ok", "play": "deploy", "task": "copy", "host": "web1", "result": {}}'
+        ])
+
+        then:
+        results.isEmpty()
+    }
+}
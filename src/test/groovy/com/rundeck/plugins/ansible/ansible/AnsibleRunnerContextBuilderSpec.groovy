@@ -308,6 +308,50 @@ class AnsibleRunnerContextBuilderSpec extends Specification {
         baseTmpDir.listFiles({ f -> f.name.startsWith("ansible-exec-55555-builder-") } as FileFilter).length == 0
     }
 
+    def "builders of the same execution share one generated inventory"() {
+        given:
+        def nodeSet = Mock(INodeSet)
+        nodeSet.getNodes() >> ["web1", "web2"].collect { name ->
+            Mock(INodeEntry) {
+                getNodename() >> name
+                getHostname() >> name + ".example.com"
+                getAttributes() >> [nodename: name]
+            }
+        }
+        def propertyLookup = Mock(PropertyLookup)
+        propertyLookup.getProperty("framework.tmp.dir") >> baseTmpDir.absolutePath
+        def framework = Mock(Framework)
+        framework.getPropertyLookup() >> propertyLookup
+        def execContext = Mock(ExecutionContext)
+        execContext.getDataContext() >> ['job': ['execid': '7777']]
+        execContext.getFrameworkProject() >> 'test-project'
+        def jobConf = [(AnsibleDescribable.ANSIBLE_GENERATE_INVENTORY): 'true'] as Map<String, Object>
+
+        def builderA = new AnsibleRunnerContextBuilder(execContext, framework, nodeSet, jobConf)
+        def builderB = new AnsibleRunnerContextBuilder(execContext, framework, nodeSet, jobConf)
+
+        when:
+        File inventoryA = new File(builderA.getInventory())
+        File inventoryB = new File(builderB.getInventory())
+
+        then: "each builder gets the inventory in its own directory, generated once"
+        inventoryA.parentFile.absolutePath == builderA.getExecutionSpecificTmpDir()
+        inventoryB.parentFile.absolutePath == builderB.getExecutionSpecificTmpDir()
+        inventoryA.text == inventoryB.text
+        inventoryA.text.contains("web2.example.com")
+        baseTmpDir.listFiles({ f -> f.name.startsWith("ansible-exec-7777-inventory-") } as FileFilter).length == 1
+
+        when:
+        builderA.cleanupTempFiles()
+
+        then: "the cleanup of one builder leaves the inventory of the other"
+        !inventoryA.exists()
+        inventoryB.exists()
+
+        cleanup:
+        builderB?.cleanupTempFiles()
+    }
+
     // -------------------------------------------------------------------------
     // getBaseDir() — property resolution hierarchy (RUN-4228)
     // Priority: jobConf > node attribute > project property > framework property
@@ -505,4 +549,33 @@ class AnsibleRunnerContextBuilderSpec extends Specification {
         workDir.exists()
         workDir.name.startsWith("ansible-exec-debug-123-builder-")
     }
+
+    def "properties are resolved once per node and data references expanded once"() {
+        given:
+        def framework = Mock(Framework)
+        def execContext = Mock(ExecutionContext) {
+            getFrameworkProject() >> 'test-project'
+        }
+        def node = Mock(INodeEntry) {
+            getNodename() >> 'web1'
+            getAttributes() >> [:]
+        }
+        def jobConf = [(AnsibleDescribable.ANSIBLE_SSH_USER): 'deploy-${job.project}']
+        def builder = new AnsibleRunnerContextBuilder(node, execContext, framework, jobConf)
+
+        when:
+        def users = (1..3).collect { builder.getSshUser() }
+        def become = (1..3).collect { builder.getBecome() }
+        def authTypes = (1..3).collect { builder.getSshAuthenticationType(node) }
+
+        then:
+        users == ['deploy-my-project'] * 3
+        become == [null] * 3
+        authTypes == [AnsibleDescribable.AuthenticationType.privateKey] * 3
+        1 * execContext.getDataContext() >> ['job': ['project': 'my-project']]
+        1 * framework.hasProjectProperty(AnsibleDescribable.PROJ_PROP_PREFIX + AnsibleDescribable.ANSIBLE_BECOME, 'test-project') >> false
+        1 * framework.hasProperty(AnsibleDescribable.FWK_PROP_PREFIX + AnsibleDescribable.ANSIBLE_BECOME) >> false
+        1 * framework.hasProjectProperty(AnsibleDescribable.PROJ_PROP_PREFIX + AnsibleDescribable.ANSIBLE_SSH_AUTH_TYPE, 'test-project') >> false
+        1 * framework.hasProperty(AnsibleDescribable.FWK_PROP_PREFIX + AnsibleDescribable.ANSIBLE_SSH_AUTH_TYPE) >> false
+    }
 }
@@ -1,5 +1,8 @@
 package com.rundeck.plugins.ansible.ansible
 
+import com.rundeck.plugins.ansible.util.AnsibleEvent
+import com.rundeck.plugins.ansible.util.AnsibleEventParser
+import com.rundeck.plugins.ansible.util.Listener
 import com.rundeck.plugins.ansible.util.ProcessExecutor
 import spock.lang.Specification
 
@@ -596,6 +599,246 @@ class AnsibleRunnerSpec extends Specification{
         capturedEnv.get("ANSIBLE_CALLBACK_TREE_DIR") == "/tmp/custom-tree"
     }
 
+    def "adhoc: host results are read from a tree directory of its own, deleted after the run"() {
+        given:
+        def runnerBuilder = AnsibleRunner.adHoc("ansible.builtin.command", "uptime")
+                .inventory("/tmp/rdk-inv.ini")
+                .limits(["target1", "target2"])
+                .ignoreErrors(true)
+                .customTmpDirPath(System.getProperty("java.io.tmpdir"))
+
+        File treeDir = null
+
+        def process = Mock(Process) {
+            waitFor() >> 2
+            getInputStream() >> new ByteArrayInputStream(new byte[0])
+            getOutputStream() >> new ByteArrayOutputStream()
+            getErrorStream() >> new ByteArrayInputStream(new byte[0])
+            destroy() >> { }
+        }
+        def processExecutor = Mock(ProcessExecutor) {
+            run() >> {
+                // what the tree callback leaves once the command ran on the hosts
+                new File(treeDir, "target1").text = '{"rc": 0, "changed": true, "stdout": "up 3 days", "invocation": {"module_args": {}}}'
+                new File(treeDir, "target2").text = '{"unreachable": true, "msg": "Connection timed out"}'
+                return process
+            }
+        }
+
+        ProcessExecutor.ProcessExecutorBuilder processBuilder = Mock(ProcessExecutor.ProcessExecutorBuilder)
+        processBuilder.build() >> processExecutor
+        processBuilder.procArgs(_ as List) >> { List a -> return processBuilder }
+        processBuilder.environmentVariables(_ as Map<String,String>) >> { Map<String,String> e ->
+            treeDir = new File(e.get("ANSIBLE_CALLBACK_TREE_DIR"))
+            return processBuilder
+        }
+        processBuilder.baseDirectory(_ as File) >> { File f -> return processBuilder }
+        processBuilder.stdinVariables(_ as List) >> { List v -> return processBuilder }
+        processBuilder.promptStdinLogFile(_ as File) >> { File f -> return processBuilder }
+        processBuilder.debug(_ as boolean) >> { boolean d -> return processBuilder }
+
+        runnerBuilder.processExecutorBuilder(processBuilder)
+        def runner = runnerBuilder.build()
+
+        when:
+        def rc = runner.run()
+
+        then:
+        rc == 2
+        treeDir.name.startsWith("ansible-tree")
+        !treeDir.exists()
+        runner.hostResults.keySet() == ["target1", "target2"] as Set
+        runner.hostResults["target1"].success
+        runner.hostResults["target1"].changed
+        runner.hostResults["target1"].stdoutSize == 9
+        runner.hostResults["target1"].stdout == null
+        !runner.hostResults["target2"].success
+        runner.hostResults["target2"].unreachable
+        runner.hostResults["target2"].msg == "Connection timed out"
+    }
+
+    def "forks: --forks is sized from the target hosts unless configured by the user"() {
+        given:
+        def config = File.createTempFile("ansible", ".cfg")
+        config.deleteOnExit()
+        config.text = configText
+        def runnerBuilder = AnsibleRunner.playbookPath("site.yml")
+                .limits(["web1", "web2", "web3"])
+                .forksBudget(64)
+                .configFile(config.absolutePath)
+                .customTmpDirPath(System.getProperty("java.io.tmpdir"))
+        if (extraParams) {
+            runnerBuilder.extraParams(extraParams)
+        }
+        if (options) {
+            runnerBuilder.options(options)
+        }
+
+        def process = Mock(Process) {
+            waitFor() >> 0
+            getInputStream() >> new ByteArrayInputStream(new byte[0])
+            getOutputStream() >> new ByteArrayOutputStream()
+            getErrorStream() >> new ByteArrayInputStream(new byte[0])
+        }
+        def processExecutor = Mock(ProcessExecutor) {
+            run() >> process
+        }
+
+        List<String> capturedArgs = null
+        ProcessExecutor.ProcessExecutorBuilder processBuilder = Mock(ProcessExecutor.ProcessExecutorBuilder)
+        processBuilder.build() >> processExecutor
+        processBuilder.procArgs(_ as List) >> { List a -> capturedArgs = a.flatten().collect { it.toString() }; return processBuilder }
+        processBuilder.environmentVariables(_ as Map) >> { Map e -> return processBuilder }
+        processBuilder.baseDirectory(_ as File) >> { File f -> return processBuilder }
+        processBuilder.stdinVariables(_ as List) >> { List v -> return processBuilder }
+        processBuilder.promptStdinLogFile(_ as File) >> { File f -> return processBuilder }
+        processBuilder.debug(_ as boolean) >> { boolean d -> return processBuilder }
+        runnerBuilder.processExecutorBuilder(processBuilder)
+
+        when:
+        def runner = runnerBuilder.build()
+        runner.run()
+
+        then:
+        capturedArgs.findAll { it.startsWith("--forks=") } == forksArgs
+        runner.reservedForks == 0
+
+        where:
+        extraParams   | options                 | configText                     | forksArgs
+        null          | null                    | "[defaults]\n"                 | ["--forks=3"]
+        "--forks 20"  | null                    | "[defaults]\n"                 | []
+        "-f20"        | null                    | "[defaults]\n"                 | []
+        null          | [ANSIBLE_FORKS: "20"]   | "[defaults]\n"                 | []
+        null          | null                    | "[defaults]\nforks = 20\n"     | []
+    }
+
+    def "forks: target hosts are counted from the limit when it lists host names"() {
+        expect:
+        AnsibleRunner.playbookPath("site.yml").limits(limits).forkTargets(forkTargets).build().countTargets() == targets
+
+        where:
+        limits                  | forkTargets | targets
+        ["web1", "web2"]        | 10          | 2
+        ["web1,web2,web3"]      | 10          | 3
+        ["web*"]                | 10          | 10
+        ["webservers:!web1"]    | 10          | 10
+        ["web*"]                | null        | 0
+        null                    | 10          | 10
+    }
+
+    def "ssh multiplexing: when enabled, runs of an execution share a ControlPath directory unless ssh is configured by the user"() {
+        given:
+        def config = File.createTempFile("ansible", ".cfg")
+        config.deleteOnExit()
+        config.text = configText
+        def runnerBuilder = AnsibleRunner.playbookPath("site.yml")
+                .executionId(executionId)
+                .sshControlPersist(persist)
+                .configFile(config.absolutePath)
+                .customTmpDirPath(System.getProperty("java.io.tmpdir"))
+        if (options) {
+            runnerBuilder.options(options)
+        }
+
+        def process = Mock(Process) {
+            waitFor() >> 0
+            getInputStream() >> new ByteArrayInputStream(new byte[0])
+            getOutputStream() >> new ByteArrayOutputStream()
+            getErrorStream() >> new ByteArrayInputStream(new byte[0])
+        }
+        def processExecutor = Mock(ProcessExecutor) {
+            run() >> process
+        }
+
+        Map<String, String> capturedEnv = null
+        ProcessExecutor.ProcessExecutorBuilder processBuilder = Mock(ProcessExecutor.ProcessExecutorBuilder)
+        processBuilder.build() >> processExecutor
+        processBuilder.environmentVariables(_ as Map) >> { Map e -> capturedEnv = new HashMap<>(e); return processBuilder }
+        runnerBuilder.processExecutorBuilder(processBuilder)
+
+        when:
+        def runner = runnerBuilder.build()
+        runner.run()
+
+        then:
+        capturedEnv.get("ANSIBLE_SSH_ARGS") == sshArgs
+        (capturedEnv.get("ANSIBLE_SSH_CONTROL_PATH_DIR") == new File(System.getProperty("java.io.tmpdir"), "ansible-cp-" + executionId).absolutePath) == shared
+        runner.sshControlPathDir == null
+
+        cleanup:
+        new File(System.getProperty("java.io.tmpdir"), "ansible-cp-" + executionId).deleteDir()
+
+        where:
+        executionId     | persist | options                                  | configText                                      | sshArgs                                                  | shared
+        "cp-spec-1"     | 120     | null                                     | "[defaults]\n"                                  | "-C -o ControlMaster=auto -o ControlPersist=120s"        | true
+        null            | 120     | null                                     | "[defaults]\n"                                  | null                                                     | false
+        "cp-spec-2"     | 120     | [ANSIBLE_SSH_ARGS: "-o ControlMaster=no"] | "[defaults]\n"                                  | "-o ControlMaster=no"                                    | false
+        "cp-spec-3"     | 120     | null                                     | "[ssh_connection]\nssh_args = -o ForwardAgent=yes\n" | null                                               | false
+        "cp-spec-4"     | 120     | null                                     | "[ssh_connection]\ncontrol_path_dir = /tmp/cp\n" | null                                                   | false
+        "cp-spec-5"     | 0       | null                                     | "[defaults]\n"                                  | null                                                     | false
+        "cp-spec-6"     | null    | null                                     | "[defaults]\n"                                  | null                                                     | false
+    }
+
+    def "events: the rundeck_events callback is used and its lines are handed to the event handler"() {
+        given:
+        String stdout = 'PLAY [all] ****\n' +
+                'RUNDECK_EVENT {"event": "play_start", "play": "all", "task": null}\n' +
+                'ok: [node1]\n' +
+                'RUNDECK_EVENT {"event": "host_ok", "play": "all", "task": "ping", "host": "node1", "result": {"ping": "pong"}}\n'
+        List<String> lines = []
+        List<AnsibleEvent> events = []
+
+        def runnerBuilder = AnsibleRunner.adHoc("ansible.builtin.ping", null)
+                .inventory("/tmp/rdk-inv.ini")
+                .options(["ANSIBLE_CALLBACK_PLUGINS": "/opt/callbacks"])
+                .listener({ String line -> lines << line } as Listener)
+                .eventHandler({ AnsibleEvent event -> events << event } as AnsibleEventParser.EventHandler)
+                .customTmpDirPath("/tmp")
+
+        def process = Mock(Process) {
+            waitFor() >> 0
+            getInputStream() >> new ByteArrayInputStream(stdout.getBytes("UTF-8"))
+            getOutputStream() >> new ByteArrayOutputStream()
+            getErrorStream() >> new ByteArrayInputStream(new byte[0])
+        }
+        def processExecutor = Mock(ProcessExecutor) {
+            run() >> process
+        }
+
+        Map<String,String> capturedEnv = null
+        String callbackPy = null
+
+        def processBuilder = Mock(ProcessExecutor.ProcessExecutorBuilder)
+        processBuilder.build() >> processExecutor
+        processBuilder.procArgs(_ as List<String>) >> { List<String> a -> return processBuilder }
+        processBuilder.environmentVariables(_ as Map<String,String>) >> { Map<String,String> e ->
+            capturedEnv = new HashMap<>(e)
+            callbackPy = new File(e.get("ANSIBLE_CALLBACK_PLUGINS").split(File.pathSeparator)[0], "rundeck_events.py").text
+            return processBuilder
+        }
+        processBuilder.baseDirectory(_ as File) >> { File f -> return processBuilder }
+        processBuilder.stdinVariables(_ as List) >> { List v -> return processBuilder }
+        processBuilder.promptStdinLogFile(_ as File) >> { File f -> return processBuilder }
+        processBuilder.debug(_ as boolean) >> { boolean d -> return processBuilder }
+
+        runnerBuilder.processExecutorBuilder(processBuilder)
+
+        when:
+        def rc = runnerBuilder.build().run()
+
+        then:
+        rc == 0
+        capturedEnv.get("ANSIBLE_STDOUT_CALLBACK") == "rundeck_events"
+        capturedEnv.get("ANSIBLE_CALLBACK_PLUGINS").endsWith(File.pathSeparator + "/opt/callbacks")
+        callbackPy.contains("CALLBACK_NAME = 'rundeck_events'")
+        !new File(capturedEnv.get("ANSIBLE_CALLBACK_PLUGINS").split(File.pathSeparator)[0]).exists()
+
+        lines == ["PLAY [all] ****", "ok: [node1]"]
+        events*.type == [AnsibleEvent.Type.PLAY_START, AnsibleEvent.Type.HOST_OK]
+        events[1].host == "node1"
+        events[1].result.get("ping").getAsString() == "pong"
+    }
+
 
     def "escapeYamlKey: should quote keys with special characters"() {
         given:
@@ -1022,6 +1265,120 @@ class AnsibleRunnerSpec extends Specification{
         2 * ansibleVault.encryptVariable(_, _) >> "!vault | value"
     }
 
+    def "node private keys: nodes sharing a key share its temporary file"() {
+        given:
+        def runner = AnsibleRunner.playbookPath("site.yml").customTmpDirPath(System.getProperty("java.io.tmpdir")).build()
+        runner.tempNodePrivateKeyFiles = []
+        runner.nodePrivateKeyFiles = [:]
+        def keys = ["key-a", "key-b", "key-c"]
+
+        when:
+        Map<String, File> files = (1..30).collectEntries { ["node" + it, runner.nodePrivateKeyFile("node" + it, keys[it % 3])] }
+
+        then:
+        files.values().toSet().size() == 3
+        runner.tempNodePrivateKeyFiles.size() == 3
+        files["node1"].is(files["node4"])
+        files["node1"].text == "key-b"
+        files["node3"].text == "key-a"
+        files["node1"].name.contains("id_rsa_node_node1")
+
+        cleanup:
+        runner.tempNodePrivateKeyFiles*.delete()
+    }
+
+    def "node auth host_vars: each node gets its own host_vars file, without templated extra vars"() {
+        given:
+        def inventoryDir = File.createTempDir("ansible-inventory-", "")
+        def inventory = new File(inventoryDir, "hosts.ini")
+        inventory.text = "node1\nnode2\n"
+        def runnerBuilder = AnsibleRunner.playbookPath("site.yml")
+                .inventory(inventory.absolutePath)
+                .customTmpDirPath(System.getProperty("java.io.tmpdir"))
+                .addNodeAuthToInventory(true)
+                .nodesAuthHostVars(true)
+                .nodesAuthentication([
+                        node1: [ansible_user: "admin", ansible_password: "secret1"],
+                        node2: [ansible_user: "deploy", ansible_ssh_private_key: "key"]
+                ])
+
+        Map<String, String> hostVars = [:]
+        def process = Mock(Process) {
+            waitFor() >> {
+                new File(inventoryDir, "host_vars").eachFile { hostVars[it.name] = it.text }
+                return 0
+            }
+            getInputStream() >> new ByteArrayInputStream(new byte[0])
+            getOutputStream() >> new ByteArrayOutputStream()
+            getErrorStream() >> new ByteArrayInputStream(new byte[0])
+        }
+        def processExecutor = Mock(ProcessExecutor) {
+            run() >> process
+        }
+        List capturedArgs = null
+        ProcessExecutor.ProcessExecutorBuilder processBuilder = Mock(ProcessExecutor.ProcessExecutorBuilder)
+        processBuilder.build() >> processExecutor
+        processBuilder.procArgs(_ as List) >> { List a -> capturedArgs = new ArrayList(a).flatten(); return processBuilder }
+
+        def ansibleVault = Mock(AnsibleVault) {
+            checkAnsibleVault() >> true
+            getVaultPasswordScriptFile() >> new File("vault-script-client.py")
+            encryptVariable("ansible_password", "secret1") >> "!vault |\n  \$ANSIBLE_VAULT;1.1;AES256\n  3133\n"
+        }
+        runnerBuilder.processExecutorBuilder(processBuilder)
+        runnerBuilder.ansibleVault(ansibleVault)
+
+        when:
+        def rc = runnerBuilder.build().run()
+
+        then:
+        rc == 0
+        hostVars.keySet() == ["node1.yaml", "node2.yaml"] as Set
+        hostVars["node1.yaml"] == "ansible_user: admin\nansible_password: !vault |\n  \$ANSIBLE_VAULT;1.1;AES256\n  3133\n"
+        hostVars["node2.yaml"].startsWith("ansible_user: deploy\nansible_ssh_private_key_file: ")
+        !capturedArgs.any { it.toString().contains("inventory_hostname") }
+        !new File(inventoryDir, "host_vars").exists()
+        !new File(inventoryDir, "group_vars").exists()
+
+        cleanup:
+        inventoryDir.deleteDir()
+    }
+
+    def "node auth host_vars: host_vars of the user are left alone"() {
+        given:
+        def inventoryDir = File.createTempDir("ansible-inventory-", "")
+        def userHostVars = new File(inventoryDir, "host_vars")
+        userHostVars.mkdir()
+        def runner = AnsibleRunner.playbookPath("site.yml")
+                .inventory(new File(inventoryDir, "hosts.ini").absolutePath)
+                .nodesAuthentication([node1: [ansible_user: "admin"]])
+                .build()
+
+        expect:
+        !runner.writeNodesAuthHostVars(["node1": "admin"], [:], [:])
+        userHostVars.list().length == 0
+        runner.hostVarsDir == null
+
+        cleanup:
+        inventoryDir.deleteDir()
+    }
+
+    def "node auth host_vars: node names that are not file names use the group_vars maps"() {
+        given:
+        def inventoryDir = File.createTempDir("ansible-inventory-", "")
+        def runner = AnsibleRunner.playbookPath("site.yml")
+                .inventory(new File(inventoryDir, "hosts.ini").absolutePath)
+                .nodesAuthentication(["web/1": [ansible_user: "admin"]])
+                .build()
+
+        expect:
+        !runner.writeNodesAuthHostVars(["web/1": "admin"], [:], [:])
+        !new File(inventoryDir, "host_vars").exists()
+
+        cleanup:
+        inventoryDir.deleteDir()
+    }
+
     def "node name sanitization: should sanitize node names with forward slashes for temp files"() {
         given:
         // Test case from real issue: node name with forward slashes
@@ -0,0 +1,119 @@
+package com.rundeck.plugins.ansible.ansible
+
+import com.dtolabs.rundeck.core.plugins.configuration.ConfigurationException
+import spock.lang.Specification
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+class AnsibleSecretCacheSpec extends Specification {
+
+    def "each storage path is read once by the steps of an execution"() {
+        given:
+        def cache = new AnsibleSecretCache(60000)
+        Map<String, AtomicInteger> reads = new ConcurrentHashMap<>()
+        AnsibleSecretCache.SecretReader reader = { String path ->
+            reads.computeIfAbsent(path, { new AtomicInteger() }).incrementAndGet()
+            Thread.sleep(5)
+            return "secret of " + path
+        } as AnsibleSecretCache.SecretReader
+        def pool = Executors.newFixedThreadPool(16)
+        def done = new CountDownLatch(200)
+
+        when:
+        List<String> values = Collections.synchronizedList([])
+        200.times { i ->
+            pool.submit {
+                try {
+                    // a builder per node, all of the same execution
+                    values << cache.forExecution("42").get("keys/node-" + (i % 3), reader)
+                } finally {
+                    done.countDown()
+                }
+            }
+        }
+        done.await(30, TimeUnit.SECONDS)
+
+        then:
+        values.size() == 200
+        values.toSet() == ["secret of keys/node-0", "secret of keys/node-1", "secret of keys/node-2"] as Set
+        reads.keySet() == ["keys/node-0", "keys/node-1", "keys/node-2"] as Set
+        reads.values()*.get() == [1, 1, 1]
+
+        cleanup:
+        pool.shutdownNow()
+    }
+
+    def "distinct paths are prefetched in parallel"() {
+        given:
+        def secrets = new AnsibleSecretCache(60000).forExecution("42")
+        def threads = Collections.synchronizedSet(new HashSet<String>())
+        AtomicInteger reads = new AtomicInteger()
+        AnsibleSecretCache.SecretReader reader = { String path ->
+            threads << Thread.currentThread().name
+            reads.incrementAndGet()
+            Thread.sleep(20)
+            return path.reverse()
+        } as AnsibleSecretCache.SecretReader
+
+        when:
+        secrets.prefetch((1..20).collect { "keys/k" + (it % 10) }, reader)
+
+        then:
+        reads.get() == 10
+        secrets.size() == 10
+        threads.size() > 1
+        threads.every { it.startsWith("ansible-secret-prefetch-") }
+
+        when:
+        def value = secrets.get("keys/k3", { throw new IllegalStateException("read again") } as AnsibleSecretCache.SecretReader)
+
+        then:
+        value == "3k/syek"
+    }
+
+    def "failed reads are not kept"() {
+        given:
+        def secrets = new AnsibleSecretCache(60000).forExecution("42")
+        int attempts = 0
+        AnsibleSecretCache.SecretReader reader = { String path ->
+            if (attempts++ == 0) {
+                throw new ConfigurationException("storage unavailable")
+            }
+            return "secret"
+        } as AnsibleSecretCache.SecretReader
+
+        when:
+        secrets.get("keys/k", reader)
+
+        then:
+        thrown(ConfigurationException)
+
+        when:
+        def value = secrets.get("keys/k", reader)
+
+        then:
+        value == "secret"
+        attempts == 2
+    }
+
+    def "secrets are only shared within an execution and dropped once unused"() {
+        given:
+        def cache = new AnsibleSecretCache(1000)
+
+        expect:
+        cache.forExecution("1").is(cache.forExecution("1"))
+        !cache.forExecution("1").is(cache.forExecution("2"))
+        !cache.forExecution(null).is(cache.forExecution(null))
+        cache.size() == 2
+
+        when:
+        cache.expire(System.currentTimeMillis() + 5000)
+
+        then:
+        cache.size() == 0
+    }
+}
@@ -0,0 +1,136 @@
+package com.rundeck.plugins.ansible.ansible
+
+import spock.lang.Specification
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+class AnsibleSshAgentsSpec extends Specification {
+
+    AtomicInteger started = new AtomicInteger()
+    AtomicInteger stopped = new AtomicInteger()
+
+    AnsibleSshAgents.AgentStarter starter = { Integer keysTimeToLive ->
+        int agent = started.incrementAndGet()
+        return [
+                getSocketPath: { "/tmp/ssh-agent-" + agent },
+                stopAgent    : { stopped.incrementAndGet() }
+        ] as AnsibleSshAgents.AgentProcess
+    } as AnsibleSshAgents.AgentStarter
+
+    def "the runs of an execution share one agent and add each key once"() {
+        given:
+        def agents = new AnsibleSshAgents(60000, starter)
+        AtomicInteger added = new AtomicInteger()
+        def pool = Executors.newFixedThreadPool(16)
+        def done = new CountDownLatch(100)
+        List<String> sockets = Collections.synchronizedList([])
+
+        when:
+        100.times { i ->
+            pool.submit {
+                try {
+                    // a run per node, all of the same execution
+                    def agent = agents.acquire("42", 0)
+                    try {
+                        agent.addKey("key-" + (i % 3), { String socketPath -> added.incrementAndGet() } as AnsibleSshAgents.KeyAdder)
+                        sockets << agent.socketPath
+                    } finally {
+                        agents.release(agent)
+                    }
+                } finally {
+                    done.countDown()
+                }
+            }
+        }
+        done.await(30, TimeUnit.SECONDS)
+
+        then:
+        sockets.size() == 100
+        sockets.toSet() == ["/tmp/ssh-agent-1"] as Set
+        started.get() == 1
+        added.get() == 3
+        stopped.get() == 0
+
+        cleanup:
+        pool.shutdownNow()
+    }
+
+    def "a key that failed to be added is added by the next run"() {
+        given:
+        def agent = new AnsibleSshAgents(60000, starter).acquire("42", 0)
+        int attempts = 0
+        def adder = { String socketPath ->
+            if (attempts++ == 0) {
+                throw new AnsibleException("ERROR: ssh-add returns with non zero code", AnsibleException.AnsibleFailureReason.AnsibleNonZero)
+            }
+        } as AnsibleSshAgents.KeyAdder
+
+        when:
+        agent.addKey("key", adder)
+
+        then:
+        thrown(AnsibleException)
+
+        when:
+        boolean first = agent.addKey("key", adder)
+        boolean second = agent.addKey("key", adder)
+
+        then:
+        first
+        !second
+        attempts == 2
+    }
+
+    def "the agent of an execution is stopped once unused for the time to live"() {
+        given:
+        def agents = new AnsibleSshAgents(1000, starter)
+        def agent = agents.acquire("42", 0)
+
+        when:
+        agents.expire(System.currentTimeMillis() + 5000)
+
+        then: "a run still uses it"
+        agents.size() == 1
+        stopped.get() == 0
+
+        when:
+        agents.release(agent)
+        agents.expire(System.currentTimeMillis())
+
+        then:
+        agents.size() == 1
+        stopped.get() == 0
+
+        when:
+        agents.expire(System.currentTimeMillis() + 5000)
+
+        then:
+        agents.size() == 0
+        stopped.get() == 1
+    }
+
+    def "agents without an execution or with expiring keys are stopped at the end of the run"() {
+        given:
+        def agents = new AnsibleSshAgents(60000, starter)
+
+        when:
+        def agent = agents.acquire(executionId, keysTimeToLive)
+        def other = agents.acquire(executionId, keysTimeToLive)
+        agents.release(agent)
+        agents.release(other)
+
+        then:
+        started.get() == 2
+        stopped.get() == 2
+        agents.size() == 0
+
+        where:
+        executionId | keysTimeToLive
+        null        | 0
+        ""          | 0
+        "42"        | 300
+    }
+}
@@ -0,0 +1,75 @@
+package com.rundeck.plugins.ansible.ansible
+
+import spock.lang.Specification
+import spock.lang.TempDir
+
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.attribute.PosixFilePermissions
+
+class AnsibleSshControlPathsSpec extends Specification {
+
+    @TempDir
+    Path tempDir
+
+    def "the runs of an execution share a private ControlPath directory"() {
+        given:
+        def controlPaths = new AnsibleSshControlPaths(1000)
+
+        when:
+        def first = controlPaths.acquire(tempDir.toString(), "42", 60)
+        def second = controlPaths.acquire(tempDir.toString(), "42", 60)
+        def other = controlPaths.acquire(tempDir.toString(), "43", 60)
+
+        then:
+        first == second
+        first == tempDir.resolve("ansible-cp-42")
+        other != first
+        PosixFilePermissions.toString(Files.getPosixFilePermissions(first)) == "rwx------"
+        controlPaths.size() == 2
+    }
+
+    def "a directory whose socket paths would be too long is created in the system temporary directory"() {
+        given:
+        def controlPaths = new AnsibleSshControlPaths(1000)
+        def longTmpDir = tempDir.resolve("x" * 100).toString()
+
+        when:
+        def directory = controlPaths.acquire(longTmpDir, "42", 60)
+
+        then:
+        directory == Path.of(System.getProperty("java.io.tmpdir"), "ansible-cp-42").toAbsolutePath()
+        Files.isDirectory(directory)
+
+        cleanup:
+        directory?.toFile()?.deleteDir()
+    }
+
+    def "the directory is deleted once its master connections are gone"() {
+        given:
+        def controlPaths = new AnsibleSshControlPaths(1000)
+        def directory = controlPaths.acquire(tempDir.toString(), "42", 2)
+        Files.writeString(directory.resolve("0123456789"), "")
+
+        when:
+        controlPaths.expire(System.currentTimeMillis() + 10000)
+
+        then: "a run still uses it"
+        Files.exists(directory)
+
+        when:
+        controlPaths.release("42")
+        controlPaths.expire(System.currentTimeMillis() + 2500)
+
+        then: "the master connections may still be persisting"
+        Files.exists(directory)
+        controlPaths.size() == 1
+
+        when:
+        controlPaths.expire(System.currentTimeMillis() + 3500)
+
+        then:
+        !Files.exists(directory)
+        controlPaths.size() == 0
+    }
+}
@@ -0,0 +1,65 @@
+package com.rundeck.plugins.ansible.ansible
+
+import spock.lang.Specification
+
+import java.nio.charset.StandardCharsets
+import java.security.GeneralSecurityException
+
+/**
+ * AnsibleVaultCipher test
+ */
+class AnsibleVaultCipherSpec extends Specification {
+
+    // encrypted with the cryptography primitives used by ansible's VaultAES256, salt = bytes 0 to 31
+    static final String VAULT_TEXT = '''$ANSIBLE_VAULT;1.2;AES256;internal-encrypt
+30303031303230333034303530363037303830393061306230633064306530663130313131323133
+3134313531363137313831393161316231633164316531660a313765643837316535636235373765
+61646265333038313435623565383032336361366436393830373361366538613933383236313139
+3562343065363833390a353461613965386233633633363261633237343539363634346532346634
+3362
+'''
+    static final String PASSWORD = 'pässword'
+    static final String PLAINTEXT = 'secret value é'
+
+    void "encryption matches the ansible vault format byte for byte"() {
+        given:
+        byte[] salt = (0..31) as byte[]
+
+        expect:
+        AnsibleVaultCipher.encrypt(PLAINTEXT.getBytes(StandardCharsets.UTF_8), PASSWORD, 'internal-encrypt', salt) == VAULT_TEXT
+    }
+
+    void "ansible vault text is decrypted"() {
+        expect:
+        AnsibleVaultCipher.decrypt(VAULT_TEXT, PASSWORD) == PLAINTEXT
+    }
+
+    void "indented vault text is decrypted"() {
+        expect:
+        AnsibleVaultCipher.decrypt(VAULT_TEXT.readLines().collect { '          ' + it }.join('\n'), PASSWORD) == PLAINTEXT
+    }
+
+    void "values round trip with a #version header"() {
+        when:
+        def vaultText = AnsibleVaultCipher.encrypt(value, 'password', vaultId)
+
+        then:
+        vaultText.startsWith(header + '\n')
+        vaultText.readLines().tail().every { it.length() <= 80 }
+        AnsibleVaultCipher.decrypt(vaultText, 'password') == value
+
+        where:
+        version | vaultId   | header                                | value
+        '1.1'   | null      | '$ANSIBLE_VAULT;1.1;AES256'           | ''
+        '1.1'   | 'default' | '$ANSIBLE_VAULT;1.1;AES256'           | 'sixteen bytes!!!'
+        '1.2'   | 'prod'    | '$ANSIBLE_VAULT;1.2;AES256;prod'      | 'multi\nline\nvalue' * 20
+    }
+
+    void "a wrong password fails the hmac check"() {
+        when:
+        AnsibleVaultCipher.decrypt(VAULT_TEXT, 'wrong')
+
+        then:
+        thrown(GeneralSecurityException)
+    }
+}
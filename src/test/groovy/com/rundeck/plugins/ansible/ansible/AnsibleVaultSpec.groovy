@@ -0,0 +1,32 @@
+package com.rundeck.plugins.ansible.ansible
+
+import spock.lang.Specification
+
+/**
+ * AnsibleVault test
+ */
+class AnsibleVaultSpec extends Specification {
+
+    void "vault text is formatted like the encrypt_string output"() {
+        when:
+        def formatted = AnsibleVault.formatVaultString('$ANSIBLE_VAULT;1.2;AES256;internal-encrypt\n3132\n3334\n')
+
+        then:
+        formatted == '!vault |\n' +
+                '          $ANSIBLE_VAULT;1.2;AES256;internal-encrypt\n' +
+                '          3132\n' +
+                '          3334\n'
+    }
+
+    void "a variable is encrypted in the jvm with the internal vault id"() {
+        given:
+        def vault = AnsibleVault.builder().masterPassword("master").build()
+
+        when:
+        def encrypted = vault.encryptVariable("ansible_password", "secret")
+
+        then:
+        encrypted.startsWith('!vault |\n          $ANSIBLE_VAULT;1.2;AES256;internal-encrypt\n')
+        AnsibleVaultCipher.decrypt(encrypted - '!vault |', "master") == "secret"
+    }
+}
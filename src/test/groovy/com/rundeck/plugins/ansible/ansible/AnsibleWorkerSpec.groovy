@@ -0,0 +1,206 @@
+package com.rundeck.plugins.ansible.ansible
+
+import com.rundeck.plugins.ansible.util.Listener
+import com.rundeck.plugins.ansible.util.VaultPrompt
+import spock.lang.Requires
+import spock.lang.Specification
+import spock.lang.TempDir
+
+@Requires({ new File('/usr/bin/python3').exists() || new File('/usr/local/bin/python3').exists() })
+class AnsibleWorkerSpec extends Specification {
+
+    // stands in for the ansible command line: prints what it was given
+    static final String ADHOC_CLI = '''\
+import os, sys
+class AdHocCLI(object):
+    @classmethod
+    def cli_executor(cls, args):
+        print("argv " + " ".join(args[1:]))
+        print("env " + os.environ.get("RD_TEST", "-"))
+        print("cwd " + os.getcwd())
+        if "stdin" in args:
+            print("stdin " + sys.stdin.read())
+        sys.exit(int(args[-1]) if args[-1].isdigit() else 0)
+'''
+
+    @TempDir
+    File tempDir
+
+    File ansible
+    Map<String, String> env
+
+    def setup() {
+        File cli = new File(tempDir, "py/ansible/cli")
+        cli.mkdirs()
+        new File(tempDir, "py/ansible/__init__.py").text = ""
+        new File(cli, "__init__.py").text = ""
+        new File(cli, "adhoc.py").text = ADHOC_CLI
+        new File(cli, "playbook.py").text = "class PlaybookCLI(object): pass\n"
+
+        ansible = new File(tempDir, "bin/ansible")
+        ansible.parentFile.mkdirs()
+        ansible.text = "#!/usr/bin/env python3\n"
+        ansible.setExecutable(true)
+
+        // a worker of its own for each feature
+        env = [PYTHONPATH: new File(tempDir, "py").absolutePath, ANSIBLE_CONFIG: tempDir.absolutePath]
+    }
+
+    def "commands run in the same warm worker"() {
+        given:
+        List<String> output = []
+        Listener listener = { String line -> output << line } as Listener
+        File cwd = new File(tempDir, "base")
+        cwd.mkdirs()
+
+        when:
+        AnsibleWorker worker = AnsibleWorker.get(tempDir.absolutePath, 60, [ansible.absolutePath], env + [RD_TEST: "one"], cwd)
+        int first = worker.run([ansible.absolutePath, "all", "-m", "ping", "3"], env + [RD_TEST: "one"], cwd, [], null, listener)
+        int second = worker.run([ansible.absolutePath, "all", "-m", "ping"], env + [RD_TEST: "two"], cwd, [], null, listener)
+        int third = worker.run([ansible.absolutePath, "all", "-m", "ping"], env, cwd, [], null, listener)
+
+        then: "each command sees its own environment only"
+        first == 3
+        second == 0
+        third == 0
+        output == [
+                "argv all -m ping 3", "env one", "cwd " + cwd.canonicalPath,
+                "argv all -m ping", "env two", "cwd " + cwd.canonicalPath,
+                "argv all -m ping", "env -", "cwd " + cwd.canonicalPath
+        ]
+        AnsibleWorker.get(tempDir.absolutePath, 60, [ansible.absolutePath], env, cwd).is(worker)
+
+        cleanup:
+        worker?.stop()
+    }
+
+    def "vault passwords are sent once prompted"() {
+        given:
+        List<String> output = []
+        File promptLog = new File(tempDir, "vault-prompt.log")
+        promptLog.text = ""
+        VaultPrompt prompt = VaultPrompt.builder().vaultId("None").vaultPassword("secret").build()
+        Thread.start {
+            Thread.sleep(200)
+            promptLog.text = "Enter Password (None):\n"
+        }
+
+        when:
+        AnsibleWorker worker = AnsibleWorker.get(tempDir.absolutePath, 60, [ansible.absolutePath], env, tempDir)
+        int rc = worker.run([ansible.absolutePath, "stdin"], env, tempDir, [prompt], promptLog,
+                { String line -> output << line } as Listener)
+
+        then:
+        rc == 0
+        output.contains("stdin secret" + (char) 3)
+
+        cleanup:
+        worker?.stop()
+    }
+
+    def "an idle worker exits and is started again"() {
+        when:
+        AnsibleWorker worker = AnsibleWorker.get(tempDir.absolutePath, 1, [ansible.absolutePath], env, tempDir)
+        long end = System.currentTimeMillis() + 10000
+        while (worker.alive && System.currentTimeMillis() < end) {
+            Thread.sleep(100)
+        }
+        AnsibleWorker restarted = AnsibleWorker.get(tempDir.absolutePath, 60, [ansible.absolutePath], env, tempDir)
+
+        then:
+        !worker.alive
+        !restarted.is(worker)
+        restarted.run([ansible.absolutePath, "4"], env, tempDir, [], null, { String line -> } as Listener) == 4
+
+        cleanup:
+        restarted?.stop()
+    }
+
+    def "workers are shared by the commands of the same configuration"() {
+        expect:
+        (AnsibleWorker.workerKey("ansible", first, null) == AnsibleWorker.workerKey("ansible", second, null)) == shared
+
+        where:
+        first                                        | second                                                             | shared
+        [ANSIBLE_HOST_KEY_CHECKING: "False"]         | [ANSIBLE_HOST_KEY_CHECKING: "False"]                               | true
+        [ANSIBLE_HOST_KEY_CHECKING: "False"]         | [ANSIBLE_HOST_KEY_CHECKING: "True"]                                | false
+        [ANSIBLE_CALLBACK_TREE_DIR: "/tmp/run1"]     | [ANSIBLE_CALLBACK_TREE_DIR: "/tmp/run2"]                           | true
+        [ANSIBLE_SSH_CONTROL_PATH_DIR: "/tmp/cp-1"]  | [ANSIBLE_SSH_CONTROL_PATH_DIR: "/tmp/cp-2"]                        | true
+        [LOG_PATH: "/tmp/vault-prompt1.log"]         | [LOG_PATH: "/tmp/vault-prompt2.log"]                               | true
+        [:]                                          | [ANSIBLE_STDOUT_CALLBACK: "yaml"]                                  | false
+    }
+
+    def "workers are started in the directory of the commands, which may hold an ansible.cfg"() {
+        given:
+        File base = new File(tempDir, "base")
+        base.mkdirs()
+        String key = AnsibleWorker.workerKey("ansible", [:], base)
+
+        expect:
+        AnsibleWorker.workerKey("ansible", [:], base) == key
+        AnsibleWorker.workerKey("ansible", [:], tempDir) != key
+        AnsibleWorker.workerKey("ansible", [:], null) != key
+
+        when: "an ansible.cfg is added to the directory"
+        new File(base, "ansible.cfg").text = "[defaults]\n"
+
+        then:
+        AnsibleWorker.workerKey("ansible", [:], base) != key
+    }
+
+    def "the command output is delivered in batches"() {
+        given:
+        List<List<String>> batches = []
+        boolean singleLines = false
+        Listener listener = new Listener() {
+            void output(String line) {
+                singleLines = true
+            }
+
+            void output(List<String> lines) {
+                batches << new ArrayList<>(lines)
+            }
+        }
+
+        when:
+        AnsibleWorker worker = AnsibleWorker.get(tempDir.absolutePath, 60, [ansible.absolutePath], env, tempDir)
+        int rc = worker.run([ansible.absolutePath, "all"], env, tempDir, [], null, listener)
+
+        then:
+        rc == 0
+        !singleLines
+        batches.flatten() == ["argv all", "env -", "cwd " + tempDir.canonicalPath]
+
+        cleanup:
+        worker?.stop()
+    }
+
+    def "the worker runs with the python interpreter of ansible"() {
+        given:
+        File command = new File(tempDir, "ansible-" + python.hashCode())
+        command.text = shebang + "\n"
+
+        expect:
+        AnsibleWorker.python(command.absolutePath) == python
+
+        where:
+        shebang                         | python
+        "#!/usr/bin/python3.11"         | "/usr/bin/python3.11"
+        "#!/opt/ansible/bin/python -I"  | "/opt/ansible/bin/python"
+        "#!/usr/bin/env python3"        | "python3"
+        "not a script"                  | "python3"
+    }
+
+    def "only ansible and ansible-playbook commands are run by the worker"() {
+        expect:
+        AnsibleWorker.supports([command]) == supported
+
+        where:
+        command                       | supported
+        "ansible"                     | true
+        "/usr/local/bin/ansible"      | true
+        "ansible-playbook"            | true
+        "/usr/bin/ansible-inventory"  | false
+        "ssh-add"                     | false
+    }
+}
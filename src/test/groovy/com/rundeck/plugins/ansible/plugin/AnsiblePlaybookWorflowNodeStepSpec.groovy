@@ -0,0 +1,81 @@
+package com.rundeck.plugins.ansible.plugin
+
+import com.dtolabs.rundeck.core.common.Framework
+import com.dtolabs.rundeck.core.common.INodeEntry
+import com.dtolabs.rundeck.core.common.INodeSet
+import com.dtolabs.rundeck.core.execution.ExecutionContext
+import com.dtolabs.rundeck.plugins.step.PluginStepContext
+import com.rundeck.plugins.ansible.ansible.AnsibleDescribable
+import spock.lang.Specification
+
+class AnsiblePlaybookWorflowNodeStepSpec extends Specification {
+
+    private PluginStepContext stepContext(int threadCount, List<String> nodeNames, String execId = "42", int stepNumber = 1) {
+        Mock(PluginStepContext) {
+            getExecutionContext() >> Mock(ExecutionContext) {
+                getThreadCount() >> threadCount
+                getFrameworkProject() >> "test-project"
+                getDataContext() >> (execId != null ? ['job': ['execid': execId]] : [:])
+            }
+            getFramework() >> Mock(Framework)
+            getNodes() >> Mock(INodeSet) {
+                getNodeNames() >> nodeNames
+            }
+            getStepNumber() >> stepNumber
+            getStepContext() >> [stepNumber]
+        }
+    }
+
+    private INodeEntry node(String name) {
+        Mock(INodeEntry) {
+            getNodename() >> name
+            getAttributes() >> [nodename: name]
+        }
+    }
+
+    private static Map<String, Object> configuration(String node, Map<String, Object> extra = [:]) {
+        [
+                (AnsibleDescribable.ANSIBLE_PLAYBOOK_PATH)           : "site.yml",
+                (AnsibleDescribable.ANSIBLE_PLAYBOOK_NODE_STEP_BATCH): "true",
+                (AnsibleDescribable.ANSIBLE_LIMIT)                   : node
+        ] + extra
+    }
+
+    def "the nodes of a parallel step share a batch"() {
+        given:
+        def plugin = new AnsiblePlaybookWorflowNodeStep()
+        def context = stepContext(4, ["web1", "web2"])
+
+        expect:
+        plugin.getBatchKey(context, configuration("web1"), node("web1")) != null
+        plugin.getBatchKey(context, configuration("web1"), node("web1")) ==
+                plugin.getBatchKey(context, configuration("web2"), node("web2"))
+    }
+
+    def "nodes resolving the step differently or of other steps do not share a batch"() {
+        given:
+        def plugin = new AnsiblePlaybookWorflowNodeStep()
+        def context = stepContext(4, ["web1", "web2"])
+        String key = plugin.getBatchKey(context, configuration("web1"), node("web1"))
+
+        expect:
+        key != plugin.getBatchKey(context, configuration("web2", [(AnsibleDescribable.ANSIBLE_EXTRA_VARS): "port: 81"]), node("web2"))
+        key != plugin.getBatchKey(stepContext(4, ["web1", "web2"], "42", 2), configuration("web2"), node("web2"))
+        key != plugin.getBatchKey(stepContext(4, ["web1", "web2"], "43"), configuration("web2"), node("web2"))
+    }
+
+    def "the playbook runs on its own node when it cannot be batched"() {
+        given:
+        def plugin = new AnsiblePlaybookWorflowNodeStep()
+
+        expect:
+        plugin.getBatchKey(stepContext(threadCount, nodeNames, execId), configuration("web1", conf), node("web1")) == null
+
+        where:
+        threadCount | nodeNames        | execId | conf
+        4           | ["web1", "web2"] | "42"   | [(AnsibleDescribable.ANSIBLE_PLAYBOOK_NODE_STEP_BATCH): "false"]
+        1           | ["web1", "web2"] | "42"   | [:]
+        4           | ["web1"]         | "42"   | [:]
+        4           | ["web1", "web2"] | null   | [:]
+    }
+}
@@ -3,17 +3,23 @@ package com.rundeck.plugins.ansible.plugin
 import com.dtolabs.rundeck.core.common.Framework
 import com.dtolabs.rundeck.core.common.INodeEntry
 import com.dtolabs.rundeck.core.common.INodeSet
+import com.dtolabs.rundeck.core.common.NodeSetImpl
 import com.dtolabs.rundeck.core.resources.ResourceModelSource
 import com.dtolabs.rundeck.core.resources.ResourceModelSourceException
 import com.dtolabs.rundeck.core.storage.keys.KeyStorageTree
 import com.dtolabs.rundeck.core.utils.IPropertyLookup
 import com.rundeck.plugins.ansible.ansible.AnsibleDescribable
 import com.rundeck.plugins.ansible.ansible.AnsibleInventoryList
+import com.rundeck.plugins.ansible.ansible.AnsibleRunner
+import com.rundeck.plugins.ansible.util.Listener
 import org.rundeck.app.spi.Services
 import org.yaml.snakeyaml.Yaml
 import org.yaml.snakeyaml.error.YAMLException
 import spock.lang.Specification
 
+import java.nio.file.Files
+import java.nio.file.Path
+
 import static com.rundeck.plugins.ansible.ansible.AnsibleInventoryList.AnsibleInventoryListBuilder
 
 /**
@@ -769,4 +775,343 @@ fake-cert
         node.getAttributes().get('custom_var') == 'custom_value'
     }
 
+    void "streaming yaml mode builds the same nodes and tags"() {
+        given:
+        Framework framework = Mock(Framework) {
+            getPropertyLookup() >> Mock(IPropertyLookup){
+                getProperty("framework.tmp.dir") >> '/tmp'
+            }
+            getBaseDir() >> new File('/tmp')
+        }
+        ResourceModelSource plugin = new AnsibleResourceModelSource(framework)
+        Properties config = new Properties()
+        config.put('project', 'project_1')
+        config.put(AnsibleDescribable.ANSIBLE_GATHER_FACTS, 'false')
+        config.put(AnsibleDescribable.ANSIBLE_IMPORT_INVENTORY_VARS, 'true')
+        config.put(AnsibleDescribable.ANSIBLE_YAML_STREAMING, 'true')
+        plugin.configure(config)
+
+        Services services = Mock(Services) {
+            getService(KeyStorageTree.class) >> Mock(KeyStorageTree)
+        }
+        plugin.setServices(services)
+
+        def ports = [[port: 22, protocol: 'tcp']]
+        def all = ['all': ['children': [
+                'db'  : ['children': ['postgres': ['hosts': ['db1': ['ansible_user': 'pg', 'ports': ports]]]]],
+                'web' : ['hosts': ['web1': ['ansible_host': '10.0.0.1', 'ports': ports], 'web2': [:]]]
+        ]]]
+        String result = new Yaml().dump(all)
+
+        AnsibleInventoryListBuilder inventoryListBuilder = Mock(AnsibleInventoryListBuilder) {
+            build() >> Mock(AnsibleInventoryList) {
+                readNodeList(_) >> { AnsibleInventoryList.NodeListReader reader ->
+                    reader.read(new StringReader(result))
+                    true
+                }
+                0 * getNodeList()
+            }
+        }
+        plugin.ansibleInventoryListBuilder = inventoryListBuilder
+
+        when:
+        INodeSet nodes = plugin.getNodes()
+
+        then:
+        nodes.size() == 3
+        nodes.getNode('db1').tags as Set == ['db', 'postgres'] as Set
+        nodes.getNode('db1').username == 'pg'
+        nodes.getNode('web1').tags as Set == ['web'] as Set
+        nodes.getNode('web1').hostname == '10.0.0.1'
+        nodes.getNode('web1').getAttributes().get('ports').contains('"port":22')
+        nodes.getNode('web2') != null
+    }
+
+    void "streaming yaml mode fails when ansible-inventory fails"() {
+        given:
+        Framework framework = Mock(Framework) {
+            getPropertyLookup() >> Mock(IPropertyLookup){
+                getProperty("framework.tmp.dir") >> '/tmp'
+            }
+            getBaseDir() >> new File('/tmp')
+        }
+        ResourceModelSource plugin = new AnsibleResourceModelSource(framework)
+        Properties config = new Properties()
+        config.put('project', 'project_1')
+        config.put(AnsibleDescribable.ANSIBLE_GATHER_FACTS, 'false')
+        config.put(AnsibleDescribable.ANSIBLE_YAML_STREAMING, 'true')
+        plugin.configure(config)
+
+        Services services = Mock(Services) {
+            getService(KeyStorageTree.class) >> Mock(KeyStorageTree)
+        }
+        plugin.setServices(services)
+
+        AnsibleInventoryListBuilder inventoryListBuilder = Mock(AnsibleInventoryListBuilder) {
+            build() >> Mock(AnsibleInventoryList) {
+                readNodeList(_) >> { AnsibleInventoryList.NodeListReader reader ->
+                    reader.read(new StringReader(''))
+                    false
+                }
+            }
+        }
+        plugin.ansibleInventoryListBuilder = inventoryListBuilder
+
+        when:
+        plugin.getNodes()
+
+        then:
+        thrown(ResourceModelSourceException)
+    }
+
+    void "json inventory output builds the same nodes and tags as yaml"() {
+        given:
+        Framework framework = Mock(Framework) {
+            getPropertyLookup() >> Mock(IPropertyLookup){
+                getProperty("framework.tmp.dir") >> '/tmp'
+            }
+            getBaseDir() >> new File('/tmp')
+        }
+        ResourceModelSource plugin = new AnsibleResourceModelSource(framework)
+        Properties config = new Properties()
+        config.put('project', 'project_1')
+        config.put(AnsibleDescribable.ANSIBLE_GATHER_FACTS, 'false')
+        config.put(AnsibleDescribable.ANSIBLE_IMPORT_INVENTORY_VARS, 'true')
+        config.put(AnsibleDescribable.ANSIBLE_INVENTORY_JSON, 'true')
+        plugin.configure(config)
+
+        Services services = Mock(Services) {
+            getService(KeyStorageTree.class) >> Mock(KeyStorageTree)
+        }
+        plugin.setServices(services)
+
+        String result = '''{
+            "_meta": {"hostvars": {
+                "db1": {"ansible_user": "pg", "ports": [{"port": 5432}]},
+                "web1": {"ansible_host": "10.0.0.1"}
+            }},
+            "all": {"children": ["ungrouped", "web", "db", "empty"]},
+            "db": {"children": ["postgres"]},
+            "postgres": {"hosts": ["db1"]},
+            "ungrouped": {"hosts": ["solo"]},
+            "web": {"hosts": ["web1", "db1"]}
+        }'''
+
+        AnsibleInventoryListBuilder inventoryListBuilder = Mock(AnsibleInventoryListBuilder) {
+            build() >> Mock(AnsibleInventoryList) {
+                readNodeList(_) >> { AnsibleInventoryList.NodeListReader reader ->
+                    reader.read(new StringReader(result))
+                    true
+                }
+            }
+        }
+        plugin.ansibleInventoryListBuilder = inventoryListBuilder
+
+        when:
+        INodeSet nodes = plugin.getNodes()
+
+        then:
+        nodes.size() == 3
+        nodes.getNode('db1').tags as Set == ['db', 'postgres', 'web'] as Set
+        nodes.getNode('db1').username == 'pg'
+        nodes.getNode('db1').getAttributes().get('ports') == '[{"port":5432}]'
+        nodes.getNode('web1').tags as Set == ['web'] as Set
+        nodes.getNode('web1').hostname == '10.0.0.1'
+        nodes.getNode('solo').tags as Set == ['ungrouped'] as Set
+    }
+
+    void "fact files are converted to nodes with the interesting facts"() {
+        given:
+        Framework framework = Mock(Framework) {
+            getPropertyLookup() >> Mock(IPropertyLookup){
+                getProperty("framework.tmp.dir") >> '/tmp'
+            }
+            getBaseDir() >> new File('/tmp')
+        }
+        AnsibleResourceModelSource plugin = new AnsibleResourceModelSource(framework)
+        Properties config = new Properties()
+        config.put('project', 'project_1')
+        config.put(AnsibleDescribable.ANSIBLE_GATHER_FACTS, 'true')
+        config.put(AnsibleDescribable.ANSIBLE_IMPORT_INVENTORY_VARS, 'true')
+        config.put(AnsibleDescribable.ANSIBLE_EXTRA_TAG, 'extra')
+        plugin.configure(config)
+
+        File factFile = File.createTempFile('facts', '.json')
+        factFile.text = '''{
+            "inventory_hostname": "node1",
+            "ansible_host": "10.0.0.5",
+            "ansible_user": "deploy",
+            "group_names": ["web"],
+            "ansible_os_family": "Debian",
+            "ansible_date_time": {"tz": "UTC"},
+            "ansible_processor": ["0", "GenuineIntel"],
+            "ansible_memtotal_mb": 2048,
+            "rack": "r1",
+            "ports": [22]
+        }'''
+
+        when:
+        def node = plugin.createNodeFromFactFile(factFile.toPath(), plugin.getSpecialVarsList())
+
+        then:
+        node.nodename == 'node1'
+        node.hostname == '10.0.0.5'
+        node.username == 'deploy'
+        node.tags as Set == ['web', 'extra'] as Set
+        node.osFamily == 'Debian'
+        node.getAttributes().get('tz') == 'UTC'
+        node.getAttributes().get('processor1') == 'GenuineIntel'
+        node.getAttributes().get('memtotal_mb') == '2048'
+        node.getAttributes().get('rack') == 'r1'
+        node.getAttributes().get('ports') == '[22]'
+        !node.getAttributes().containsKey('ansible_os_family')
+
+        cleanup:
+        factFile?.delete()
+    }
+
+    void "hosts with stored facts are excluded from the gather run limit"() {
+        expect:
+        AnsibleResourceModelSource.excludeHostsLimit(limit, ['node1', 'node2']) == expected
+
+        where:
+        limit            | expected
+        null             | ['all', '!node1', '!node2']
+        ''               | ['all', '!node1', '!node2']
+        'web'            | ['web', '!node1', '!node2']
+        'web, db'        | ['web', 'db', '!node1', '!node2']
+        'web:&prod'      | ['web', '&prod', '!node1', '!node2']
+        'www[01:50]'     | ['www[01:50]', '!node1', '!node2']
+    }
+
+    void "the gather run is skipped when all the hosts have fresh stored facts"() {
+        given:
+        File tmpDir = File.createTempDir()
+        Framework framework = Mock(Framework) {
+            getPropertyLookup() >> Mock(IPropertyLookup){
+                getProperty("framework.tmp.dir") >> tmpDir.absolutePath
+            }
+            getBaseDir() >> new File('/tmp')
+        }
+        AnsibleResourceModelSource plugin = new AnsibleResourceModelSource(framework)
+        Properties config = new Properties()
+        config.put('project', 'project_1')
+        config.put(AnsibleDescribable.ANSIBLE_GATHER_FACTS, 'true')
+        config.put(AnsibleDescribable.ANSIBLE_GATHER_FACTS_TTL, '3600')
+        plugin.configure(config)
+
+        Path tempDirectory = null
+        AnsibleRunner runner = Mock(AnsibleRunner)
+        AnsibleRunner.AnsibleRunnerBuilder runnerBuilder = Mock(AnsibleRunner.AnsibleRunnerBuilder) {
+            tempDirectory(_) >> { Path directory -> tempDirectory = directory; null }
+            build() >> runner
+        }
+
+        when: "the first refresh gathers the hosts"
+        NodeSetImpl gathered = new NodeSetImpl()
+        plugin.processWithGatherFacts(gathered, runnerBuilder)
+
+        then:
+        1 * runner.run() >> {
+            Path data = Files.createDirectories(tempDirectory.resolve('data'))
+            Files.writeString(data.resolve('node1'), '{"inventory_hostname": "node1", "group_names": ["web"]}')
+            Files.writeString(data.resolve('node2'), '{"inventory_hostname": "node2", "group_names": ["db"]}')
+            0
+        }
+        gathered.getNodeNames() as Set == ['node1', 'node2'] as Set
+
+        when: "the next refresh finds them all fresh"
+        NodeSetImpl cached = new NodeSetImpl()
+        plugin.processWithGatherFacts(cached, runnerBuilder)
+
+        then:
+        0 * runner.run()
+        cached.getNodeNames() as Set == ['node1', 'node2'] as Set
+        cached.getNode('node2').tags as Set == ['db'] as Set
+
+        cleanup:
+        tmpDir?.deleteDir()
+    }
+
+    void "streamed facts are turned into nodes while the play runs"() {
+        given:
+        Framework framework = Mock(Framework) {
+            getPropertyLookup() >> Mock(IPropertyLookup){
+                getProperty("framework.tmp.dir") >> '/tmp'
+            }
+            getBaseDir() >> new File('/tmp')
+        }
+        AnsibleResourceModelSource plugin = new AnsibleResourceModelSource(framework)
+        Properties config = new Properties()
+        config.put('project', 'project_1')
+        config.put(AnsibleDescribable.ANSIBLE_GATHER_FACTS, 'true')
+        config.put(AnsibleDescribable.ANSIBLE_GATHER_FACTS_STREAMING, 'true')
+        plugin.configure(config)
+
+        Listener output = null
+        Map<String, String> env = null
+        AnsibleRunner.AnsibleRunnerBuilder runnerBuilder = Mock(AnsibleRunner.AnsibleRunnerBuilder) {
+            listener(_) >> { Listener l -> output = l; null }
+            options(_) >> { Map<String, String> o -> env = o; null }
+            build() >> Mock(AnsibleRunner) {
+                run() >> {
+                    output.output('PLAY [all] ***')
+                    output.output(AnsibleResourceModelSource.FACTS_MARKER +
+                            '{"inventory_hostname": "node1", "ansible_host": "10.0.0.5", "group_names": ["web"]}')
+                    output.output(AnsibleResourceModelSource.FACTS_MARKER +
+                            '{"inventory_hostname": "node2", "group_names": ["db"]}')
+                    0
+                }
+            }
+        }
+        NodeSetImpl nodes = new NodeSetImpl()
+
+        when:
+        plugin.processWithGatherFacts(nodes, runnerBuilder)
+
+        then:
+        env['ANSIBLE_STDOUT_CALLBACK'] == 'rundeck_facts'
+        nodes.getNodeNames() as Set == ['node1', 'node2'] as Set
+        nodes.getNode('node1').hostname == '10.0.0.5'
+        nodes.getNode('node1').tags as Set == ['web'] as Set
+        nodes.getNode('node2').tags as Set == ['db'] as Set
+    }
+
+    void "gather subset and fact projection are passed to the gather playbook"() {
+        given:
+        Framework framework = Mock(Framework) {
+            getPropertyLookup() >> Mock(IPropertyLookup){
+                getProperty("framework.tmp.dir") >> '/tmp'
+            }
+            getBaseDir() >> new File('/tmp')
+        }
+        AnsibleResourceModelSource plugin = new AnsibleResourceModelSource(framework)
+        Properties config = new Properties()
+        config.put('project', 'project_1')
+        config.put(AnsibleDescribable.ANSIBLE_GATHER_FACTS, 'true')
+        config.put(AnsibleDescribable.ANSIBLE_GATHER_SUBSET, '!all, !min,distribution')
+        config.put(AnsibleDescribable.ANSIBLE_FACTS_PROJECTION, 'true')
+        config.put(AnsibleDescribable.ANSIBLE_IMPORT_INVENTORY_VARS, importVars)
+        plugin.configure(config)
+
+        String extraVars = null
+        AnsibleRunner.AnsibleRunnerBuilder runnerBuilder = Mock(AnsibleRunner.AnsibleRunnerBuilder) {
+            extraVars(_) >> { String vars -> extraVars = vars; null }
+            build() >> Mock(AnsibleRunner)
+        }
+
+        when:
+        plugin.processWithGatherFacts(new NodeSetImpl(), runnerBuilder)
+        def vars = new Yaml().load(extraVars)
+
+        then:
+        vars.facts_subset == ['!all', '!min', 'distribution']
+        vars.facts_filter.contains('ansible_date_time')
+        vars.facts_filter.every { it.startsWith('ansible_') }
+        vars.containsKey('facts_keys') == !Boolean.parseBoolean(importVars)
+        !vars.containsKey('facts_keys') || vars.facts_keys.containsAll(['inventory_hostname', 'group_names', 'ansible_lsb'])
+
+        where:
+        importVars << ['false', 'true']
+    }
 }
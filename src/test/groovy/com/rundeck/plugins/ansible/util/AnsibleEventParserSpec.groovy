@@ -0,0 +1,90 @@
+package com.rundeck.plugins.ansible.util
+
+import spock.lang.Specification
+
+class AnsibleEventParserSpec extends Specification {
+
+    def "event lines become typed events"() {
+        when:
+        AnsibleEvent event = AnsibleEventParser.parse(line)
+
+        then:
+        event.type == type
+        event.play == "deploy"
+        event.task == task
+        event.host == host
+
+        where:
+        line                                                                                                          | type                               | task   | host
+        'RUNDECK_EVENT {"event": "play_start", "play": "deploy", "task": null}'                                       | AnsibleEvent.Type.PLAY_START       | null   | null
+        'RUNDECK_EVENT {"event": "task_start", "play": "deploy", "task": "copy"}'                                     | AnsibleEvent.Type.TASK_START       | "copy" | null
+        'RUNDECK_EVENT {"event": "host_ok", "play": "deploy", "task": "copy", "host": "web1", "result": {}}'          | AnsibleEvent.Type.HOST_OK          | "copy" | "web1"
+        'RUNDECK_EVENT {"event": "host_changed", "play": "deploy", "task": "copy", "host": "web1", "result": {}}'     | AnsibleEvent.Type.HOST_CHANGED     | "copy" | "web1"
+        'RUNDECK_EVENT {"event": "host_failed", "play": "deploy", "task": "copy", "host": "web1", "result": {}}'      | AnsibleEvent.Type.HOST_FAILED      | "copy" | "web1"
+        'RUNDECK_EVENT {"event": "host_unreachable", "play": "deploy", "task": "copy", "host": "web1", "result": {}}' | AnsibleEvent.Type.HOST_UNREACHABLE | "copy" | "web1"
+        'RUNDECK_EVENT {"event": "host_skipped", "play": "deploy", "task": "copy", "host": "web1", "result": {}}'     | AnsibleEvent.Type.HOST_SKIPPED     | "copy" | "web1"
+        'RUNDECK_EVENT {"event": "recap", "play": "deploy", "task": null, "host": "web1", "stats": {"ok": 2}}'        | AnsibleEvent.Type.RECAP            | null   | "web1"
+    }
+
+    def "host results and recap carry their details"() {
+        when:
+        AnsibleEvent failed = AnsibleEventParser.parse('RUNDECK_EVENT {"event": "host_failed", "play": "p", "task": "t", ' +
+                '"host": "web1", "ignore_errors": true, "result": {"rc": 2, "msg": "non-zero return code"}}')
+        AnsibleEvent recap = AnsibleEventParser.parse('RUNDECK_EVENT {"event": "recap", "play": "p", "task": null, ' +
+                '"host": "web1", "stats": {"ok": 2, "changed": 1, "failures": 0, "unreachable": 0}}')
+
+        then:
+        failed.hostResult
+        failed.ignoreErrors
+        failed.result.get("rc").getAsInt() == 2
+        failed.result.get("msg").getAsString() == "non-zero return code"
+
+        !recap.hostResult
+        recap.stats.get("ok").getAsInt() == 2
+        recap.stats.get("changed").getAsInt() == 1
+    }
+
+    def "other lines are not events"() {
+        expect:
+        AnsibleEventParser.parse(line) == null
+
+        where:
+        line << [
+                "ok: [web1]",
+                "RUNDECK_EVENT not json",
+                'RUNDECK_EVENT {"event": "unknown"}',
+                'RUNDECK_EVENT ["host_ok"]',
+                ' RUNDECK_EVENT {"event": "host_ok"}'
+        ]
+    }
+
+    def "events are handed to the handler in order with the output"() {
+        given:
+        List<String> received = []
+        Listener output = { String line -> received << line } as Listener
+        AnsibleEventParser parser = new AnsibleEventParser(output,
+                { AnsibleEvent event -> received << "event " + event.type } as AnsibleEventParser.EventHandler)
+
+        when:
+        parser.output([
+                "PLAY [deploy] ****",
+                'RUNDECK_EVENT {"event": "play_start", "play": "deploy", "task": null}',
+                "TASK [copy] ****",
+                'RUNDECK_EVENT {"event": "task_start", "play": "deploy", "task": "copy"}',
+                "changed: [web1]",
+                "ok: [web2]"
+        ])
+        parser.output('RUNDECK_EVENT {"event": "host_ok", "play": "deploy", "task": "copy", "host": "web2", "result": {}}')
+
+        then:
+        received == [
+                "PLAY [deploy] ****",
+                "event PLAY_START",
+                "TASK [copy] ****",
+                "event TASK_START",
+                "changed: [web1]",
+                "ok: [web2]",
+                "event HOST_OK"
+        ]
+    }
+}
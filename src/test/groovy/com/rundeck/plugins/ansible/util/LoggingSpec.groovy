@@ -0,0 +1,97 @@
+package com.rundeck.plugins.ansible.util
+
+import spock.lang.Specification
+
+import java.nio.charset.StandardCharsets
+import java.util.concurrent.Callable
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicLong
+
+class LoggingSpec extends Specification {
+
+    private static InputStream utf8(String text) {
+        new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8))
+    }
+
+    def "the lines of all the streams are delivered in batches, decoded as UTF-8"() {
+        given:
+        List<List<String>> batches = []
+        Listener output = new Listener() {
+            void output(String line) {
+                throw new IllegalStateException("lines are delivered in batches")
+            }
+
+            void output(List<String> lines) {
+                batches << new ArrayList<>(lines)
+            }
+        }
+
+        when:
+        Logging.pump(output, utf8("ok: [héllo] ✓\nchanged: [node]\n"), utf8("[WARNING]: ünicode\n"))
+
+        then:
+        batches.flatten().sort() == ["[WARNING]: ünicode", "changed: [node]", "ok: [héllo] ✓"]
+    }
+
+    def "a slow listener holds back the readers without losing lines"() {
+        given:
+        List<String> lines = (1..500).collect { "line " + it }
+        List<String> received = []
+        List<Integer> batchSizes = []
+        Listener output = new Listener() {
+            void output(String line) {
+            }
+
+            void output(List<String> batch) {
+                Thread.sleep(1)
+                batchSizes << batch.size()
+                received.addAll(batch)
+            }
+        }
+
+        when:
+        Logging.pump(output, 8, 4, utf8(lines.join("\n")))
+
+        then:
+        received == lines
+        batchSizes.every { it <= 4 }
+    }
+
+    def "a read failure is reported once the other streams are done"() {
+        given:
+        List<String> received = []
+        InputStream failing = new InputStream() {
+            int read() throws IOException {
+                throw new IOException("broken pipe")
+            }
+        }
+
+        when:
+        Logging.pump({ String line -> received << line } as Listener, failing, utf8("still read\n"))
+
+        then:
+        IOException e = thrown()
+        e.message == "broken pipe"
+        received == ["still read"]
+    }
+
+    def "concurrent runs deliver all their lines"() {
+        given: "50 concurrent runs writing 20000 lines on stdout and stderr"
+        int runs = 50
+        String text = (1..20000).collect { "ok: [host" + it + "] => {\"changed\": false}" }.join("\n")
+        AtomicLong delivered = new AtomicLong()
+        def executor = Executors.newFixedThreadPool(runs)
+
+        when:
+        def futures = (1..runs).collect {
+            executor.submit({
+                Logging.pump({ String line -> delivered.incrementAndGet() } as Listener, utf8(text), utf8(text))
+            } as Callable<Void>)
+        }
+        futures*.get()
+        executor.shutdown()
+
+        then:
+        delivered.get() == runs * 2 * 20000L
+    }
+}
@@ -0,0 +1,45 @@
+package com.rundeck.plugins.ansible.util
+
+import spock.lang.Requires
+import spock.lang.Specification
+import spock.lang.TempDir
+import spock.lang.Timeout
+
+import java.nio.file.Files
+
+@Requires({ new File('/usr/bin/python3').exists() || new File('/usr/local/bin/python3').exists() })
+class ProcessExecutorSpec extends Specification {
+
+    @TempDir
+    File tempDir
+
+    @Timeout(30)
+    def "vault passwords are sent as soon as each prompt is logged"() {
+        given: "a command asking the vault passwords like vault-client.py"
+        File logFile = new File(tempDir, "vault-prompt.log")
+        logFile.text = ""
+        File client = new File(tempDir, "vault-client.py")
+        Files.copy(getClass().getClassLoader().getResourceAsStream("vault-client.py"), client.toPath())
+        String clients = vaultIds.collect { "python3 ${client.absolutePath} --vault-id ${it}" }.join("; ")
+        List<VaultPrompt> prompts = vaultIds.collect {
+            VaultPrompt.builder().vaultId(it).vaultPassword("password-" + it).build()
+        }
+
+        when:
+        Process proc = ProcessExecutor.builder()
+                .procArgs(["sh", "-c", clients])
+                .environmentVariables([LOG_PATH: logFile.absolutePath])
+                .stdinVariables(prompts)
+                .promptStdinLogFile(logFile)
+                .build().run()
+        String output = proc.inputStream.text
+        int exitCode = proc.waitFor()
+
+        then: "each password reached its prompt"
+        output.readLines() == vaultIds.collect { "password-" + it }
+        exitCode == 0
+
+        where:
+        vaultIds << [["None"], ["internal-encrypt", "None"]]
+    }
+}